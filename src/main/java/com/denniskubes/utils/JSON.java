@@ -1,20 +1,36 @@
 package com.denniskubes.utils;
 
-import java.io.StringReader;
-import java.io.StringWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.commons.lang3.StringUtils;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.MappingJsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.BooleanNode;
 import com.fasterxml.jackson.databind.node.DoubleNode;
@@ -27,6 +43,26 @@ import com.fasterxml.jackson.databind.node.TextNode;
  */
 public class JSON {
 
+  // one mapper for all the helpers, building a mapper per call throws away
+  // its serializer caches
+  private static volatile Codecs codecs = new Codecs(new ObjectMapper());
+
+  /**
+   * The shared mapper with its immutable readers and writers by type,
+   * replaced as a whole when reconfigured so a reader or writer from an old
+   * mapper is never cached with a new one.
+   */
+  private static final class Codecs {
+
+    private final ObjectMapper mapper;
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<Class<?>, ObjectReader>();
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+
+    private Codecs(ObjectMapper mapper) {
+      this.mapper = mapper;
+    }
+  }
+
   /**
    * Returns true if the string look like a valid JSON string, starting and
    * ending with either squiggly or square brackets.
@@ -44,6 +80,61 @@ public class JSON {
     return squiggs || square;
   }
 
+  /**
+   * Returns the reader for a type, created once from the shared mapper.
+   * Readers are immutable and safe to use from any thread.
+   * 
+   * @param valueType The type to read.
+   * 
+   * @return The reader for the type.
+   */
+  public static ObjectReader getReader(Class<?> valueType) {
+    Codecs current = codecs;
+    ObjectReader reader = current.readers.get(valueType);
+    if (reader == null) {
+      reader = current.mapper.readerFor(valueType);
+      current.readers.put(valueType, reader);
+    }
+    return reader;
+  }
+
+  /**
+   * Returns the writer for a type, created once from the shared mapper.
+   * Writers are immutable and safe to use from any thread.
+   * 
+   * @param valueType The type to write.
+   * 
+   * @return The writer for the type.
+   */
+  public static ObjectWriter getWriter(Class<?> valueType) {
+    Codecs current = codecs;
+    ObjectWriter writer = current.writers.get(valueType);
+    if (writer == null) {
+      writer = current.mapper.writerFor(valueType);
+      current.writers.put(valueType, writer);
+    }
+    return writer;
+  }
+
+  private static Class<?> getType(Object object) {
+    return (object != null) ? object.getClass() : Object.class;
+  }
+
+  /**
+   * Reconfigures the shared mapper. The configurer is given a copy of the
+   * current mapper, which replaces it once configured, and the cached
+   * readers and writers are rebuilt on next use. Call at startup, before the
+   * helpers are used, since readers already handed out keep the old
+   * configuration.
+   * 
+   * @param configurer Changes the features and modules of the mapper.
+   */
+  public static synchronized void configure(Consumer<ObjectMapper> configurer) {
+    ObjectMapper configured = codecs.mapper.copy();
+    configurer.accept(configured);
+    codecs = new Codecs(configured);
+  }
+
   /**
    * Parses the JSON string into a tree of JsonNode objects.
    * 
@@ -52,12 +143,26 @@ public class JSON {
    * @return The root of a tree of JsonNode objects.
    */
   public static JsonNode parse(String json) {
+    try {
+      return getReader(JsonNode.class).readValue(json);
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
 
-    ObjectMapper mapper = new ObjectMapper();
-    JsonNode root = null;
+  public static JsonNode parse(byte[] json) {
     try {
-      root = mapper.readValue(new StringReader(json), JsonNode.class);
-      return root;
+      return getReader(JsonNode.class).readValue(json);
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
+
+  public static JsonNode parse(InputStream json) {
+    try {
+      return getReader(JsonNode.class).readValue(json);
     }
     catch (Exception e) {
       return null;
@@ -73,49 +178,382 @@ public class JSON {
    * @return The root of a tree of objects.
    */
   public static Map<String, Object> parseToMap(String json) {
+    try {
+      return getReader(Map.class).readValue(json);
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
+
+  public static Map<String, Object> parseToMap(byte[] json) {
+    try {
+      return getReader(Map.class).readValue(json);
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
 
-    ObjectMapper mapper = new ObjectMapper();
-    Map root = null;
+  public static Map<String, Object> parseToMap(InputStream json) {
     try {
-      root = mapper.readValue(new StringReader(json), Map.class);
+      return getReader(Map.class).readValue(json);
     }
     catch (Exception e) {
       return null;
     }
-    return root;
   }
 
   public static String serializeToJson(Object object) {
+    try {
+      return getWriter(getType(object)).writeValueAsString(object);
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
 
+  public static byte[] serializeToJsonBytes(Object object) {
     try {
+      return getWriter(getType(object)).writeValueAsBytes(object);
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
 
-      StringWriter sw = new StringWriter();
-      ObjectMapper mapper = new ObjectMapper();
-      MappingJsonFactory jsonFactory = new MappingJsonFactory();
-      JsonGenerator jsonGenerator = jsonFactory.createJsonGenerator(sw);
-      mapper.writeValue(jsonGenerator, object);
-      sw.close();
+  /**
+   * Writes the object as JSON to the stream, the stream isn't closed.
+   * 
+   * @return True if the object was written.
+   */
+  public static boolean serializeToJson(Object object, OutputStream out) {
+    try {
+      getWriter(getType(object)).without(
+        JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(out, object);
+      return true;
+    }
+    catch (Exception e) {
+      return false;
+    }
+  }
 
-      return sw.toString();
+  public static Object deserializeFromJson(String json, Class valueType) {
+    try {
+      return getReader(valueType).readValue(json);
     }
     catch (Exception e) {
       return null;
     }
   }
 
-  public static Object deserializeFromJson(String json, Class valueType) {
+  public static Object deserializeFromJson(byte[] json, Class valueType) {
+    try {
+      return getReader(valueType).readValue(json);
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
 
+  public static Object deserializeFromJson(InputStream json, Class valueType) {
     try {
-      ObjectMapper mapper = new ObjectMapper();
-      MappingJsonFactory jsonFactory = new MappingJsonFactory();
-      JsonParser jsonParser = jsonFactory.createJsonParser(json);
-      return mapper.readValue(jsonParser, valueType);
+      return getReader(valueType).readValue(json);
     }
     catch (Exception e) {
       return null;
     }
   }
 
+  /**
+   * Walks the elements of an array in a JSON stream one at a time, so memory
+   * doesn't grow with the array. The parser is closed once the array is
+   * exhausted or reading fails.
+   */
+  private static class ArrayCursor
+    implements Closeable {
+
+    private final JsonParser parser;
+    private final boolean numbersOnly;
+    private boolean ready = false;
+    private boolean done;
+
+    private ArrayCursor(JsonParser parser, boolean numbersOnly) {
+      this.parser = parser;
+      this.numbersOnly = numbersOnly;
+      this.done = (parser == null);
+    }
+
+    /**
+     * Returns true if the parser is at the first token of another element,
+     * moving past the previous element if needed.
+     */
+    private boolean hasNext() {
+
+      if (done || ready) {
+        return !done;
+      }
+      try {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null
+          && token != JsonToken.END_ARRAY) {
+          if (!numbersOnly || token.isNumeric()) {
+            ready = true;
+            return true;
+          }
+          parser.skipChildren();
+        }
+      }
+      catch (IOException e) {
+        close();
+        throw new UncheckedIOException(e);
+      }
+      close();
+      return false;
+    }
+
+    /**
+     * Returns the parser at the next element, which the caller must read
+     * completely.
+     */
+    private JsonParser next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      ready = false;
+      return parser;
+    }
+
+    @Override
+    public void close() {
+      done = true;
+      if (parser != null) {
+        try {
+          parser.close();
+        }
+        catch (IOException e) {
+          // nothing more to read
+        }
+      }
+    }
+  }
+
+  /**
+   * Moves the parser to the value at the pointer, returning false if there
+   * is no value at the pointer.
+   */
+  private static boolean moveTo(JsonParser parser, JsonPointer pointer)
+    throws IOException {
+
+    JsonToken token = parser.nextToken();
+    while (token != null && !pointer.matches()) {
+      if (token == JsonToken.START_OBJECT) {
+        String property = pointer.getMatchingProperty();
+        boolean found = false;
+        while (!found && parser.nextToken() == JsonToken.FIELD_NAME) {
+          found = property.equals(parser.getCurrentName());
+          token = parser.nextToken();
+          if (!found) {
+            parser.skipChildren();
+          }
+        }
+        if (!found) {
+          return false;
+        }
+      }
+      else if (token == JsonToken.START_ARRAY) {
+        int index = pointer.getMatchingIndex();
+        if (index < 0) {
+          return false;
+        }
+        token = parser.nextToken();
+        for (int i = 0; i < index && token != JsonToken.END_ARRAY; i++) {
+          parser.skipChildren();
+          token = parser.nextToken();
+        }
+        if (token == JsonToken.END_ARRAY) {
+          return false;
+        }
+      }
+      else {
+        return false;
+      }
+      pointer = pointer.tail();
+    }
+    return token != null;
+  }
+
+  /**
+   * Opens a cursor over the array at the pointer, or an empty cursor if the
+   * value at the pointer isn't an array.
+   */
+  private static ArrayCursor openArray(InputStream json, String pointer,
+    boolean numbersOnly)
+    throws IOException {
+
+    JsonParser parser = codecs.mapper.getFactory().createParser(json);
+    try {
+      if (moveTo(parser, JsonPointer.compile(pointer))
+        && parser.currentToken() == JsonToken.START_ARRAY) {
+        return new ArrayCursor(parser, numbersOnly);
+      }
+    }
+    catch (IOException | IllegalArgumentException e) {
+      parser.close();
+      throw e;
+    }
+    parser.close();
+    return new ArrayCursor(null, numbersOnly);
+  }
+
+  /**
+   * Returns a lazy iterator over the elements of the array at a JSON pointer,
+   * such as /results or /data/0/items, with "" for a document that is an
+   * array. Each element is bound to the type when it is reached, so memory
+   * stays constant however long the array. The stream is closed when the
+   * iterator is exhausted, an iterator that isn't read to the end should be
+   * closed by closing the stream.
+   * 
+   * @param json The JSON stream.
+   * @param pointer The JSON pointer to the array.
+   * @param valueType The type to bind each element to, JsonNode for trees.
+   * 
+   * @return The elements, empty if there is no array at the pointer.
+   * 
+   * @throws IOException If the JSON can't be read up to the array. Errors
+   * reading elements are thrown from the iterator as UncheckedIOException.
+   */
+  public static <T> Iterator<T> iterateArray(InputStream json, String pointer,
+    Class<T> valueType)
+    throws IOException {
+
+    final ArrayCursor cursor = openArray(json, pointer, false);
+    final ObjectReader reader = getReader(valueType);
+    return new Iterator<T>() {
+
+      @Override
+      public boolean hasNext() {
+        return cursor.hasNext();
+      }
+
+      @Override
+      public T next() {
+        try {
+          return reader.readValue(cursor.next());
+        }
+        catch (IOException e) {
+          cursor.close();
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+  }
+
+  /**
+   * Returns the elements of the array at a JSON pointer as a lazy stream,
+   * see iterateArray. Closing the stream closes the JSON stream.
+   */
+  public static <T> Stream<T> streamArray(InputStream json, String pointer,
+    Class<T> valueType)
+    throws IOException {
+    Iterator<T> elements = iterateArray(json, pointer, valueType);
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(elements,
+      Spliterator.ORDERED), false).onClose(
+      () -> closeQuietly(json));
+  }
+
+  /**
+   * Returns a lazy iterator over the numeric elements of the array at a JSON
+   * pointer as longs, without boxing. Elements that aren't numbers are
+   * skipped, as getLongs does.
+   */
+  public static PrimitiveIterator.OfLong iterateLongs(InputStream json,
+    String pointer)
+    throws IOException {
+
+    final ArrayCursor cursor = openArray(json, pointer, true);
+    return new PrimitiveIterator.OfLong() {
+
+      @Override
+      public boolean hasNext() {
+        return cursor.hasNext();
+      }
+
+      @Override
+      public long nextLong() {
+        try {
+          return cursor.next().getLongValue();
+        }
+        catch (IOException e) {
+          cursor.close();
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+  }
+
+  /**
+   * Returns the numeric elements of the array at a JSON pointer as a lazy
+   * LongStream, see iterateLongs. Closing the stream closes the JSON stream.
+   */
+  public static LongStream streamLongs(InputStream json, String pointer)
+    throws IOException {
+    PrimitiveIterator.OfLong elements = iterateLongs(json, pointer);
+    return StreamSupport.longStream(Spliterators.spliteratorUnknownSize(
+      elements, Spliterator.ORDERED), false).onClose(() -> closeQuietly(json));
+  }
+
+  /**
+   * Returns a lazy iterator over the numeric elements of the array at a JSON
+   * pointer as doubles, without boxing. Elements that aren't numbers are
+   * skipped.
+   */
+  public static PrimitiveIterator.OfDouble iterateDoubles(InputStream json,
+    String pointer)
+    throws IOException {
+
+    final ArrayCursor cursor = openArray(json, pointer, true);
+    return new PrimitiveIterator.OfDouble() {
+
+      @Override
+      public boolean hasNext() {
+        return cursor.hasNext();
+      }
+
+      @Override
+      public double nextDouble() {
+        try {
+          return cursor.next().getDoubleValue();
+        }
+        catch (IOException e) {
+          cursor.close();
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+  }
+
+  /**
+   * Returns the numeric elements of the array at a JSON pointer as a lazy
+   * DoubleStream, see iterateDoubles. Closing the stream closes the JSON
+   * stream.
+   */
+  public static DoubleStream streamDoubles(InputStream json, String pointer)
+    throws IOException {
+    PrimitiveIterator.OfDouble elements = iterateDoubles(json, pointer);
+    return StreamSupport.doubleStream(Spliterators.spliteratorUnknownSize(
+      elements, Spliterator.ORDERED), false).onClose(() -> closeQuietly(json));
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    }
+    catch (IOException e) {
+      // closing only releases the stream
+    }
+  }
+
   public static JsonNode getJsonNode(JsonNode parent, String field) {
 
     boolean parentNull = parent != null && !parent.isNull();
@@ -0,0 +1,218 @@
+package com.denniskubes.utils;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * <p>A compiled path to a value in a JsonNode tree, in JSON pointer syntax,
+ * such as /a/b/0. The path is parsed once into field names and array
+ * indexes and every lookup walks them in a single pass.</p>
+ *
+ * <p>Paths are immutable and thread safe, so they can be held as constants.
+ * Primitive getters return the value or a default without boxing, and the
+ * array getters fill a caller provided buffer. A value of the wrong kind,
+ * such as a string where a number is wanted, is treated as missing. Unlike
+ * JSON.getDouble, which only reads decimals, any number is read as a
+ * double.</p>
+ */
+public final class JsonPath {
+
+  private final String path;
+  private final String[] fields;
+  private final int[] indexes;
+
+  private JsonPath(String path, String[] fields, int[] indexes) {
+    this.path = path;
+    this.fields = fields;
+    this.indexes = indexes;
+  }
+
+  /**
+   * Compiles a path in JSON pointer syntax, "" being the root.
+   *
+   * @param path The path, with ~1 for / and ~0 for ~ in field names.
+   *
+   * @return The compiled path.
+   *
+   * @throws IllegalArgumentException If the path isn't a valid pointer.
+   */
+  public static JsonPath compile(String path) {
+
+    int size = 0;
+    for (JsonPointer pointer = JsonPointer.compile(path); !pointer.matches();
+      pointer = pointer.tail()) {
+      size++;
+    }
+
+    String[] fields = new String[size];
+    int[] indexes = new int[size];
+    JsonPointer pointer = JsonPointer.compile(path);
+    for (int i = 0; i < size; i++, pointer = pointer.tail()) {
+      fields[i] = pointer.getMatchingProperty();
+      indexes[i] = pointer.getMatchingIndex();
+    }
+    return new JsonPath(path, fields, indexes);
+  }
+
+  /**
+   * Returns the node at the path, or null if there is no value at the path.
+   * Segments that are numbers match array elements by index and object
+   * fields by name.
+   */
+  public JsonNode resolve(JsonNode root) {
+
+    JsonNode node = root;
+    for (int i = 0; i < fields.length && node != null; i++) {
+      if (node.isObject()) {
+        node = node.get(fields[i]);
+      }
+      else if (node.isArray() && indexes[i] >= 0) {
+        node = node.get(indexes[i]);
+      }
+      else {
+        return null;
+      }
+    }
+    return (node != null && !node.isNull() && !node.isMissingNode()) ? node
+      : null;
+  }
+
+  public String getString(JsonNode root) {
+    return getString(root, null);
+  }
+
+  public String getString(JsonNode root, String defaultValue) {
+    JsonNode node = resolve(root);
+    return (node != null && node.isTextual()) ? node.textValue() : defaultValue;
+  }
+
+  public boolean getBoolean(JsonNode root, boolean defaultValue) {
+    JsonNode node = resolve(root);
+    return (node != null && node.isBoolean()) ? node.booleanValue()
+      : defaultValue;
+  }
+
+  public int getInt(JsonNode root, int defaultValue) {
+    JsonNode node = resolve(root);
+    return (node != null && node.isNumber()) ? node.intValue() : defaultValue;
+  }
+
+  public long getLong(JsonNode root, long defaultValue) {
+    JsonNode node = resolve(root);
+    return (node != null && node.isNumber()) ? node.longValue() : defaultValue;
+  }
+
+  public double getDouble(JsonNode root, double defaultValue) {
+    JsonNode node = resolve(root);
+    return (node != null && node.isNumber()) ? node.doubleValue()
+      : defaultValue;
+  }
+
+  /**
+   * Fills the buffer with the numeric elements of the array at the path,
+   * skipping other elements, up to the length of the buffer. A single number
+   * at the path fills one element.
+   *
+   * @param root The root of the tree.
+   * @param buffer The buffer to fill from the start.
+   *
+   * @return The number of elements filled.
+   */
+  public int getInts(JsonNode root, int[] buffer) {
+
+    JsonNode node = resolve(root);
+    if (node == null) {
+      return 0;
+    }
+    else if (node.isNumber()) {
+      if (buffer.length == 0) {
+        return 0;
+      }
+      buffer[0] = node.intValue();
+      return 1;
+    }
+    else if (!node.isArray()) {
+      return 0;
+    }
+
+    int filled = 0;
+    for (int i = 0; i < node.size() && filled < buffer.length; i++) {
+      JsonNode element = node.get(i);
+      if (element.isNumber()) {
+        buffer[filled++] = element.intValue();
+      }
+    }
+    return filled;
+  }
+
+  /**
+   * Fills the buffer with the numeric elements of the array at the path, see
+   * getInts.
+   */
+  public int getLongs(JsonNode root, long[] buffer) {
+
+    JsonNode node = resolve(root);
+    if (node == null) {
+      return 0;
+    }
+    else if (node.isNumber()) {
+      if (buffer.length == 0) {
+        return 0;
+      }
+      buffer[0] = node.longValue();
+      return 1;
+    }
+    else if (!node.isArray()) {
+      return 0;
+    }
+
+    int filled = 0;
+    for (int i = 0; i < node.size() && filled < buffer.length; i++) {
+      JsonNode element = node.get(i);
+      if (element.isNumber()) {
+        buffer[filled++] = element.longValue();
+      }
+    }
+    return filled;
+  }
+
+  /**
+   * Fills the buffer with the numeric elements of the array at the path, see
+   * getInts.
+   */
+  public int getDoubles(JsonNode root, double[] buffer) {
+
+    JsonNode node = resolve(root);
+    if (node == null) {
+      return 0;
+    }
+    else if (node.isNumber()) {
+      if (buffer.length == 0) {
+        return 0;
+      }
+      buffer[0] = node.doubleValue();
+      return 1;
+    }
+    else if (!node.isArray()) {
+      return 0;
+    }
+
+    int filled = 0;
+    for (int i = 0; i < node.size() && filled < buffer.length; i++) {
+      JsonNode element = node.get(i);
+      if (element.isNumber()) {
+        buffer[filled++] = element.doubleValue();
+      }
+    }
+    return filled;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  @Override
+  public String toString() {
+    return path;
+  }
+}
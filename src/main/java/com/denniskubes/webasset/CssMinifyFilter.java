@@ -0,0 +1,467 @@
+package com.denniskubes.webasset;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>A streaming CSS minifier. Removes comments and unneeded whitespace and
+ * semicolons, collapses zero lengths to 0, drops leading zeros from decimals,
+ * and shortens six digit hex colors to three digits where possible.</p>
+ *
+ * <p>Strings and url() contents are copied as is and comments starting with
+ * <code>/*!</code> are kept. Value rewriting is only done inside declaration
+ * values, so selectors such as <code>#aabbcc</code> are never changed, and
+ * zero lengths are left alone inside functions such as calc(). Values of
+ * custom properties and of flex and flex-basis are copied as is, since their
+ * zero lengths can't safely lose their units.</p>
+ */
+public class CssMinifyFilter
+  extends MinifyWebAssetFilter {
+
+  // at-rules whose blocks contain declarations rather than nested rules
+  private final static Set<String> DECLARATION_AT_RULES = new HashSet<String>(
+    Arrays.asList("font-face", "page", "viewport", "counter-style", "property"));
+
+  // units that can be dropped from a zero length
+  private final static Set<String> LENGTH_UNITS = new HashSet<String>(
+    Arrays.asList("px", "em", "rem", "ex", "ch", "vw", "vh", "vmin", "vmax",
+      "cm", "mm", "in", "pt", "pc", "q"));
+
+  // properties whose values are never rewritten, besides custom properties
+  private final static Set<String> VERBATIM_PROPERTIES = new HashSet<String>(
+    Arrays.asList("flex", "flex-basis", "-webkit-flex", "-webkit-flex-basis",
+      "-ms-flex", "-ms-flex-preferred-size"));
+
+  /**
+   * Per file minification state, filters are shared across threads.
+   */
+  private static class State {
+
+    private final Source in;
+    private final Writer out;
+    private int last = -1;
+    private boolean pendingSpace = false;
+    private boolean pendingSemicolon = false;
+    private StringBuilder word = new StringBuilder();
+    private Deque<Boolean> declarationBlocks = new ArrayDeque<Boolean>();
+    private boolean statementStart = true;
+    private String atRule = null;
+    private String property = null;
+    private boolean inValue = false;
+    private int parenDepth = 0;
+
+    private State(Source in, Writer out) {
+      this.in = in;
+      this.out = out;
+    }
+  }
+
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+  }
+
+  private static boolean isDelimiter(int c) {
+    return c == '{' || c == '}' || c == ';' || c == ':' || c == ','
+      || c == '>' || c == '(' || c == ')';
+  }
+
+  private static boolean noSpaceAfter(int c) {
+    return c == '{' || c == '}' || c == ';' || c == ':' || c == ','
+      || c == '>' || c == '(' || c == '/';
+  }
+
+  private static boolean noSpaceBefore(int c) {
+    return c == '{' || c == '}' || c == ';' || c == ',' || c == '>'
+      || c == ')';
+  }
+
+  private static boolean isHex(char c) {
+    return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f')
+      || (c >= 'A' && c <= 'F');
+  }
+
+  private static void write(State s, int c)
+    throws IOException {
+    s.out.write(c);
+    s.last = c;
+  }
+
+  /**
+   * Writes out any pending semicolon and whitespace that is still needed
+   * before the next character.
+   */
+  private static void flushPending(State s, int next)
+    throws IOException {
+
+    if (s.pendingSemicolon) {
+      s.pendingSemicolon = false;
+      if (next != '}' && next != ';') {
+        write(s, ';');
+      }
+    }
+
+    if (s.pendingSpace) {
+      s.pendingSpace = false;
+      // a space before a colon only matters in selectors, not declarations
+      Boolean inDeclarations = s.declarationBlocks.peek();
+      boolean declarationColon = next == ':' && inDeclarations != null
+        && inDeclarations && s.parenDepth == 0;
+      if (s.last != -1 && !noSpaceAfter(s.last) && !noSpaceBefore(next)
+        && !declarationColon) {
+        write(s, ' ');
+      }
+    }
+  }
+
+  private static void endStatement(State s) {
+    s.statementStart = true;
+    s.atRule = null;
+    s.property = null;
+    s.inValue = false;
+  }
+
+  /**
+   * Returns true if the value of the current declaration can be rewritten.
+   */
+  private static boolean isRewritable(State s) {
+    return s.property == null || (!s.property.startsWith("--")
+      && !VERBATIM_PROPERTIES.contains(s.property));
+  }
+
+  /**
+   * Writes a declaration value word, shortening hex colors and numbers.
+   */
+  private static void writeValueWord(State s, StringBuilder word)
+    throws IOException {
+
+    int length = word.length();
+
+    // six digit hex colors with matching pairs, #aabbcc to #abc
+    if (length == 7 && word.charAt(0) == '#') {
+      boolean shortenable = true;
+      for (int i = 1; i < 7; i++) {
+        if (!isHex(word.charAt(i))) {
+          shortenable = false;
+          break;
+        }
+      }
+      if (shortenable
+        && Character.toLowerCase(word.charAt(1)) == Character.toLowerCase(word.charAt(2))
+        && Character.toLowerCase(word.charAt(3)) == Character.toLowerCase(word.charAt(4))
+        && Character.toLowerCase(word.charAt(5)) == Character.toLowerCase(word.charAt(6))) {
+        write(s, '#');
+        write(s, word.charAt(1));
+        write(s, word.charAt(3));
+        write(s, word.charAt(5));
+        return;
+      }
+    }
+
+    // numbers with an optional sign and unit
+    int pos = 0;
+    boolean signed = length > 0
+      && (word.charAt(0) == '-' || word.charAt(0) == '+');
+    if (signed) {
+      pos++;
+    }
+    int numberStart = pos;
+    boolean digits = false;
+    boolean allZero = true;
+    while (pos < length) {
+      char c = word.charAt(pos);
+      if (c >= '0' && c <= '9') {
+        digits = true;
+        if (c != '0') {
+          allZero = false;
+        }
+      }
+      else if (c != '.') {
+        break;
+      }
+      pos++;
+    }
+    int unitStart = pos;
+    boolean unitValid = true;
+    while (pos < length) {
+      char c = word.charAt(pos);
+      if (!Character.isLetter(c) && c != '%') {
+        unitValid = false;
+        break;
+      }
+      pos++;
+    }
+
+    if (digits && unitValid) {
+
+      if (allZero) {
+
+        // zero lengths don't need units, other units such as s and % do
+        boolean dropUnit = unitStart == length
+          || (s.parenDepth == 0 && LENGTH_UNITS.contains(
+            word.substring(unitStart).toLowerCase()));
+        write(s, '0');
+        if (!dropUnit) {
+          s.out.write(word.toString(), unitStart, length - unitStart);
+          s.last = word.charAt(length - 1);
+        }
+        return;
+      }
+
+      // 0.5em to .5em
+      if (unitStart - numberStart > 2 && word.charAt(numberStart) == '0'
+        && word.charAt(numberStart + 1) == '.') {
+        if (signed) {
+          write(s, word.charAt(0));
+        }
+        for (int i = numberStart + 1; i < length; i++) {
+          write(s, word.charAt(i));
+        }
+        return;
+      }
+    }
+
+    for (int i = 0; i < length; i++) {
+      write(s, word.charAt(i));
+    }
+  }
+
+  private static void flushWord(State s)
+    throws IOException {
+
+    StringBuilder word = s.word;
+    if (word.length() == 0) {
+      return;
+    }
+
+    // remember the at-rule of the statement to know what its block holds, and
+    // the property name of a declaration
+    if (s.statementStart) {
+      s.statementStart = false;
+      if (word.charAt(0) == '@') {
+        s.atRule = word.substring(1).toLowerCase();
+      }
+      else if (Boolean.TRUE.equals(s.declarationBlocks.peek())) {
+        s.property = word.toString().toLowerCase();
+      }
+    }
+
+    flushPending(s, word.charAt(0));
+    if (s.inValue && isRewritable(s)) {
+      writeValueWord(s, word);
+    }
+    else {
+      for (int i = 0; i < word.length(); i++) {
+        write(s, word.charAt(i));
+      }
+    }
+    word.setLength(0);
+  }
+
+  private static void copyString(State s, int quote)
+    throws IOException {
+
+    write(s, quote);
+    int c;
+    while ((c = s.in.read()) != -1) {
+      write(s, c);
+      if (c == '\\') {
+        int escaped = s.in.read();
+        if (escaped != -1) {
+          write(s, escaped);
+        }
+      }
+      else if (c == quote) {
+        return;
+      }
+    }
+  }
+
+  private static void copyUrl(State s)
+    throws IOException {
+
+    // skip leading whitespace inside url(
+    while (isWhitespace(s.in.peek())) {
+      s.in.read();
+    }
+
+    // quoted urls are plain strings followed by the closing paren
+    int c = s.in.peek();
+    if (c == '"' || c == '\'') {
+      copyString(s, s.in.read());
+      while ((c = s.in.read()) != -1 && c != ')') {
+        // drop whitespace between the string and the paren
+      }
+      write(s, ')');
+      return;
+    }
+
+    // unquoted urls can't contain whitespace other than trailing
+    boolean trailingSpace = false;
+    while ((c = s.in.read()) != -1 && c != ')') {
+      if (isWhitespace(c)) {
+        trailingSpace = true;
+        continue;
+      }
+      if (trailingSpace) {
+        write(s, ' ');
+        trailingSpace = false;
+      }
+      write(s, c);
+      if (c == '\\') {
+        int escaped = s.in.read();
+        if (escaped != -1) {
+          write(s, escaped);
+        }
+      }
+    }
+    write(s, ')');
+  }
+
+  private static void copyComment(State s)
+    throws IOException {
+
+    write(s, '/');
+    write(s, '*');
+    int prev = -1;
+    int c;
+    while ((c = s.in.read()) != -1) {
+      write(s, c);
+      if (prev == '*' && c == '/') {
+        return;
+      }
+      prev = c;
+    }
+  }
+
+  private static void skipComment(State s)
+    throws IOException {
+
+    int prev = -1;
+    int c;
+    while ((c = s.in.read()) != -1) {
+      if (prev == '*' && c == '/') {
+        return;
+      }
+      prev = c;
+    }
+  }
+
+  private static void handleDelimiter(State s, int c)
+    throws IOException {
+
+    flushPending(s, c);
+    switch (c) {
+      case '{':
+        write(s, c);
+        boolean declarations = s.atRule == null
+          || DECLARATION_AT_RULES.contains(s.atRule);
+        s.declarationBlocks.push(declarations);
+        endStatement(s);
+        break;
+      case '}':
+        write(s, c);
+        s.declarationBlocks.poll();
+        endStatement(s);
+        break;
+      case ';':
+        s.pendingSemicolon = true;
+        endStatement(s);
+        break;
+      case ':':
+        write(s, c);
+        Boolean inDeclarations = s.declarationBlocks.peek();
+        if (inDeclarations != null && inDeclarations && s.parenDepth == 0) {
+          s.inValue = true;
+        }
+        break;
+      case '(':
+        write(s, c);
+        s.parenDepth++;
+        break;
+      case ')':
+        write(s, c);
+        s.parenDepth = Math.max(0, s.parenDepth - 1);
+        break;
+      default:
+        write(s, c);
+    }
+  }
+
+  @Override
+  protected void minify(Source in, Writer out)
+    throws IOException {
+
+    State s = new State(in, out);
+    int c;
+    while ((c = in.read()) != -1) {
+
+      // comments act as whitespace unless they are marked to be kept
+      if (c == '/' && in.peek() == '*') {
+        flushWord(s);
+        in.read();
+        if (in.peek() == '!') {
+          flushPending(s, '/');
+          copyComment(s);
+        }
+        else {
+          skipComment(s);
+          s.pendingSpace = true;
+        }
+        continue;
+      }
+
+      if (isWhitespace(c)) {
+        flushWord(s);
+        s.pendingSpace = true;
+        continue;
+      }
+
+      if (c == '"' || c == '\'') {
+        flushWord(s);
+        flushPending(s, c);
+        copyString(s, c);
+        continue;
+      }
+
+      // escaped characters are always part of the current word
+      if (c == '\\') {
+        s.word.append((char)c);
+        int escaped = in.read();
+        if (escaped != -1) {
+          s.word.append((char)escaped);
+        }
+        continue;
+      }
+
+      if (isDelimiter(c)) {
+
+        // url contents are copied as is
+        boolean url = c == '(' && s.word.length() == 3
+          && "url".equalsIgnoreCase(s.word.toString());
+        flushWord(s);
+        if (url) {
+          flushPending(s, c);
+          write(s, c);
+          copyUrl(s);
+        }
+        else {
+          handleDelimiter(s, c);
+        }
+        continue;
+      }
+
+      s.word.append((char)c);
+    }
+
+    flushWord(s);
+    if (s.pendingSemicolon) {
+      write(s, ';');
+    }
+  }
+
+}
@@ -0,0 +1,181 @@
+package com.denniskubes.webasset;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A css filter that sends local images, fonts, and imported stylesheets
+ * referenced through url() and @import through the WebAssetManager filtering
+ * and caching, and rewrites the references to the content hashed cached
+ * paths. Imported stylesheets run through the css filter chain themselves, so
+ * references are rewritten recursively.</p>
+ *
+ * <p>Rewritten references are relative to the cached stylesheet so they work
+ * under any context path. References are recorded as asset dependencies so a
+ * change to a referenced file refilters the stylesheet. External, data, and
+ * missing references are left as is.</p>
+ */
+public class CssUrlRewriteFilter
+  implements WebAssetFilter, WebAssetManagerAware {
+
+  private final static Logger LOG = LoggerFactory.getLogger(CssUrlRewriteFilter.class);
+
+  // @import "file.css" or url(file.png), optionally quoted
+  private final static Pattern REFERENCE_PATTERN = Pattern.compile(
+    "(@import\\s+)(['\"])([^'\"]+)\\2|url\\(\\s*(['\"]?)([^'\")]+?)\\4\\s*\\)",
+    Pattern.CASE_INSENSITIVE);
+
+  // stylesheets being filtered on this thread, guards against import cycles
+  private final static ThreadLocal<Set<String>> IN_PROGRESS = new ThreadLocal<Set<String>>() {
+    @Override
+    protected Set<String> initialValue() {
+      return new HashSet<String>();
+    }
+  };
+
+  private WebAssetManager webAssetManager;
+
+  private static boolean isLocal(String reference) {
+    return StringUtils.isNotBlank(reference) && !reference.startsWith("#")
+      && !reference.startsWith("//") && !reference.contains(":")
+      && !reference.contains("${");
+  }
+
+  /**
+   * Returns the path of the target relative to the directory.
+   */
+  static String relativize(String fromDirectory, String toPath) {
+
+    String[] from = StringUtils.split(fromDirectory, "/");
+    String[] to = StringUtils.split(toPath, "/");
+
+    int common = 0;
+    while (common < from.length && common < to.length - 1
+      && from[common].equals(to[common])) {
+      common++;
+    }
+
+    StringBuilder relative = new StringBuilder();
+    for (int i = common; i < from.length; i++) {
+      relative.append("../");
+    }
+    for (int i = common; i < to.length; i++) {
+      relative.append(to[i]);
+      if (i < to.length - 1) {
+        relative.append('/');
+      }
+    }
+    return relative.toString();
+  }
+
+  /**
+   * Caches the referenced asset and returns the new reference, or null if the
+   * reference should be left as is.
+   */
+  private String rewrite(String sourcePath, String reference) {
+
+    if (!isLocal(reference)) {
+      return null;
+    }
+
+    // keep any query or fragment, for example font.eot?#iefix
+    int suffixStart = StringUtils.indexOfAny(reference, "?#");
+    String suffix = suffixStart >= 0 ? reference.substring(suffixStart) : "";
+    String target = suffixStart >= 0 ? reference.substring(0, suffixStart)
+      : reference;
+    if (target.isEmpty()) {
+      return null;
+    }
+
+    // root relative references are from the root directory, others are
+    // relative to the stylesheet
+    String targetPath = target.startsWith("/") ? target
+      : FilenameUtils.getFullPathNoEndSeparator(sourcePath) + "/" + target;
+    targetPath = FilenameUtils.normalize(targetPath, true);
+    if (targetPath == null || IN_PROGRESS.get().contains(targetPath)) {
+      return null;
+    }
+
+    String cachedPath = webAssetManager.cacheAsset(targetPath);
+    if (cachedPath == null) {
+      LOG.debug("Leaving missing reference {} in {}", reference, sourcePath);
+      return null;
+    }
+    webAssetManager.addAssetDependency(sourcePath, targetPath);
+
+    String cachedDirectory = webAssetManager.getCachedDirectory(sourcePath);
+    return relativize(cachedDirectory, cachedPath) + suffix;
+  }
+
+  @Override
+  public File filterAsset(File input, Map<String, String> fieldMap) {
+
+    String sourcePath = fieldMap.get("path");
+    if (webAssetManager == null || sourcePath == null) {
+      return input;
+    }
+
+    Set<String> inProgress = IN_PROGRESS.get();
+    inProgress.add(sourcePath);
+    try {
+
+      String css = FileUtils.readFileToString(input, StandardCharsets.UTF_8);
+      Matcher matcher = REFERENCE_PATTERN.matcher(css);
+      StringBuffer rewritten = new StringBuffer();
+      boolean changed = false;
+
+      while (matcher.find()) {
+
+        boolean isImport = matcher.group(1) != null;
+        String reference = isImport ? matcher.group(3) : matcher.group(5);
+        String replacement = rewrite(sourcePath, reference);
+        if (replacement == null) {
+          continue;
+        }
+
+        String quote = isImport ? matcher.group(2) : matcher.group(4);
+        String output = isImport ? matcher.group(1) + quote + replacement
+          + quote : "url(" + quote + replacement + quote + ")";
+        matcher.appendReplacement(rewritten, Matcher.quoteReplacement(output));
+        changed = true;
+      }
+
+      if (changed) {
+        matcher.appendTail(rewritten);
+        FileUtils.writeStringToFile(input, rewritten.toString(),
+          StandardCharsets.UTF_8);
+      }
+      return input;
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException("Error rewriting urls in "
+        + input.getPath(), e);
+    }
+    finally {
+      inProgress.remove(sourcePath);
+    }
+  }
+
+  public WebAssetManager getWebAssetManager() {
+    return webAssetManager;
+  }
+
+  @Override
+  public void setWebAssetManager(WebAssetManager webAssetManager) {
+    this.webAssetManager = webAssetManager;
+  }
+
+}
@@ -0,0 +1,127 @@
+package com.denniskubes.webasset;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Writes html tag fragments and attributes straight to a writer without
+ * creating intermediate strings. The <code> name="</code> prefix of each
+ * attribute name is built once and reused.</p>
+ *
+ * <p>Attribute values are escaped for double quoted attributes. Ampersands
+ * that already start a character reference, such as <code>&amp;amp;</code>,
+ * are left as is so values escaped in config files aren't escaped twice.</p>
+ */
+final class HtmlAttributeWriter {
+
+  private final static char[] QUOT = "&quot;".toCharArray();
+  private final static char[] LT = "&lt;".toCharArray();
+  private final static char[] GT = "&gt;".toCharArray();
+  private final static char[] AMP = "&amp;".toCharArray();
+
+  // space, name, equals, and opening quote by attribute name
+  private final static Map<String, char[]> ATTRIBUTE_PREFIXES = new ConcurrentHashMap<String, char[]>();
+
+  private HtmlAttributeWriter() {
+  }
+
+  private static boolean isAlphanumeric(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+      || (c >= '0' && c <= '9');
+  }
+
+  /**
+   * Returns true if the ampersand at the index starts a named, decimal, or
+   * hex character reference ending in a semicolon.
+   */
+  static boolean isCharacterReference(String value, int index) {
+
+    int length = value.length();
+    int pos = index + 1;
+    boolean numeric = pos < length && value.charAt(pos) == '#';
+    if (numeric) {
+      pos++;
+      if (pos < length && (value.charAt(pos) == 'x' || value.charAt(pos) == 'X')) {
+        pos++;
+      }
+    }
+
+    int start = pos;
+    while (pos < length && isAlphanumeric(value.charAt(pos))) {
+      pos++;
+    }
+    return pos > start && pos < length && value.charAt(pos) == ';';
+  }
+
+  /**
+   * Writes the value escaped for a double quoted attribute, in runs of
+   * unescaped characters.
+   */
+  static void writeEscaped(Writer out, String value)
+    throws IOException {
+
+    int length = value.length();
+    int runStart = 0;
+    for (int i = 0; i < length; i++) {
+
+      char[] replacement;
+      switch (value.charAt(i)) {
+        case '"':
+          replacement = QUOT;
+          break;
+        case '<':
+          replacement = LT;
+          break;
+        case '>':
+          replacement = GT;
+          break;
+        case '&':
+          replacement = isCharacterReference(value, i) ? null : AMP;
+          break;
+        default:
+          replacement = null;
+      }
+
+      if (replacement != null) {
+        if (i > runStart) {
+          out.write(value, runStart, i - runStart);
+        }
+        out.write(replacement);
+        runStart = i + 1;
+      }
+    }
+
+    if (runStart < length) {
+      out.write(value, runStart, length - runStart);
+    }
+  }
+
+  /**
+   * Writes the start of an attribute, <code> name="</code>, leaving the
+   * value and closing quote to the caller.
+   */
+  static void writeAttributeStart(Writer out, String name)
+    throws IOException {
+
+    char[] prefix = ATTRIBUTE_PREFIXES.get(name);
+    if (prefix == null) {
+      prefix = (" " + name + "=\"").toCharArray();
+      ATTRIBUTE_PREFIXES.put(name, prefix);
+    }
+    out.write(prefix);
+  }
+
+  /**
+   * Writes a complete double quoted attribute with an escaped value.
+   */
+  static void writeAttribute(Writer out, String name, String value)
+    throws IOException {
+
+    writeAttributeStart(out, name);
+    writeEscaped(out, value);
+    out.write('"');
+  }
+
+}
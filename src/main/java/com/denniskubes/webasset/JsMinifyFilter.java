@@ -0,0 +1,308 @@
+package com.denniskubes.webasset;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>A conservative streaming javascript minifier that only removes comments
+ * and unneeded whitespace. Identifiers are never renamed and code is never
+ * restructured.</p>
+ *
+ * <p>Strings, template literals, and regular expression literals are copied
+ * as is and comments starting with <code>/*!</code> are kept. Line breaks are
+ * kept wherever automatic semicolon insertion could depend on them, so code
+ * without semicolons keeps working.</p>
+ */
+public class JsMinifyFilter
+  extends MinifyWebAssetFilter {
+
+  // keywords after which a slash starts a regular expression, not a division
+  private final static Set<String> REGEX_KEYWORDS = new HashSet<String>(
+    Arrays.asList("return", "typeof", "instanceof", "in", "of", "new",
+      "delete", "void", "throw", "case", "do", "else", "yield", "await"));
+
+  /**
+   * Per file minification state, filters are shared across threads.
+   */
+  private static class State {
+
+    private final Source in;
+    private final Writer out;
+    private int last = -1;
+    private boolean pendingSpace = false;
+    private boolean pendingNewline = false;
+    private StringBuilder lastWord = new StringBuilder();
+
+    private State(Source in, Writer out) {
+      this.in = in;
+      this.out = out;
+    }
+  }
+
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f'
+      || c == 0x0B || c == 0xA0 || c == 0xFEFF || c == 0x2028 || c == 0x2029;
+  }
+
+  private static boolean isNewline(int c) {
+    return c == '\n' || c == '\r' || c == 0x2028 || c == 0x2029;
+  }
+
+  private static boolean isIdentifier(int c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+      || (c >= '0' && c <= '9') || c == '_' || c == '$' || c == '\\'
+      || (c > 127 && !isWhitespace(c));
+  }
+
+  private static void write(State s, int c)
+    throws IOException {
+
+    s.out.write(c);
+    if (isIdentifier(c)) {
+      if (!isIdentifier(s.last)) {
+        s.lastWord.setLength(0);
+      }
+      s.lastWord.append((char)c);
+    }
+    else {
+      s.lastWord.setLength(0);
+    }
+    s.last = c;
+  }
+
+  /**
+   * Writes out any whitespace that is still needed before the next character.
+   */
+  private static void flushPending(State s, int next)
+    throws IOException {
+
+    boolean newline = s.pendingNewline;
+    boolean space = s.pendingSpace;
+    s.pendingNewline = false;
+    s.pendingSpace = false;
+    if (s.last == -1) {
+      return;
+    }
+
+    // a line break is only dropped where it can't end a statement
+    if (newline) {
+      boolean safe = s.last == '{' || s.last == ';' || s.last == ','
+        || s.last == '(' || s.last == '[' || next == '}' || next == ')'
+        || next == ']' || next == ';' || next == ',';
+      if (!safe) {
+        write(s, '\n');
+        return;
+      }
+    }
+
+    // spaces are kept between words and between operators that would merge
+    if (newline || space) {
+      boolean needed = (isIdentifier(s.last) && (isIdentifier(next) || next == '.'))
+        || (s.last == '+' && next == '+') || (s.last == '-' && next == '-')
+        || (s.last == '/' && next == '/');
+      if (needed) {
+        write(s, ' ');
+      }
+    }
+  }
+
+  /**
+   * Returns true if a slash at the current position starts a regular
+   * expression literal rather than a division.
+   */
+  private static boolean regexAllowed(State s) {
+    if (s.last == -1) {
+      return true;
+    }
+    if (isIdentifier(s.last)) {
+      return REGEX_KEYWORDS.contains(s.lastWord.toString());
+    }
+    return s.last != ')' && s.last != ']';
+  }
+
+  private static void copyString(State s, int quote)
+    throws IOException {
+
+    write(s, quote);
+    int c;
+    while ((c = s.in.read()) != -1) {
+      write(s, c);
+      if (c == '\\') {
+        int escaped = s.in.read();
+        if (escaped != -1) {
+          write(s, escaped);
+        }
+      }
+      else if (c == quote || isNewline(c)) {
+        return;
+      }
+    }
+  }
+
+  private static void copyTemplate(State s)
+    throws IOException {
+
+    write(s, '`');
+    int c;
+    while ((c = s.in.read()) != -1) {
+      write(s, c);
+      if (c == '\\') {
+        int escaped = s.in.read();
+        if (escaped != -1) {
+          write(s, escaped);
+        }
+      }
+      else if (c == '`') {
+        return;
+      }
+      else if (c == '$' && s.in.peek() == '{') {
+        write(s, s.in.read());
+        copyTemplateExpression(s);
+      }
+    }
+  }
+
+  /**
+   * Copies a template literal substitution as is, up to its closing brace.
+   */
+  private static void copyTemplateExpression(State s)
+    throws IOException {
+
+    int depth = 1;
+    int c;
+    while ((c = s.in.read()) != -1) {
+      if (c == '"' || c == '\'') {
+        copyString(s, c);
+        continue;
+      }
+      if (c == '`') {
+        copyTemplate(s);
+        continue;
+      }
+      write(s, c);
+      if (c == '{') {
+        depth++;
+      }
+      else if (c == '}' && --depth == 0) {
+        return;
+      }
+    }
+  }
+
+  private static void copyRegex(State s)
+    throws IOException {
+
+    write(s, '/');
+    boolean inClass = false;
+    int c;
+    while ((c = s.in.read()) != -1) {
+      write(s, c);
+      if (c == '\\') {
+        int escaped = s.in.read();
+        if (escaped != -1) {
+          write(s, escaped);
+        }
+      }
+      else if (c == '[') {
+        inClass = true;
+      }
+      else if (c == ']') {
+        inClass = false;
+      }
+      else if ((c == '/' && !inClass) || isNewline(c)) {
+        return;
+      }
+    }
+  }
+
+  @Override
+  protected void minify(Source in, Writer out)
+    throws IOException {
+
+    State s = new State(in, out);
+    int c;
+    while ((c = in.read()) != -1) {
+
+      if (isWhitespace(c)) {
+        if (isNewline(c)) {
+          s.pendingNewline = true;
+        }
+        else {
+          s.pendingSpace = true;
+        }
+        continue;
+      }
+
+      if (c == '/') {
+
+        int next = in.peek();
+
+        // line comments end at, and count as, a line break
+        if (next == '/') {
+          while ((c = in.read()) != -1 && !isNewline(c)) {
+            // skip the comment
+          }
+          s.pendingNewline = true;
+          continue;
+        }
+
+        // block comments act as whitespace unless marked to be kept
+        if (next == '*') {
+          in.read();
+          boolean keep = in.peek() == '!';
+          if (keep) {
+            flushPending(s, '/');
+            write(s, '/');
+            write(s, '*');
+          }
+          int prev = -1;
+          boolean newline = false;
+          while ((c = in.read()) != -1) {
+            if (keep) {
+              write(s, c);
+            }
+            newline |= isNewline(c);
+            if (prev == '*' && c == '/') {
+              break;
+            }
+            prev = c;
+          }
+          if (keep) {
+            s.pendingNewline = true;
+          }
+          else if (newline) {
+            s.pendingNewline = true;
+          }
+          else {
+            s.pendingSpace = true;
+          }
+          continue;
+        }
+
+        flushPending(s, c);
+        if (regexAllowed(s)) {
+          copyRegex(s);
+        }
+        else {
+          write(s, c);
+        }
+        continue;
+      }
+
+      flushPending(s, c);
+      if (c == '"' || c == '\'') {
+        copyString(s, c);
+      }
+      else if (c == '`') {
+        copyTemplate(s);
+      }
+      else {
+        write(s, c);
+      }
+    }
+  }
+
+}
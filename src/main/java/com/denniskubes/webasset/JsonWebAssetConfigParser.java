@@ -1,118 +1,271 @@
 package com.denniskubes.webasset;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.apache.commons.lang3.StringUtils;
 
-import com.denniskubes.utils.JSON;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.TextNode;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 
+/**
+ * Parses a json config in a single pass over the parser tokens, without
+ * building a tree. Values of the wrong type are ignored as before, strings
+ * other than scripts and links that are blank are dropped, and parse errors
+ * give the line and column of the problem.
+ */
 public class JsonWebAssetConfigParser
   implements WebAssetConfigParser {
 
-  private final static Logger LOG = LoggerFactory.getLogger(JsonWebAssetConfigParser.class);
+  final static JsonFactory JSON_FACTORY = new JsonFactory();
 
-  private JsonNode root;
+  private boolean global = false;
+  private String title;
+  private Map<String, String> aliases = new LinkedHashMap<String, String>();
+  private List<String> ids;
+  private List<Map<String, String>> scripts = new ArrayList<Map<String, String>>();
+  private List<Map<String, String>> links = new ArrayList<Map<String, String>>();
+  private List<Map<String, String>> metas = new ArrayList<Map<String, String>>();
+  private String parent;
+  private List<String> includes;
 
   public JsonWebAssetConfigParser(String jsonConfig) {
-    
-    root = JSON.parse(jsonConfig);
-    if (root == null) {
-      throw new IllegalArgumentException("Couldn't parse config json");
+    try {
+      parse(new ByteArrayInputStream(jsonConfig.getBytes(StandardCharsets.UTF_8)));
+    }
+    catch (IOException e) {
+      throw new IllegalArgumentException("Couldn't parse config json", e);
+    }
+  }
+
+  /**
+   * Parses the json config from the stream, closing it when done.
+   *
+   * @param jsonConfig The stream of json bytes.
+   *
+   * @throws IOException If the stream can't be read or is empty.
+   *
+   * @throws IllegalArgumentException If the json isn't valid or isn't an
+   * object, with the line and column of the error.
+   */
+  public JsonWebAssetConfigParser(InputStream jsonConfig)
+    throws IOException {
+    parse(jsonConfig);
+  }
+
+  private void parse(InputStream jsonConfig)
+    throws IOException {
+
+    try (JsonParser parser = JSON_FACTORY.createParser(jsonConfig)) {
+
+      JsonToken first = parser.nextToken();
+      if (first == null) {
+        throw new IOException("Web asset config file doesn't have data");
+      }
+      else if (first != JsonToken.START_OBJECT) {
+        throw new IllegalArgumentException("Couldn't parse config json at "
+          + getLocation(parser.getTokenLocation()) + ": not a json object");
+      }
+
+      // a field given more than once keeps the last value
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if ("global".equals(field)) {
+          global = (value == JsonToken.VALUE_TRUE);
+        }
+        else if ("title".equals(field)) {
+          title = (value == JsonToken.VALUE_STRING) ? parser.getText() : null;
+        }
+        else if ("aliases".equals(field)) {
+          aliases = readAttributes(parser);
+        }
+        else if ("ids".equals(field)) {
+          ids = readStrings(parser);
+        }
+        else if ("scripts".equals(field)) {
+          scripts = readAssets(parser, "type", "text/javascript");
+        }
+        else if ("links".equals(field)) {
+          links = readAssets(parser, "rel", "stylesheet", "type", "text/css");
+        }
+        else if ("meta".equals(field)) {
+          metas = readAssets(parser);
+        }
+        else if ("extends".equals(field)) {
+          parent = (value == JsonToken.VALUE_STRING) ? parser.getText() : null;
+          parser.skipChildren();
+        }
+        else if ("include".equals(field)) {
+          includes = readStrings(parser);
+        }
+        else {
+          parser.skipChildren();
+        }
+      }
+    }
+    catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("Couldn't parse config json at "
+        + getLocation(e.getLocation()) + ": " + e.getOriginalMessage(), e);
     }
   }
 
+  private static String getLocation(JsonLocation location) {
+    return (location != null) ? "line " + location.getLineNr() + ", column "
+      + location.getColumnNr() : "unknown location";
+  }
+
+  /**
+   * Reads the non blank string fields of the current object, skipping other
+   * values. Anything other than an object gives no attributes.
+   */
+  private static Map<String, String> readAttributes(JsonParser parser)
+    throws IOException {
+
+    Map<String, String> attributes = new LinkedHashMap<String, String>();
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return attributes;
+    }
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      if (parser.nextToken() == JsonToken.VALUE_STRING) {
+        String value = parser.getText();
+        if (StringUtils.isNotBlank(value)) {
+          attributes.put(name, value);
+        }
+      }
+      else {
+        parser.skipChildren();
+      }
+    }
+    return attributes;
+  }
+
+  /**
+   * Reads the non blank strings of the current string or array value.
+   */
+  static List<String> readStrings(JsonParser parser)
+    throws IOException {
+
+    List<String> values = new ArrayList<String>();
+    JsonToken token = parser.currentToken();
+    if (token == JsonToken.VALUE_STRING) {
+      if (StringUtils.isNotBlank(parser.getText())) {
+        values.add(parser.getText());
+      }
+    }
+    else if (token == JsonToken.START_ARRAY) {
+      while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+        if (token == JsonToken.VALUE_STRING) {
+          if (StringUtils.isNotBlank(parser.getText())) {
+            values.add(parser.getText());
+          }
+        }
+        else {
+          parser.skipChildren();
+        }
+      }
+    }
+    else {
+      parser.skipChildren();
+    }
+    return values;
+  }
+
+  /**
+   * Reads the elements of the current array, or the field values of an
+   * object, as asset attributes. An element that is a string is the asset
+   * path with the given default attributes, without defaults string elements
+   * are ignored. Elements without attributes are dropped.
+   */
+  private static List<Map<String, String>> readAssets(JsonParser parser,
+    String... defaults)
+    throws IOException {
+
+    List<Map<String, String>> assets = new ArrayList<Map<String, String>>();
+    JsonToken token = parser.currentToken();
+    if (token != JsonToken.START_ARRAY && token != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return assets;
+    }
+
+    JsonToken end = (token == JsonToken.START_ARRAY) ? JsonToken.END_ARRAY
+      : JsonToken.END_OBJECT;
+    while ((token = parser.nextToken()) != end) {
+      if (token == JsonToken.FIELD_NAME) {
+        token = parser.nextToken();
+      }
+      Map<String, String> attributes;
+      if (token == JsonToken.VALUE_STRING && defaults.length > 0) {
+        attributes = new LinkedHashMap<String, String>();
+        for (int i = 0; i < defaults.length; i += 2) {
+          attributes.put(defaults[i], defaults[i + 1]);
+        }
+        attributes.put("path", parser.getText());
+      }
+      else {
+        attributes = readAttributes(parser);
+      }
+      if (attributes.size() > 0) {
+        assets.add(attributes);
+      }
+    }
+    return assets;
+  }
+
   @Override
   public boolean isGlobal() {
-    return JSON.getBoolean(root, "global", false);
+    return global;
   }
 
   @Override
   public String getTitle() {
-    return JSON.getString(root, "title");
+    return title;
   }
 
   @Override
   public Map<String, String> getAliases() {
-    return JSON.getAttributes(root.get("aliases"));
+    return aliases;
   }
 
   @Override
   public List<String> getIds() {
-    List<String> ids = null;
-    if (root.has("ids")) {
-      ids = JSON.getStrings(root.get("ids"));
-    }
     return ids;
   }
 
   @Override
   public List<Map<String, String>> getScripts() {
-
-    List<Map<String, String>> scripts = new ArrayList<Map<String, String>>();
-    if (root.has("scripts")) {
-      for (JsonNode script : root.get("scripts")) {
-        Map<String, String> attributes = null;
-        if (script instanceof TextNode) {
-          attributes = new LinkedHashMap<String, String>();
-          attributes.put("type", "text/javascript");
-          attributes.put("path", script.asText());
-        }
-        else {
-          attributes = JSON.getAttributes(script);
-        }
-        if (attributes.size() > 0) {
-          scripts.add(attributes);
-        }
-      }
-    }
-
     return scripts;
   }
 
   @Override
   public List<Map<String, String>> getLinks() {
-
-    List<Map<String, String>> links = new ArrayList<Map<String, String>>();
-    if (root.has("links")) {
-      for (JsonNode link : root.get("links")) {
-        Map<String, String> attributes = null;
-        if (link instanceof TextNode) {
-          attributes = new LinkedHashMap<String, String>();
-          attributes.put("rel", "stylesheet");
-          attributes.put("type", "text/css");
-          attributes.put("path", link.asText());
-        }
-        else {
-          attributes = JSON.getAttributes(link);
-        }
-        if (attributes.size() > 0) {
-          links.add(attributes);
-        }
-      }
-    }
-
     return links;
   }
 
   @Override
   public List<Map<String, String>> getMetas() {
-
-    List<Map<String, String>> metas = new ArrayList<Map<String, String>>();
-    if (root.has("meta")) {
-      for (JsonNode meta : root.get("meta")) {
-        Map<String, String> attributes = JSON.getAttributes(meta);
-        if (attributes.size() > 0) {
-          metas.add(attributes);
-        }
-      }
-    }
     return metas;
   }
 
+  @Override
+  public String getExtends() {
+    return parent;
+  }
+
+  @Override
+  public List<String> getIncludes() {
+    return includes;
+  }
+
 }
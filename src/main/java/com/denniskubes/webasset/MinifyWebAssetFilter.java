@@ -0,0 +1,166 @@
+package com.denniskubes.webasset;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Base class for the built in minification filters. Streams the input file
+ * through a character level minifier into a sibling file, replaces the input
+ * with the minified output, and records byte reduction metrics per asset.</p>
+ *
+ * <p>Subclasses read with a single character of lookahead through the read and
+ * peek methods and write straight to the output writer, so no copy of the
+ * asset is held in memory.</p>
+ */
+public abstract class MinifyWebAssetFilter
+  implements WebAssetFilter {
+
+  private final static Logger LOG = LoggerFactory.getLogger(MinifyWebAssetFilter.class);
+
+  private Map<String, MinifyStats> stats = new ConcurrentHashMap<String, MinifyStats>();
+
+  /**
+   * Byte counts before and after minification for a single asset.
+   */
+  public static class MinifyStats {
+
+    private final long originalBytes;
+    private final long minifiedBytes;
+
+    public MinifyStats(long originalBytes, long minifiedBytes) {
+      this.originalBytes = originalBytes;
+      this.minifiedBytes = minifiedBytes;
+    }
+
+    public long getOriginalBytes() {
+      return originalBytes;
+    }
+
+    public long getMinifiedBytes() {
+      return minifiedBytes;
+    }
+
+    public long getBytesSaved() {
+      return originalBytes - minifiedBytes;
+    }
+  }
+
+  /**
+   * A reader with a single character of lookahead.
+   */
+  protected static class Source {
+
+    private final Reader reader;
+    private int peeked = -2;
+
+    protected Source(Reader reader) {
+      this.reader = reader;
+    }
+
+    /**
+     * Returns the next character without consuming it, -1 at the end.
+     */
+    protected int peek()
+      throws IOException {
+      if (peeked == -2) {
+        peeked = reader.read();
+      }
+      return peeked;
+    }
+
+    /**
+     * Consumes and returns the next character, -1 at the end.
+     */
+    protected int read()
+      throws IOException {
+      if (peeked != -2) {
+        int c = peeked;
+        peeked = -2;
+        return c;
+      }
+      return reader.read();
+    }
+  }
+
+  /**
+   * Minifies the source, writing the result to the output.
+   *
+   * @param in The source to read from.
+   * @param out The writer for minified output.
+   */
+  protected abstract void minify(Source in, Writer out)
+    throws IOException;
+
+  @Override
+  public File filterAsset(File input, Map<String, String> fieldMap) {
+
+    File output = new File(input.getPath() + ".min");
+    try {
+
+      Reader reader = new BufferedReader(new InputStreamReader(
+        new FileInputStream(input), StandardCharsets.UTF_8));
+      Writer writer = new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(output), StandardCharsets.UTF_8));
+      try {
+        minify(new Source(reader), writer);
+      }
+      finally {
+        reader.close();
+        writer.close();
+      }
+
+      // record the reduction by the source asset path when we have one
+      long originalBytes = input.length();
+      long minifiedBytes = output.length();
+      String assetPath = fieldMap != null ? fieldMap.get("path") : null;
+      if (assetPath == null) {
+        assetPath = input.getPath();
+      }
+      stats.put(assetPath, new MinifyStats(originalBytes, minifiedBytes));
+      LOG.debug("Minified {} from {} to {} bytes", assetPath, originalBytes,
+        minifiedBytes);
+
+      // replace the input so the asset keeps its name and extension
+      FileUtils.deleteQuietly(input);
+      FileUtils.moveFile(output, input);
+      return input;
+    }
+    catch (IOException e) {
+      FileUtils.deleteQuietly(output);
+      throw new UncheckedIOException("Error minifying " + input.getPath(), e);
+    }
+  }
+
+  /**
+   * Returns the byte reduction metrics for the asset path or null if the asset
+   * hasn't been minified.
+   */
+  public MinifyStats getStats(String assetPath) {
+    return stats.get(assetPath);
+  }
+
+  /**
+   * Returns the byte reduction metrics of all minified assets by asset path.
+   */
+  public Map<String, MinifyStats> getAllStats() {
+    return Collections.unmodifiableMap(stats);
+  }
+
+}
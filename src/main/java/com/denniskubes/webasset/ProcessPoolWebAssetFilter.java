@@ -0,0 +1,384 @@
+package com.denniskubes.webasset;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A WebAssetFilter that sends assets to a pool of long running external
+ * worker processes instead of starting a new process for every asset.</p>
+ *
+ * <p>Workers are started lazily from the configured command, up to maxWorkers,
+ * and are reused across assets. Workers talk over stdin and stdout using a
+ * simple length prefixed protocol where all integers are 4 byte big-endian.
+ * A request is the content length followed by the content bytes. A response
+ * is a status, 0 for success, followed by a length and that many bytes. On
+ * success the bytes are the filtered content, on failure they are a UTF-8
+ * error message.</p>
+ *
+ * <p>Each request must complete within the request timeout and responses can
+ * be at most maxResponseLength bytes. Workers that time out, crash, or break
+ * the protocol are killed and replaced on the next request. The filter is registered like any other filter through the
+ * WebAssetManager filters and typeToFilters properties.</p>
+ */
+public class ProcessPoolWebAssetFilter
+  implements WebAssetFilter {
+
+  private final static Logger LOG = LoggerFactory.getLogger(ProcessPoolWebAssetFilter.class);
+
+  private List<String> command = new ArrayList<String>();
+  private File workingDirectory;
+  private int maxWorkers = 2;
+  private long requestTimeout = 30000;
+  private long acquireTimeout = 60000;
+  private int maxResponseLength = 64 * 1024 * 1024;
+  private String outputExtension;
+
+  private AtomicBoolean active = new AtomicBoolean(false);
+  private Semaphore permits;
+  private LinkedBlockingQueue<Worker> idleWorkers = new LinkedBlockingQueue<Worker>();
+  private List<Worker> allWorkers = new ArrayList<Worker>();
+  private ExecutorService exchangeExecutor;
+
+  /**
+   * A single external worker process and its framed stdin and stdout streams.
+   */
+  private class Worker {
+
+    private Process process;
+    private DataOutputStream toWorker;
+    private DataInputStream fromWorker;
+
+    private Worker()
+      throws IOException {
+
+      ProcessBuilder builder = new ProcessBuilder(command);
+      if (workingDirectory != null) {
+        builder.directory(workingDirectory);
+      }
+      builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+      process = builder.start();
+      toWorker = new DataOutputStream(new BufferedOutputStream(
+        process.getOutputStream()));
+      fromWorker = new DataInputStream(new BufferedInputStream(
+        process.getInputStream()));
+    }
+
+    private boolean isAlive() {
+      return process.isAlive();
+    }
+
+    private byte[] exchange(byte[] content)
+      throws IOException {
+
+      // write the framed request
+      toWorker.writeInt(content.length);
+      toWorker.write(content);
+      toWorker.flush();
+
+      // read the framed response, a closed stream means the worker died
+      int status = fromWorker.readInt();
+      int length = fromWorker.readInt();
+      // the length is checked before allocating, a bad length is a protocol
+      // error and the worker is discarded
+      if (length < 0 || length > maxResponseLength) {
+        throw new IOException("Invalid response length from worker: " + length);
+      }
+      byte[] response = new byte[length];
+      fromWorker.readFully(response);
+
+      if (status != 0) {
+        String message = new String(response, StandardCharsets.UTF_8);
+        throw new WorkerException("Worker failed with status " + status + ": "
+          + message);
+      }
+      return response;
+    }
+
+    private void destroy() {
+      process.destroyForcibly();
+    }
+  }
+
+  /**
+   * A failure reported by a worker through the protocol. The worker itself is
+   * still healthy and can be reused.
+   */
+  private static class WorkerException
+    extends IOException {
+
+    private final static long serialVersionUID = 1L;
+
+    private WorkerException(String message) {
+      super(message);
+    }
+  }
+
+  private Worker acquireWorker()
+    throws IOException {
+
+    // reuse an idle worker if it is still running, dead workers are dropped
+    // and replaced with a fresh process
+    Worker worker = idleWorkers.poll();
+    while (worker != null && !worker.isAlive()) {
+      LOG.warn("Replacing exited filter worker for {}", command);
+      discardWorker(worker);
+      worker = idleWorkers.poll();
+    }
+
+    if (worker == null) {
+      worker = new Worker();
+      synchronized (allWorkers) {
+        allWorkers.add(worker);
+      }
+      LOG.info("Started filter worker for {}", command);
+    }
+    return worker;
+  }
+
+  private void discardWorker(Worker worker) {
+    worker.destroy();
+    synchronized (allWorkers) {
+      allWorkers.remove(worker);
+    }
+  }
+
+  /**
+   * Sends the content to a pooled worker and returns the filtered content.
+   *
+   * @param content The raw content to filter.
+   *
+   * @return The filtered content.
+   *
+   * @throws IOException If no worker is available, the worker times out, the
+   * worker crashes, or the worker reports a failure.
+   */
+  public byte[] filter(final byte[] content)
+    throws IOException {
+
+    if (!active.get()) {
+      throw new IOException("Process pool filter is not active");
+    }
+
+    // cap the number of concurrent requests, one per worker
+    boolean permitted = false;
+    try {
+      permitted = permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (!permitted) {
+      throw new IOException("Timed out waiting for a filter worker");
+    }
+
+    Worker worker = null;
+    boolean healthy = false;
+    try {
+
+      worker = acquireWorker();
+      final Worker current = worker;
+      Future<byte[]> response = exchangeExecutor.submit(new Callable<byte[]>() {
+        @Override
+        public byte[] call()
+          throws Exception {
+          return current.exchange(content);
+        }
+      });
+
+      try {
+        byte[] filtered = response.get(requestTimeout, TimeUnit.MILLISECONDS);
+        healthy = true;
+        return filtered;
+      }
+      catch (TimeoutException e) {
+        response.cancel(true);
+        throw new IOException("Filter worker timed out after " + requestTimeout
+          + "ms");
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted waiting for filter worker");
+      }
+      catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof WorkerException) {
+          // the worker answered properly, it is fine to reuse
+          healthy = true;
+          throw (WorkerException)cause;
+        }
+        throw new IOException("Filter worker failed", cause);
+      }
+    }
+    finally {
+
+      // healthy workers go back into the pool, anything else is killed so the
+      // next request starts a fresh process
+      if (worker != null) {
+        if (healthy && active.get()) {
+          idleWorkers.offer(worker);
+        }
+        else {
+          discardWorker(worker);
+        }
+      }
+      permits.release();
+    }
+  }
+
+  @Override
+  public File filterAsset(File input, Map<String, String> fieldMap) {
+
+    try {
+
+      byte[] filtered = filter(FileUtils.readFileToByteArray(input));
+
+      // optionally change the extension, for example a preprocessor that
+      // turns .less files into .css files
+      File output = input;
+      if (outputExtension != null) {
+        String baseName = FilenameUtils.getBaseName(input.getName());
+        output = new File(input.getParentFile(), baseName + "."
+          + outputExtension);
+      }
+
+      FileUtils.writeByteArrayToFile(output, filtered);
+      if (!output.equals(input)) {
+        FileUtils.deleteQuietly(input);
+      }
+      return output;
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException("Error filtering " + input.getPath(), e);
+    }
+  }
+
+  /**
+   * Activates the pool. Workers are started lazily on first use.
+   */
+  @PostConstruct
+  public synchronized void startup() {
+
+    if (command == null || command.isEmpty()) {
+      throw new IllegalStateException("A worker command is required");
+    }
+    if (maxWorkers < 1) {
+      throw new IllegalStateException("maxWorkers must be at least 1");
+    }
+
+    permits = new Semaphore(maxWorkers, true);
+    exchangeExecutor = Executors.newCachedThreadPool();
+    active.set(true);
+  }
+
+  /**
+   * Deactivates the pool and kills all worker processes.
+   */
+  @PreDestroy
+  public synchronized void shutdown() {
+
+    active.set(false);
+    idleWorkers.clear();
+    synchronized (allWorkers) {
+      for (Worker worker : allWorkers) {
+        worker.destroy();
+      }
+      allWorkers.clear();
+    }
+    if (exchangeExecutor != null) {
+      exchangeExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the number of worker processes currently started.
+   */
+  public int getWorkerCount() {
+    synchronized (allWorkers) {
+      return allWorkers.size();
+    }
+  }
+
+  public List<String> getCommand() {
+    return command;
+  }
+
+  public void setCommand(List<String> command) {
+    this.command = command;
+  }
+
+  public File getWorkingDirectory() {
+    return workingDirectory;
+  }
+
+  public void setWorkingDirectory(File workingDirectory) {
+    this.workingDirectory = workingDirectory;
+  }
+
+  public int getMaxWorkers() {
+    return maxWorkers;
+  }
+
+  public void setMaxWorkers(int maxWorkers) {
+    this.maxWorkers = maxWorkers;
+  }
+
+  public long getRequestTimeout() {
+    return requestTimeout;
+  }
+
+  public void setRequestTimeout(long requestTimeout) {
+    this.requestTimeout = requestTimeout;
+  }
+
+  public long getAcquireTimeout() {
+    return acquireTimeout;
+  }
+
+  public void setAcquireTimeout(long acquireTimeout) {
+    this.acquireTimeout = acquireTimeout;
+  }
+
+  public int getMaxResponseLength() {
+    return maxResponseLength;
+  }
+
+  public void setMaxResponseLength(int maxResponseLength) {
+    this.maxResponseLength = maxResponseLength;
+  }
+
+  public String getOutputExtension() {
+    return outputExtension;
+  }
+
+  public void setOutputExtension(String outputExtension) {
+    this.outputExtension = outputExtension;
+  }
+
+}
@@ -0,0 +1,83 @@
+package com.denniskubes.webasset;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * Stores the web asset ids for a reactive request in the exchange attributes.
+ * The ids follow the exchange across whatever threads handle it, where the
+ * request context and ThreadLocal used by WebAssetRequest are not available.
+ * Exchanges without ids use the WebAsset annotation on the handler method the
+ * dispatcher matched.
+ */
+public class ReactiveWebAssetRequest {
+
+  // ids parsed once from the annotation of each handler method
+  private final static Map<Method, WebAssetIds> METHOD_IDS = new ConcurrentHashMap<Method, WebAssetIds>();
+
+  /**
+   * Adds the ids to the exchange, each of which can also be comma separated.
+   *
+   * @param exchange The current exchange.
+   * @param ids The asset configuration ids.
+   */
+  public static void setup(ServerWebExchange exchange, String... ids) {
+    setup(exchange, WebAssetIds.of(ids));
+  }
+
+  /**
+   * Adds the ids to the exchange, each of which can also be comma separated.
+   *
+   * @param exchange The current exchange.
+   * @param ids The asset configuration ids.
+   */
+  public static void setup(ServerWebExchange exchange, Collection<String> ids) {
+    exchange.getAttributes().put(WebAssetConstants.REQUEST_IDS,
+      WebAssetIds.of(ids));
+  }
+
+  /**
+   * Returns the web asset ids for the exchange, or the ids of the WebAsset
+   * annotation on the matched handler method if none are setup.
+   *
+   * @param exchange The current exchange.
+   *
+   * @return The exchange's webasset ids, empty if none are setup.
+   */
+  public static WebAssetIds getIds(ServerWebExchange exchange) {
+
+    Object ids = exchange.getAttribute(WebAssetConstants.REQUEST_IDS);
+    if (ids instanceof WebAssetIds) {
+      return (WebAssetIds)ids;
+    }
+
+    // the dispatcher keeps the handler it matched, no need to look it up again
+    Object handler = exchange.getAttribute(
+      HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+    if (!(handler instanceof HandlerMethod)) {
+      return WebAssetIds.EMPTY;
+    }
+    Method method = ((HandlerMethod)handler).getMethod();
+    WebAssetIds annotatedIds = METHOD_IDS.get(method);
+    if (annotatedIds == null) {
+      annotatedIds = WebAssetInterceptor.getAnnotatedIds(method);
+      METHOD_IDS.put(method, annotatedIds);
+    }
+    return annotatedIds;
+  }
+
+  /**
+   * Removes the web asset ids from the exchange.
+   *
+   * @param exchange The current exchange.
+   */
+  public static void cleanup(ServerWebExchange exchange) {
+    exchange.getAttributes().remove(WebAssetConstants.REQUEST_IDS);
+  }
+}
@@ -0,0 +1,170 @@
+package com.denniskubes.webasset;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * <p>Non-blocking access to the scripts and links of web asset ids for
+ * reactive applications.</p>
+ *
+ * <p>Merged asset lists already cached by the WebAssetManager are returned
+ * immediately. Anything else may read config state and filter files to the
+ * cache directory, so it is resolved on a bounded scheduler and never on the
+ * calling event loop thread. Once resolved the lists are cached and later
+ * requests for the same ids are served without switching threads.</p>
+ */
+public class ReactiveWebAssetResolver {
+
+  private final static Logger LOG = LoggerFactory.getLogger(ReactiveWebAssetResolver.class);
+
+  private WebAssetManager webAssetManager;
+  private Scheduler scheduler;
+  private ExecutorService executor;
+  private int maxThreads = 4;
+  private int maxQueued = 1000;
+
+  private static class ResolverThreadFactory
+    implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "webasset-resolver-"
+        + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+  public ReactiveWebAssetResolver() {
+  }
+
+  public ReactiveWebAssetResolver(WebAssetManager webAssetManager) {
+    this.webAssetManager = webAssetManager;
+  }
+
+  private synchronized Scheduler getResolveScheduler() {
+
+    // a bounded pool with a bounded queue, work past the queue is rejected
+    // and surfaces as an error instead of piling up
+    if (scheduler == null) {
+      executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60L,
+        TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(maxQueued),
+        new ResolverThreadFactory());
+      ((ThreadPoolExecutor)executor).allowCoreThreadTimeOut(true);
+      scheduler = Schedulers.fromExecutorService(executor);
+    }
+    return scheduler;
+  }
+
+  private Mono<List<Map<String, String>>> resolve(
+    List<Map<String, String>> cached,
+    Callable<List<Map<String, String>>> resolver) {
+
+    if (cached != null) {
+      return Mono.just(cached);
+    }
+    return Mono.fromCallable(resolver).subscribeOn(getResolveScheduler());
+  }
+
+  /**
+   * Returns the merged scripts for the ids, immediately if already cached and
+   * otherwise resolved on the bounded scheduler.
+   *
+   * @see WebAssetManager#getScripts(Collection, Locale, String, boolean)
+   */
+  public Mono<List<Map<String, String>>> getScripts(
+    final Collection<String> ids, final Locale locale, final String profile,
+    final boolean includeGlobal) {
+
+    return resolve(webAssetManager.getCachedScripts(ids, locale, profile,
+      includeGlobal), new Callable<List<Map<String, String>>>() {
+      @Override
+      public List<Map<String, String>> call() {
+        return webAssetManager.getScripts(ids, locale, profile, includeGlobal);
+      }
+    });
+  }
+
+  /**
+   * Returns the merged links for the ids, immediately if already cached and
+   * otherwise resolved on the bounded scheduler.
+   *
+   * @see WebAssetManager#getLinks(Collection, Locale, String, boolean)
+   */
+  public Mono<List<Map<String, String>>> getLinks(
+    final Collection<String> ids, final Locale locale, final String profile,
+    final boolean includeGlobal) {
+
+    return resolve(webAssetManager.getCachedLinks(ids, locale, profile,
+      includeGlobal), new Callable<List<Map<String, String>>>() {
+      @Override
+      public List<Map<String, String>> call() {
+        return webAssetManager.getLinks(ids, locale, profile, includeGlobal);
+      }
+    });
+  }
+
+  /**
+   * Disposes the default scheduler. A scheduler set from outside is left for
+   * its owner to dispose.
+   */
+  public synchronized void shutdown() {
+    if (executor != null) {
+      LOG.info("Shutting down web asset resolver");
+      scheduler.dispose();
+      executor.shutdown();
+      executor = null;
+      scheduler = null;
+    }
+  }
+
+  public WebAssetManager getWebAssetManager() {
+    return webAssetManager;
+  }
+
+  public void setWebAssetManager(WebAssetManager webAssetManager) {
+    this.webAssetManager = webAssetManager;
+  }
+
+  public synchronized Scheduler getScheduler() {
+    return scheduler;
+  }
+
+  public synchronized void setScheduler(Scheduler scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  public int getMaxThreads() {
+    return maxThreads;
+  }
+
+  public void setMaxThreads(int maxThreads) {
+    this.maxThreads = maxThreads;
+  }
+
+  public int getMaxQueued() {
+    return maxQueued;
+  }
+
+  public void setMaxQueued(int maxQueued) {
+    this.maxQueued = maxQueued;
+  }
+}
@@ -0,0 +1,183 @@
+package com.denniskubes.webasset;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * <p>An immutable map of asset attributes, held as parallel arrays of names
+ * and values in their config order, with the hash code computed once.</p>
+ *
+ * <p>Names and values are shared through a flyweight table of the common
+ * attribute names and values, such as type, path, text/javascript, and
+ * stylesheet, and interned otherwise, so the thousands of scripts, links,
+ * and metas of a large site share one copy of each repeated string.
+ * Attribute maps are small so lookups scan the names.</p>
+ */
+public final class WebAssetAttributes
+  extends AbstractMap<String, String>
+  implements Serializable {
+
+  private final static long serialVersionUID = 1L;
+
+  public final static WebAssetAttributes EMPTY = new WebAssetAttributes(
+    new String[0], new String[0]);
+
+  private final static Map<String, String> FLYWEIGHTS = new HashMap<String, String>();
+  static {
+    for (String common : new String[] {"path", "type", "rel", "media", "href",
+      "src", "async", "defer", "crossorigin", "integrity", "name", "content",
+      "http-equiv", "charset", "property", "sizes", "hreflang", "as", "title",
+      "text/javascript", "text/css", "module", "stylesheet", "icon",
+      "shortcut icon", "apple-touch-icon", "preload", "prefetch", "preconnect",
+      "dns-prefetch", "modulepreload", "screen", "print", "all", "anonymous",
+      "use-credentials", "true", "false", "viewport", "description",
+      "keywords", "author", "robots", "Content-Type",
+      "text/html; charset=utf-8"}) {
+      FLYWEIGHTS.put(common, common);
+    }
+  }
+
+  private final String[] names;
+  private final String[] values;
+  private final int hash;
+
+  private WebAssetAttributes(String[] names, String[] values) {
+    this.names = names;
+    this.values = values;
+    int hash = 0;
+    for (int i = 0; i < names.length; i++) {
+      hash += Objects.hashCode(names[i]) ^ Objects.hashCode(values[i]);
+    }
+    this.hash = hash;
+  }
+
+  /**
+   * Returns the shared copy of a name or value.
+   */
+  static String share(String value) {
+    if (value == null) {
+      return null;
+    }
+    String shared = FLYWEIGHTS.get(value);
+    return (shared != null) ? shared : value.intern();
+  }
+
+  /**
+   * Returns an immutable copy of the attributes in their iteration order, or
+   * the attributes themselves if already immutable.
+   *
+   * @param attributes The attributes to copy.
+   *
+   * @return The immutable attributes.
+   */
+  public static WebAssetAttributes of(Map<String, String> attributes) {
+
+    if (attributes instanceof WebAssetAttributes) {
+      return (WebAssetAttributes)attributes;
+    }
+    else if (attributes == null || attributes.isEmpty()) {
+      return EMPTY;
+    }
+
+    String[] names = new String[attributes.size()];
+    String[] values = new String[attributes.size()];
+    int index = 0;
+    for (Entry<String, String> attribute : attributes.entrySet()) {
+      names[index] = share(attribute.getKey());
+      values[index] = share(attribute.getValue());
+      index++;
+    }
+    return new WebAssetAttributes(names, values);
+  }
+
+  private int indexOf(Object name) {
+    for (int i = 0; i < names.length; i++) {
+      if (names[i] == name || (names[i] != null && names[i].equals(name))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public String get(Object name) {
+    int index = indexOf(name);
+    return (index >= 0) ? values[index] : null;
+  }
+
+  @Override
+  public boolean containsKey(Object name) {
+    return indexOf(name) >= 0;
+  }
+
+  @Override
+  public int size() {
+    return names.length;
+  }
+
+  @Override
+  public Set<Entry<String, String>> entrySet() {
+    return new AbstractSet<Entry<String, String>>() {
+
+      @Override
+      public Iterator<Entry<String, String>> iterator() {
+        return new Iterator<Entry<String, String>>() {
+
+          private int index = 0;
+
+          @Override
+          public boolean hasNext() {
+            return index < names.length;
+          }
+
+          @Override
+          public Entry<String, String> next() {
+            if (index >= names.length) {
+              throw new NoSuchElementException();
+            }
+            Entry<String, String> entry = new SimpleImmutableEntry<String, String>(
+              names[index], values[index]);
+            index++;
+            return entry;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return names.length;
+      }
+    };
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    else if (obj instanceof WebAssetAttributes) {
+      WebAssetAttributes other = (WebAssetAttributes)obj;
+      if (hash != other.hash || names.length != other.names.length) {
+        return false;
+      }
+      else if (Arrays.equals(names, other.names)
+        && Arrays.equals(values, other.values)) {
+        return true;
+      }
+    }
+    return super.equals(obj);
+  }
+}
@@ -2,12 +2,12 @@ package com.denniskubes.webasset;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
-import org.apache.commons.lang3.builder.EqualsBuilder;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
 public class WebAssetConfig
@@ -26,6 +26,13 @@ public class WebAssetConfig
   private List<Map<String, String>> scripts = new ArrayList<Map<String, String>>();
   private List<Map<String, String>> links = new ArrayList<Map<String, String>>();
 
+  // other configs whose assets come before this config's own
+  private String parent;
+  private List<String> includes = new ArrayList<String>();
+
+  // computed once the config is compacted, 0 until then
+  private transient int hash;
+
   public WebAssetConfig() {
 
   }
@@ -36,6 +43,7 @@ public class WebAssetConfig
 
   public void setIds(List<String> ids) {
     this.ids = ids;
+    hash = 0;
   }
 
   public boolean isGlobalConfig() {
@@ -44,6 +52,7 @@ public class WebAssetConfig
 
   public void setGlobalConfig(boolean globalConfig) {
     this.globalConfig = globalConfig;
+    hash = 0;
   }
 
   public Map<String, String> getAliases() {
@@ -52,6 +61,7 @@ public class WebAssetConfig
 
   public void setAliases(Map<String, String> aliases) {
     this.aliases = aliases;
+    hash = 0;
   }
 
   public String getTitle() {
@@ -60,6 +70,7 @@ public class WebAssetConfig
 
   public void setTitle(String title) {
     this.title = title;
+    hash = 0;
   }
 
   public List<Map<String, String>> getMetas() {
@@ -68,6 +79,7 @@ public class WebAssetConfig
 
   public void setMetas(List<Map<String, String>> metas) {
     this.metas = metas;
+    hash = 0;
   }
 
   public List<Map<String, String>> getScripts() {
@@ -76,6 +88,7 @@ public class WebAssetConfig
 
   public void setScripts(List<Map<String, String>> scripts) {
     this.scripts = scripts;
+    hash = 0;
   }
 
   public List<Map<String, String>> getLinks() {
@@ -84,6 +97,77 @@ public class WebAssetConfig
 
   public void setLinks(List<Map<String, String>> links) {
     this.links = links;
+    hash = 0;
+  }
+
+  public String getParent() {
+    return parent;
+  }
+
+  public void setParent(String parent) {
+    this.parent = parent;
+    hash = 0;
+  }
+
+  public List<String> getIncludes() {
+    return includes;
+  }
+
+  public void setIncludes(List<String> includes) {
+    this.includes = includes;
+    hash = 0;
+  }
+
+  /**
+   * Returns true if the config extends or includes other configs.
+   */
+  public boolean hasSegments() {
+    return parent != null || !includes.isEmpty();
+  }
+
+  private static List<String> share(List<String> values) {
+    if (values.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<String> shared = new ArrayList<String>(values.size());
+    for (String value : values) {
+      shared.add(WebAssetAttributes.share(value));
+    }
+    return Collections.unmodifiableList(shared);
+  }
+
+  private static List<Map<String, String>> compact(
+    List<Map<String, String>> assets) {
+    if (assets.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<Map<String, String>> compacted = new ArrayList<Map<String, String>>(
+      assets.size());
+    for (Map<String, String> attributes : assets) {
+      compacted.add(WebAssetAttributes.of(attributes));
+    }
+    return Collections.unmodifiableList(compacted);
+  }
+
+  /**
+   * Replaces the ids, aliases, includes, and asset attributes with immutable
+   * copies that share repeated strings, once the config is fully parsed. The
+   * config can't be changed through its lists and maps afterwards.
+   * 
+   * @return This config.
+   */
+  public WebAssetConfig compact() {
+
+    ids = share(ids);
+    aliases = WebAssetAttributes.of(aliases);
+    title = WebAssetAttributes.share(title);
+    metas = compact(metas);
+    scripts = compact(scripts);
+    links = compact(links);
+    parent = WebAssetAttributes.share(parent);
+    includes = share(includes);
+    hash = computeHash();
+    return this;
   }
 
   public Object clone()
@@ -96,10 +180,26 @@ public class WebAssetConfig
   }
 
   public boolean equals(Object obj) {
-    return EqualsBuilder.reflectionEquals(this, obj);
+    if (obj == this) {
+      return true;
+    }
+    else if (!(obj instanceof WebAssetConfig)) {
+      return false;
+    }
+    WebAssetConfig other = (WebAssetConfig)obj;
+    return globalConfig == other.globalConfig && ids.equals(other.ids)
+      && Objects.equals(title, other.title) && aliases.equals(other.aliases)
+      && metas.equals(other.metas) && scripts.equals(other.scripts)
+      && links.equals(other.links) && Objects.equals(parent, other.parent)
+      && includes.equals(other.includes);
+  }
+
+  private int computeHash() {
+    return Objects.hash(ids, globalConfig, aliases, title, metas, scripts,
+      links, parent, includes);
   }
 
   public int hashCode() {
-    return HashCodeBuilder.reflectionHashCode(this);
+    return hash != 0 ? hash : computeHash();
   }
 }
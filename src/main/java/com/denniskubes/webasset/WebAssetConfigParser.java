@@ -19,4 +19,18 @@ public interface WebAssetConfigParser {
   
   public List<Map<String, String>> getMetas();
 
+  /**
+   * Returns the id of the config this config extends, or null.
+   */
+  public default String getExtends() {
+    return null;
+  }
+
+  /**
+   * Returns the ids of the configs this config includes, or null.
+   */
+  public default List<String> getIncludes() {
+    return null;
+  }
+
 }
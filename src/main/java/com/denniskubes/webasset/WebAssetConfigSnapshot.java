@@ -0,0 +1,325 @@
+package com.denniskubes.webasset;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * <p>A binary snapshot of parsed web asset configs by config file path, used
+ * to skip parsing at startup when the config files haven't changed.</p>
+ *
+ * <p>The snapshot starts with a magic number, the format version, and a key
+ * hashed from the path, length, and last modified time of every config file.
+ * Every distinct string follows once in a string table and the configs refer
+ * to strings by index, so the repeated attribute names and values of the
+ * configs are stored and loaded once. A snapshot is read in a single pass
+ * over a memory mapped buffer and is ignored if the version or key differs.</p>
+ */
+public class WebAssetConfigSnapshot {
+
+  public final static int VERSION = 2;
+  private final static int MAGIC = 0x57415346;
+  private final static int NULL_STRING = -1;
+
+  private final String inputsKey;
+  private Map<String, Long> lastModTimes = new LinkedHashMap<String, Long>();
+  private Map<String, WebAssetConfig> configs = new LinkedHashMap<String, WebAssetConfig>();
+
+  /**
+   * Assigns indexes to distinct strings in the order they are first added.
+   */
+  private static class StringTable {
+
+    private Map<String, Integer> indexes = new LinkedHashMap<String, Integer>();
+
+    private void add(String value) {
+      if (value != null && !indexes.containsKey(value)) {
+        indexes.put(value, indexes.size());
+      }
+    }
+
+    private void addAll(Map<String, String> values) {
+      for (Entry<String, String> value : values.entrySet()) {
+        add(value.getKey());
+        add(value.getValue());
+      }
+    }
+
+    private int indexOf(String value) {
+      return value != null ? indexes.get(value) : NULL_STRING;
+    }
+  }
+
+  public WebAssetConfigSnapshot(String inputsKey) {
+    this.inputsKey = inputsKey;
+  }
+
+  /**
+   * Returns a key for the config files that changes when a file is added,
+   * removed, or modified.
+   *
+   * @param configFiles The config files, in load order.
+   */
+  public static String getInputsKey(List<File> configFiles) {
+
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    for (File configFile : configFiles) {
+      String input = configFile.getPath() + "|" + configFile.length() + "|"
+        + configFile.lastModified() + "\n";
+      digest.update(input.getBytes(StandardCharsets.UTF_8));
+    }
+
+    StringBuilder key = new StringBuilder();
+    for (byte hashByte : digest.digest()) {
+      key.append(String.format("%02x", hashByte));
+    }
+    return key.toString();
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static String lookup(ByteBuffer buffer, String[] strings) {
+    int index = buffer.getInt();
+    return index == NULL_STRING ? null : strings[index];
+  }
+
+  private static List<String> readStrings(ByteBuffer buffer, String[] strings) {
+    int size = buffer.getInt();
+    List<String> values = new ArrayList<String>(size);
+    for (int i = 0; i < size; i++) {
+      values.add(lookup(buffer, strings));
+    }
+    return values;
+  }
+
+  private static Map<String, String> readMap(ByteBuffer buffer,
+    String[] strings) {
+    int size = buffer.getInt();
+    Map<String, String> values = new LinkedHashMap<String, String>();
+    for (int i = 0; i < size; i++) {
+      values.put(lookup(buffer, strings), lookup(buffer, strings));
+    }
+    return values;
+  }
+
+  private static List<Map<String, String>> readMaps(ByteBuffer buffer,
+    String[] strings) {
+    int size = buffer.getInt();
+    List<Map<String, String>> values = new ArrayList<Map<String, String>>(size);
+    for (int i = 0; i < size; i++) {
+      values.add(readMap(buffer, strings));
+    }
+    return values;
+  }
+
+  /**
+   * Reads a snapshot written for the same config files.
+   *
+   * @param snapshotFile The snapshot file.
+   * @param inputsKey The key of the current config files.
+   *
+   * @return The snapshot, or null if there is no snapshot or it was written
+   * by a different version or for different config files.
+   *
+   * @throws IOException If the snapshot can't be read or is corrupt.
+   */
+  public static WebAssetConfigSnapshot read(File snapshotFile, String inputsKey)
+    throws IOException {
+
+    if (!snapshotFile.isFile()) {
+      return null;
+    }
+
+    try (FileChannel channel = FileChannel.open(snapshotFile.toPath(),
+      StandardOpenOption.READ)) {
+
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+        channel.size());
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+        || !inputsKey.equals(readString(buffer))) {
+        return null;
+      }
+
+      String[] strings = new String[buffer.getInt()];
+      for (int i = 0; i < strings.length; i++) {
+        strings[i] = readString(buffer);
+      }
+
+      WebAssetConfigSnapshot snapshot = new WebAssetConfigSnapshot(inputsKey);
+      int numConfigs = buffer.getInt();
+      for (int i = 0; i < numConfigs; i++) {
+        String path = lookup(buffer, strings);
+        long lastModified = buffer.getLong();
+        WebAssetConfig config = new WebAssetConfig();
+        config.setGlobalConfig(buffer.get() == 1);
+        config.setIds(readStrings(buffer, strings));
+        config.setAliases(readMap(buffer, strings));
+        config.setTitle(lookup(buffer, strings));
+        config.setMetas(readMaps(buffer, strings));
+        config.setScripts(readMaps(buffer, strings));
+        config.setLinks(readMaps(buffer, strings));
+        config.setParent(lookup(buffer, strings));
+        config.setIncludes(readStrings(buffer, strings));
+        snapshot.add(path, lastModified, config.compact());
+      }
+      return snapshot;
+    }
+    catch (BufferUnderflowException | IndexOutOfBoundsException
+      | NegativeArraySizeException e) {
+      throw new IOException("Corrupt web asset config snapshot: "
+        + snapshotFile.getPath(), e);
+    }
+  }
+
+  private static void writeStrings(DataOutputStream out, List<String> values,
+    StringTable strings)
+    throws IOException {
+    out.writeInt(values.size());
+    for (String value : values) {
+      out.writeInt(strings.indexOf(value));
+    }
+  }
+
+  private static void writeMap(DataOutputStream out, Map<String, String> values,
+    StringTable strings)
+    throws IOException {
+    out.writeInt(values.size());
+    for (Entry<String, String> value : values.entrySet()) {
+      out.writeInt(strings.indexOf(value.getKey()));
+      out.writeInt(strings.indexOf(value.getValue()));
+    }
+  }
+
+  private static void writeMaps(DataOutputStream out,
+    List<Map<String, String>> values, StringTable strings)
+    throws IOException {
+    out.writeInt(values.size());
+    for (Map<String, String> value : values) {
+      writeMap(out, value, strings);
+    }
+  }
+
+  /**
+   * Writes the snapshot to a temporary file and moves it into place, so a
+   * partially written snapshot is never read.
+   *
+   * @param snapshotFile The snapshot file.
+   *
+   * @throws IOException If the snapshot can't be written.
+   */
+  public void write(File snapshotFile)
+    throws IOException {
+
+    StringTable strings = new StringTable();
+    for (Entry<String, WebAssetConfig> pathConfig : configs.entrySet()) {
+      WebAssetConfig config = pathConfig.getValue();
+      strings.add(pathConfig.getKey());
+      for (String id : config.getIds()) {
+        strings.add(id);
+      }
+      strings.addAll(config.getAliases());
+      strings.add(config.getTitle());
+      for (Map<String, String> meta : config.getMetas()) {
+        strings.addAll(meta);
+      }
+      for (Map<String, String> script : config.getScripts()) {
+        strings.addAll(script);
+      }
+      for (Map<String, String> link : config.getLinks()) {
+        strings.addAll(link);
+      }
+      strings.add(config.getParent());
+      for (String include : config.getIncludes()) {
+        strings.add(include);
+      }
+    }
+
+    FileUtils.forceMkdirParent(snapshotFile);
+    File tempFile = new File(snapshotFile.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+      new FileOutputStream(tempFile)))) {
+
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      byte[] keyBytes = inputsKey.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(keyBytes.length);
+      out.write(keyBytes);
+
+      out.writeInt(strings.indexes.size());
+      for (String value : strings.indexes.keySet()) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+
+      out.writeInt(configs.size());
+      for (Entry<String, WebAssetConfig> pathConfig : configs.entrySet()) {
+        WebAssetConfig config = pathConfig.getValue();
+        out.writeInt(strings.indexOf(pathConfig.getKey()));
+        out.writeLong(lastModTimes.get(pathConfig.getKey()));
+        out.writeByte(config.isGlobalConfig() ? 1 : 0);
+        writeStrings(out, config.getIds(), strings);
+        writeMap(out, config.getAliases(), strings);
+        out.writeInt(strings.indexOf(config.getTitle()));
+        writeMaps(out, config.getMetas(), strings);
+        writeMaps(out, config.getScripts(), strings);
+        writeMaps(out, config.getLinks(), strings);
+        out.writeInt(strings.indexOf(config.getParent()));
+        writeStrings(out, config.getIncludes(), strings);
+      }
+    }
+    Files.move(tempFile.toPath(), snapshotFile.toPath(),
+      StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Adds the parsed config of a config file.
+   */
+  public void add(String path, long lastModified, WebAssetConfig config) {
+    lastModTimes.put(path, lastModified);
+    configs.put(path, config);
+  }
+
+  public String getInputsKey() {
+    return inputsKey;
+  }
+
+  public Map<String, WebAssetConfig> getConfigs() {
+    return Collections.unmodifiableMap(configs);
+  }
+
+  public long getLastModified(String path) {
+    Long lastModified = lastModTimes.get(path);
+    return lastModified != null ? lastModified : 0L;
+  }
+}
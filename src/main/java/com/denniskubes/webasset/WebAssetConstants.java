@@ -4,13 +4,15 @@ public interface WebAssetConstants {
 
   // shared
   public static final String GLOBAL = "_webasset_global_";
+  public static final String REQUEST_IDS = "_webasset_request_ids_";
   public static final String REQUEST_SCRIPTS = "_webasset_request_scripts_";
   public static final String REQUEST_METAS = "_webasset_request_metatags_";
   public static final String REQUEST_LINKS = "_webasset_request_links_";
   public static final String REQUEST_TITLE = "_webasset_request_title_";
   public static final String PROFILE = "_webasset_profile_";
+  public static final String NO_FLUSH = "_webasset_no_flush_";
   
-  // output in request
+  // output in request, the asset attributes are ordered LinkedHashSets
   public static final String TITLE = "_webasset_title_";
   public static final String METAS = "_webasset_metas_";
   public static final String LINKS = "_webasset_links_";
@@ -0,0 +1,85 @@
+package com.denniskubes.webasset;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.lang3.StringUtils;
+import org.thymeleaf.context.ITemplateContext;
+import org.thymeleaf.context.IWebContext;
+import org.thymeleaf.dialect.AbstractProcessorDialect;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.model.IProcessableElementTag;
+import org.thymeleaf.processor.IProcessor;
+import org.thymeleaf.processor.element.AbstractElementTagProcessor;
+import org.thymeleaf.processor.element.IElementTagStructureHandler;
+import org.thymeleaf.templatemode.TemplateMode;
+
+/**
+ * <p>Thymeleaf dialect that writes web assets through the WebAssetRenderer,
+ * the same html and fragment cache as the WebAssetTag. The assets element is
+ * replaced with the html for its types.</p>
+ *
+ * <pre>
+ * &lt;webasset:assets types="title,metas,links" include-global="true" /&gt;
+ * </pre>
+ *
+ * <p>The element takes types, ids, include-global, inline, and
+ * inline-threshold, with the same meaning and defaults as the attributes of
+ * the JSP tag. Without ids the ids setup for the request are used.</p>
+ */
+public class WebAssetDialect
+  extends AbstractProcessorDialect {
+
+  public static final String PREFIX = "webasset";
+
+  private final WebAssetManager webAssetManager;
+
+  private class AssetsProcessor
+    extends AbstractElementTagProcessor {
+
+    private AssetsProcessor(String dialectPrefix) {
+      super(TemplateMode.HTML, dialectPrefix, "assets", true, null, false,
+        1000);
+    }
+
+    @Override
+    protected void doProcess(ITemplateContext context,
+      IProcessableElementTag tag, IElementTagStructureHandler structureHandler) {
+
+      WebAssetRenderer renderer = new WebAssetRenderer(webAssetManager);
+      renderer.setIncludeGlobal(Boolean.parseBoolean(tag.getAttributeValue("include-global")));
+      renderer.setInline(Boolean.parseBoolean(tag.getAttributeValue("inline")));
+      String inlineThreshold = tag.getAttributeValue("inline-threshold");
+      if (StringUtils.isNotBlank(inlineThreshold)) {
+        renderer.setInlineThreshold(Integer.parseInt(inlineThreshold.trim()));
+      }
+
+      HttpServletRequest request = (context instanceof IWebContext)
+        ? ((IWebContext)context).getRequest() : null;
+      StringBuilder html = new StringBuilder();
+      try {
+        renderer.render(html, tag.getAttributeValue("types"),
+          tag.getAttributeValue("ids"), context.getLocale(), request);
+      }
+      catch (IOException e) {
+        throw new TemplateProcessingException("Error writing web assets", e);
+      }
+      structureHandler.replaceWith(html, false);
+    }
+  }
+
+  public WebAssetDialect(WebAssetManager webAssetManager) {
+    super("WebAsset", PREFIX, 1000);
+    this.webAssetManager = webAssetManager;
+  }
+
+  @Override
+  public Set<IProcessor> getProcessors(String dialectPrefix) {
+    return Collections.<IProcessor> singleton(new AssetsProcessor(
+      dialectPrefix));
+  }
+
+}
@@ -0,0 +1,106 @@
+package com.denniskubes.webasset;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import freemarker.core.Environment;
+import freemarker.ext.servlet.HttpRequestHashModel;
+import freemarker.template.TemplateBooleanModel;
+import freemarker.template.TemplateDirectiveBody;
+import freemarker.template.TemplateDirectiveModel;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateNumberModel;
+import freemarker.template.TemplateScalarModel;
+
+/**
+ * <p>FreeMarker directive that writes web assets through the
+ * WebAssetRenderer, the same html and fragment cache as the WebAssetTag.
+ * Share it with templates as a shared variable, for example webasset.</p>
+ *
+ * <pre>
+ * &lt;@webasset types="title,metas,links" includeGlobal=true /&gt;
+ * </pre>
+ *
+ * <p>The directive takes types, ids, includeGlobal, inline, and
+ * inlineThreshold, with the same meaning and defaults as the attributes of
+ * the JSP tag. Without ids the ids setup for the request are used.</p>
+ */
+public class WebAssetDirective
+  implements TemplateDirectiveModel {
+
+  private WebAssetManager webAssetManager;
+
+  public WebAssetDirective() {
+  }
+
+  public WebAssetDirective(WebAssetManager webAssetManager) {
+    this.webAssetManager = webAssetManager;
+  }
+
+  private static String getString(Map params, String name)
+    throws TemplateModelException {
+    Object value = params.get(name);
+    return (value instanceof TemplateScalarModel)
+      ? ((TemplateScalarModel)value).getAsString() : null;
+  }
+
+  private static boolean getBoolean(Map params, String name)
+    throws TemplateModelException {
+    Object value = params.get(name);
+    if (value instanceof TemplateBooleanModel) {
+      return ((TemplateBooleanModel)value).getAsBoolean();
+    }
+    return Boolean.parseBoolean(getString(params, name));
+  }
+
+  /**
+   * Returns the request exposed to the template by Spring's FreeMarkerView,
+   * or the request bound to the thread, or null outside of a request.
+   */
+  private static HttpServletRequest getRequest(Environment env)
+    throws TemplateModelException {
+
+    TemplateModel requestModel = env.getDataModel().get("Request");
+    if (requestModel instanceof HttpRequestHashModel) {
+      return ((HttpRequestHashModel)requestModel).getRequest();
+    }
+    RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+    if (attributes instanceof ServletRequestAttributes) {
+      return ((ServletRequestAttributes)attributes).getRequest();
+    }
+    return null;
+  }
+
+  @Override
+  public void execute(Environment env, Map params, TemplateModel[] loopVars,
+    TemplateDirectiveBody body)
+    throws TemplateException, IOException {
+
+    WebAssetRenderer renderer = new WebAssetRenderer(webAssetManager);
+    renderer.setIncludeGlobal(getBoolean(params, "includeGlobal"));
+    renderer.setInline(getBoolean(params, "inline"));
+    Object inlineThreshold = params.get("inlineThreshold");
+    if (inlineThreshold instanceof TemplateNumberModel) {
+      renderer.setInlineThreshold(((TemplateNumberModel)inlineThreshold).getAsNumber().intValue());
+    }
+
+    renderer.render(env.getOut(), getString(params, "types"), getString(
+      params, "ids"), env.getLocale(), getRequest(env));
+  }
+
+  public WebAssetManager getWebAssetManager() {
+    return webAssetManager;
+  }
+
+  public void setWebAssetManager(WebAssetManager webAssetManager) {
+    this.webAssetManager = webAssetManager;
+  }
+}
@@ -0,0 +1,169 @@
+package com.denniskubes.webasset;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+/**
+ * <p>Scans the handler methods of every RequestMappingHandlerMapping for the
+ * WebAsset annotation when the context is refreshed.</p>
+ *
+ * <p>The ids of each annotated method are parsed once and handed to the
+ * WebAssetInterceptor, if set, so requests never read the annotation. The
+ * merged scripts and links, metas, and hints of each distinct id set are
+ * then resolved for every configured locale and profile, with and without
+ * the global assets, so assets are filtered and the render caches are warm
+ * before the first request. The WebAssetManager should have caching enabled
+ * for the warmed lists to be kept.</p>
+ *
+ * <p>Locales default to the default locale. Profiles always include no
+ * profile. Rendered html fragments depend on the uri prefix of the request
+ * and are still cached on first render.</p>
+ */
+public class WebAssetHandlerScanner
+  implements ApplicationListener<ContextRefreshedEvent> {
+
+  private final static Logger LOG = LoggerFactory.getLogger(WebAssetHandlerScanner.class);
+
+  private WebAssetManager webAssetManager;
+  private WebAssetInterceptor webAssetInterceptor;
+  private List<Locale> locales = new ArrayList<Locale>();
+  private List<String> profiles = new ArrayList<String>();
+
+  // distinct id sets found by the last scan
+  private Set<WebAssetIds> scannedIds = Collections.emptySet();
+
+  /**
+   * Returns the distinct ids of the annotated handler methods of the mappings,
+   * caching them on the interceptor if there is one.
+   */
+  private Set<WebAssetIds> scanHandlerMethods(
+    Map<String, RequestMappingHandlerMapping> mappings) {
+
+    Set<WebAssetIds> idSets = new LinkedHashSet<WebAssetIds>();
+    for (RequestMappingHandlerMapping mapping : mappings.values()) {
+      for (HandlerMethod handlerMethod : mapping.getHandlerMethods().values()) {
+        WebAssetIds ids = (webAssetInterceptor != null)
+          ? webAssetInterceptor.getIds(handlerMethod.getMethod())
+          : WebAssetInterceptor.getAnnotatedIds(handlerMethod.getMethod());
+        if (!ids.isEmpty()) {
+          idSets.add(ids);
+        }
+      }
+    }
+    return idSets;
+  }
+
+  /**
+   * Resolves the lists of the id set for a locale and profile so they are
+   * filtered and cached.
+   */
+  private void warm(WebAssetIds ids, Locale locale, String profile) {
+
+    webAssetManager.getScripts(ids, locale, profile, true);
+    webAssetManager.getScripts(ids, locale, profile, false);
+    webAssetManager.getLinks(ids, locale, profile, true);
+    webAssetManager.getLinks(ids, locale, profile, false);
+    for (String id : ids) {
+      webAssetManager.getMetasForId(id, locale, profile);
+      webAssetManager.getHintsForId(id, locale, profile);
+    }
+  }
+
+  /**
+   * Scans the handler methods and warms the caches for their id sets.
+   *
+   * @param context The context with the handler mappings.
+   *
+   * @return The distinct id sets found.
+   */
+  public Set<WebAssetIds> scan(ApplicationContext context) {
+
+    long start = System.currentTimeMillis();
+    Set<WebAssetIds> idSets = scanHandlerMethods(context.getBeansOfType(RequestMappingHandlerMapping.class));
+
+    if (webAssetManager != null && !idSets.isEmpty()) {
+
+      List<Locale> warmLocales = locales.isEmpty()
+        ? Collections.singletonList(Locale.getDefault()) : locales;
+      List<String> warmProfiles = new ArrayList<String>();
+      warmProfiles.add(null);
+      warmProfiles.addAll(profiles);
+
+      for (Locale locale : warmLocales) {
+        webAssetManager.getGlobalMetas(locale);
+        webAssetManager.getGlobalHints(locale);
+      }
+      for (WebAssetIds ids : idSets) {
+        for (Locale locale : warmLocales) {
+          for (String profile : warmProfiles) {
+            try {
+              warm(ids, locale, profile);
+            }
+            catch (Exception e) {
+              LOG.warn("Error warming web assets for ids: " + ids, e);
+            }
+          }
+        }
+      }
+    }
+
+    LOG.info("Scanned {} web asset id sets from handler methods in {} ms",
+      idSets.size(), (System.currentTimeMillis() - start));
+    scannedIds = Collections.unmodifiableSet(idSets);
+    return scannedIds;
+  }
+
+  @Override
+  public void onApplicationEvent(ContextRefreshedEvent event) {
+    scan(event.getApplicationContext());
+  }
+
+  public WebAssetManager getWebAssetManager() {
+    return webAssetManager;
+  }
+
+  public void setWebAssetManager(WebAssetManager webAssetManager) {
+    this.webAssetManager = webAssetManager;
+  }
+
+  public WebAssetInterceptor getWebAssetInterceptor() {
+    return webAssetInterceptor;
+  }
+
+  public void setWebAssetInterceptor(WebAssetInterceptor webAssetInterceptor) {
+    this.webAssetInterceptor = webAssetInterceptor;
+  }
+
+  public List<Locale> getLocales() {
+    return locales;
+  }
+
+  public void setLocales(List<Locale> locales) {
+    this.locales = locales;
+  }
+
+  public List<String> getProfiles() {
+    return profiles;
+  }
+
+  public void setProfiles(List<String> profiles) {
+    this.profiles = profiles;
+  }
+
+  public Set<WebAssetIds> getScannedIds() {
+    return scannedIds;
+  }
+}
@@ -0,0 +1,102 @@
+package com.denniskubes.webasset;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * <p>An immutable, ordered set of web asset config ids, parsed once from a
+ * comma separated string or a list. Ids are trimmed, blanks are dropped, and
+ * duplicates are removed keeping the first.</p>
+ *
+ * <p>The ids are a read only list so they can be passed straight to the
+ * WebAssetManager. The comma separated form is kept for callers of
+ * WebAssetRequest.get().</p>
+ */
+public final class WebAssetIds
+  extends AbstractList<String> {
+
+  public static final WebAssetIds EMPTY = new WebAssetIds(new String[0]);
+
+  private final String[] ids;
+  private final String joined;
+
+  private WebAssetIds(String[] ids) {
+    this.ids = ids;
+    this.joined = StringUtils.join(ids, ",");
+  }
+
+  /**
+   * Returns the ids parsed from a comma separated string.
+   *
+   * @param ids The comma separated ids, can be null.
+   */
+  public static WebAssetIds parse(String ids) {
+    if (StringUtils.isBlank(ids)) {
+      return EMPTY;
+    }
+    return of(Arrays.asList(StringUtils.split(ids, ",")));
+  }
+
+  /**
+   * Returns the ids, each of which can also be comma separated.
+   *
+   * @param ids The ids, can be null.
+   */
+  public static WebAssetIds of(String... ids) {
+    return ids != null ? of(Arrays.asList(ids)) : EMPTY;
+  }
+
+  /**
+   * Returns the ids, each of which can also be comma separated.
+   *
+   * @param ids The ids, can be null.
+   */
+  public static WebAssetIds of(Collection<String> ids) {
+
+    if (ids == null || ids.isEmpty()) {
+      return EMPTY;
+    }
+    if (ids instanceof WebAssetIds) {
+      return (WebAssetIds)ids;
+    }
+
+    Set<String> idSet = new LinkedHashSet<String>();
+    for (String id : ids) {
+      String[] parts = StringUtils.split(id, ",");
+      if (parts != null) {
+        for (String part : parts) {
+          String trimmed = StringUtils.trim(part);
+          if (StringUtils.isNotEmpty(trimmed)) {
+            idSet.add(trimmed);
+          }
+        }
+      }
+    }
+    return idSet.isEmpty() ? EMPTY
+      : new WebAssetIds(idSet.toArray(new String[idSet.size()]));
+  }
+
+  @Override
+  public String get(int index) {
+    return ids[index];
+  }
+
+  @Override
+  public int size() {
+    return ids.length;
+  }
+
+  /**
+   * Returns the ids as a comma separated string.
+   */
+  @Override
+  public String toString() {
+    return joined;
+  }
+
+}
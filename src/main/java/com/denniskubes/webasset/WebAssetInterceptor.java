@@ -1,16 +1,194 @@
 package com.denniskubes.webasset;
 
+import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+import org.springframework.web.servlet.support.RequestContextUtils;
 
+/**
+ * <p>Spring interceptor that sets up the web asset ids from the WebAsset
+ * annotation on the handler method for the WebAssetTag.</p>
+ *
+ * <p>The interceptor also adds Link preload headers for the local scripts and
+ * stylesheets of the ids and the global config before the handler runs, so
+ * browsers can start downloading assets before the page is rendered. If
+ * earlyHints is enabled the headers are also sent in a 103 Early Hints
+ * interim response. Only enable early hints on containers that support
+ * sending them through sendError(103), others will send an error page.</p>
+ */
 public class WebAssetInterceptor
   extends HandlerInterceptorAdapter {
 
+  private final static Logger LOG = LoggerFactory.getLogger(WebAssetInterceptor.class);
+  private final static Pattern EXTERNAL_PATH = Pattern.compile("^(https?)?:?//");
+
+  public static final int SC_EARLY_HINTS = 103;
+
+  private WebAssetManager webAssetManager;
+  private boolean preloadHeaders = true;
+  private boolean earlyHints = false;
+  private boolean includeGlobal = true;
+
+  // ids parsed once from the annotation of each handler method
+  private Map<Method, WebAssetIds> methodIds = new ConcurrentHashMap<Method, WebAssetIds>();
+
+  private WebAssetManager getWebAssetManager(HttpServletRequest request) {
+
+    // default to the webAssetManager bean used by the WebAssetTag
+    if (webAssetManager == null) {
+      WebApplicationContext context = RequestContextUtils.findWebApplicationContext(request);
+      if (context != null && context.containsBean("webAssetManager")) {
+        webAssetManager = (WebAssetManager)context.getBean("webAssetManager");
+      }
+    }
+    return webAssetManager;
+  }
+
+  /**
+   * Returns the ids from the value and ids of the WebAsset annotation on the
+   * method, empty if the method isn't annotated.
+   */
+  static WebAssetIds getAnnotatedIds(Method method) {
+    WebAsset waa = method.getAnnotation(WebAsset.class);
+    if (waa == null) {
+      return WebAssetIds.EMPTY;
+    }
+    List<String> allIds = new ArrayList<String>();
+    allIds.add(waa.value());
+    allIds.addAll(Arrays.asList(waa.ids()));
+    return WebAssetIds.of(allIds);
+  }
+
+  private static boolean isLocal(String path) {
+    return StringUtils.isNotBlank(path)
+      && !EXTERNAL_PATH.matcher(path).lookingAt();
+  }
+
+  /**
+   * Adds a Link header value for each local asset, modulepreload for module
+   * scripts and preload as the given destination for everything else.
+   */
+  static void addPreloads(String uriPrefix, List<Map<String, String>> assets,
+    String as, Set<String> preloads) {
+
+    if (assets == null) {
+      return;
+    }
+    for (Map<String, String> assetAttrs : assets) {
+      String path = assetAttrs.get("path");
+      if (!isLocal(path)) {
+        continue;
+      }
+
+      // module scripts need modulepreload to be fetched and parsed as modules
+      String uri = uriPrefix + path;
+      if ("module".equalsIgnoreCase(assetAttrs.get("type"))) {
+        preloads.add("<" + uri + ">; rel=modulepreload");
+      }
+      else {
+        preloads.add("<" + uri + ">; rel=preload; as=" + as);
+      }
+    }
+  }
+
+  /**
+   * Returns the Link header values to preload the local scripts and
+   * stylesheets for the ids, in page order with stylesheets first.
+   *
+   * @param request The current request.
+   * @param ids The web asset config ids for the request.
+   *
+   * @return The Link header values, empty if there is nothing to preload.
+   */
+  public Set<String> getPreloadLinks(HttpServletRequest request,
+    Collection<String> ids) {
+
+    Set<String> preloads = new LinkedHashSet<String>();
+    WebAssetManager wam = getWebAssetManager(request);
+    if (wam == null) {
+      return preloads;
+    }
+
+    Locale locale = request.getLocale();
+    String profile = (String)request.getAttribute(WebAssetConstants.PROFILE);
+
+    // stylesheets block rendering so they are preloaded first
+    // the same prefix as the WebAssetTag so the preloads match the page urls
+    String uriPrefix = WebAssetRenderer.getUriPrefix(wam.getWebAssetUrl(),
+      request, true, false, null, true);
+    addPreloads(uriPrefix, wam.getLinks(ids, locale, profile, includeGlobal),
+      "style", preloads);
+    addPreloads(uriPrefix, wam.getScripts(ids, locale, profile, includeGlobal),
+      "script", preloads);
+
+    return preloads;
+  }
+
+  private void sendPreloads(HttpServletRequest request,
+    HttpServletResponse response, Collection<String> ids) {
+
+    if (response.isCommitted()) {
+      return;
+    }
+
+    Set<String> preloads = getPreloadLinks(request, ids);
+    if (preloads.isEmpty()) {
+      return;
+    }
+    for (String preload : preloads) {
+      response.addHeader("Link", preload);
+    }
+
+    // the interim response carries the Link headers set so far, the final
+    // response keeps them for browsers that don't support early hints
+    if (earlyHints) {
+      try {
+        response.sendError(SC_EARLY_HINTS);
+      }
+      catch (IOException | IllegalStateException e) {
+        LOG.debug("Unable to send early hints for {}", request.getRequestURI(),
+          e);
+      }
+    }
+  }
+
+  /**
+   * Returns the ids of the WebAsset annotation on the handler method, parsed
+   * once and cached. The WebAssetHandlerScanner calls this at startup for
+   * every mapped handler method so requests never read the annotation.
+   *
+   * @param method The handler method.
+   *
+   * @return The annotated ids, empty if the method isn't annotated.
+   */
+  public WebAssetIds getIds(Method method) {
+    WebAssetIds ids = methodIds.get(method);
+    if (ids == null) {
+      ids = getAnnotatedIds(method);
+      methodIds.put(method, ids);
+    }
+    return ids;
+  }
+
   @Override
   public boolean preHandle(HttpServletRequest request,
     HttpServletResponse response, Object handler)
@@ -19,12 +197,49 @@ public class WebAssetInterceptor
     if (handler instanceof HandlerMethod) {
       HandlerMethod hm = (HandlerMethod)handler;
       Method method = hm.getMethod();
-      WebAsset waa = method.getAnnotation(WebAsset.class);
-      if (waa != null) {
-        WebAssetRequest.setup(waa.value());
+      WebAssetIds ids = getIds(method);
+
+      // ids go in the request so they follow it through async dispatches
+      if (!ids.isEmpty()) {
+        WebAssetRequest.setup(request, ids);
+        if (preloadHeaders) {
+          sendPreloads(request, response, ids);
+        }
       }
     }
 
     return true;
   }
-}
\ No newline at end of file
+
+  public WebAssetManager getWebAssetManager() {
+    return webAssetManager;
+  }
+
+  public void setWebAssetManager(WebAssetManager webAssetManager) {
+    this.webAssetManager = webAssetManager;
+  }
+
+  public boolean isPreloadHeaders() {
+    return preloadHeaders;
+  }
+
+  public void setPreloadHeaders(boolean preloadHeaders) {
+    this.preloadHeaders = preloadHeaders;
+  }
+
+  public boolean isEarlyHints() {
+    return earlyHints;
+  }
+
+  public void setEarlyHints(boolean earlyHints) {
+    this.earlyHints = earlyHints;
+  }
+
+  public boolean isIncludeGlobal() {
+    return includeGlobal;
+  }
+
+  public void setIncludeGlobal(boolean includeGlobal) {
+    this.includeGlobal = includeGlobal;
+  }
+}
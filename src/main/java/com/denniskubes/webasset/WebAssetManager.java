@@ -1,18 +1,41 @@
 package com.denniskubes.webasset;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.CRC32;
@@ -43,13 +66,20 @@ public class WebAssetManager
 
   private final static Logger LOG = LoggerFactory.getLogger(WebAssetManager.class);
   public final static String GLOBAL = "_global_";
+  public final static String CSS_MINIFY_FILTER = "_css_minify_";
+  public final static String JS_MINIFY_FILTER = "_js_minify_";
+
+  // kinds of segment in the segment cache
+  private final static String SCRIPTS = "scripts";
+  private final static String LINKS = "links";
+  private final static String METAS = "metas";
 
   private MessageSource messageSource;
   private ServletContext servletContext;
 
   private AtomicBoolean active = new AtomicBoolean(false);
   private WebAssetParser webAssetParser = new WebAssetParser();
-  private Map<String, WebAssetConfig> idToConfig = new HashMap<String, WebAssetConfig>();
+  private Map<String, WebAssetConfig> idToConfig = new ConcurrentHashMap<String, WebAssetConfig>();
   private String configDirectory;
   private String rootDirectory;
   private String cacheDirectory = "_webasset_cache_";
@@ -68,9 +98,28 @@ public class WebAssetManager
   private ConfigFileMonitor configFileMonitor;
   private Map<String, Long> configLastModTimes = new ConcurrentHashMap<String, Long>();
 
+  // parallel config parsing at startup and the problems found by the last load
+  private int configLoadThreads = Math.min(4,
+    Runtime.getRuntime().availableProcessors());
+  private Map<String, String> configLoadErrors = Collections.emptyMap();
+  private Map<String, List<String>> idCollisions = Collections.emptyMap();
+
+  // lazy loading of page configs from an index of id to config file path,
+  // with the last access time of each loaded config file for idle release
+  private boolean lazyConfigs = false;
+  private String configIndexFile;
+  private long idleConfigTimeout = 600000;
+  private Map<String, String> idToConfigFile = new ConcurrentHashMap<String, String>();
+  private Map<String, Long> configLastAccess = new ConcurrentHashMap<String, Long>();
+  private final Object lazyLoadLock = new Object();
+
+  // binary snapshot of the parsed configs, reused while the files are unchanged
+  private String configSnapshotFile;
+
   // filters
   private Map<String, WebAssetFilter> filters = new HashMap<String, WebAssetFilter>();
   private Map<String, String[]> typeToFilters = new HashMap<String, String[]>();
+  private boolean minifyAssets = false;
 
   // caches
   private boolean caching = false;
@@ -81,6 +130,94 @@ public class WebAssetManager
   private Map<String, String> titleCache = new ConcurrentHashMap<String, String>();
   private Map<String, Long> assetLastModTimes = new ConcurrentHashMap<String, Long>();
   private Map<String, String> pathsCache = new ConcurrentHashMap<String, String>();
+  private Map<String, List> hintsCache = new ConcurrentHashMap<String, List>();
+
+  // resolved assets of a single config by kind, shared by every config that
+  // extends or includes it
+  private Map<String, List> segmentCache = new ConcurrentHashMap<String, List>();
+  private Map<String, List<String>> segmentIdsCache = new ConcurrentHashMap<String, List<String>>();
+
+  // merged and deduplicated lists for id sets, keyed with the generation,
+  // which changes whenever configs are loaded or assets refiltered
+  private AtomicLong generation = new AtomicLong();
+  private Map<String, List> mergedCache = new ConcurrentHashMap<String, List>();
+
+  // html rendered by the WebAssetRenderer, used only in its own generation
+  private Map<String, RenderedFragment> fragmentCache = new ConcurrentHashMap<String, RenderedFragment>();
+
+  // content of small cached files for inlining by cached url path
+  private int maxInlineBytes = 8192;
+  private Map<String, InlineContent> inlineCache = new ConcurrentHashMap<String, InlineContent>();
+
+  // distinct external origins referenced by the scripts and links of each id,
+  // computed when configs are loaded
+  private Map<String, Set<String>> idToOrigins = new ConcurrentHashMap<String, Set<String>>();
+
+  // canonical cached path by content hash, length, and extension, identical
+  // assets from different source paths share one cached file
+  private boolean deduplicateAssets = true;
+  private Map<String, String> contentToCached = new ConcurrentHashMap<String, String>();
+
+  // assets referenced from other assets, by asset path to the referenced asset
+  // paths and their cached paths when the referencing asset was filtered
+  private Map<String, Map<String, String>> assetDependencies = new ConcurrentHashMap<String, Map<String, String>>();
+
+  // files read while filtering assets, by asset path to input file path and
+  // its last modified time when read, and the inverted index of input file
+  // path to the asset paths that read it
+  private Map<String, Map<String, Long>> assetInputs = new ConcurrentHashMap<String, Map<String, Long>>();
+  private Map<String, Set<String>> inputToAssets = new ConcurrentHashMap<String, Set<String>>();
+
+  /**
+   * Cached file content held for inlining, content is null if the file can't
+   * be inlined.
+   */
+  private static class InlineContent {
+
+    private final String content;
+    private final long bytes;
+
+    private InlineContent(String content, long bytes) {
+      this.content = content;
+      this.bytes = bytes;
+    }
+  }
+
+  /**
+   * Html rendered by the WebAssetRenderer, split where the uri prefix goes,
+   * and the generation it was rendered in.
+   */
+  private static class RenderedFragment {
+
+    private final long generation;
+    private final String[] parts;
+
+    private RenderedFragment(long generation, String[] parts) {
+      this.generation = generation;
+      this.parts = parts;
+    }
+  }
+
+  /**
+   * A config file parsed at startup, with the parse error if it failed.
+   */
+  private static class ParsedConfig {
+
+    private final File configFile;
+    private final long lastModified;
+    private WebAssetConfig config;
+    private Exception error;
+    private long parseMillis;
+
+    private ParsedConfig(File configFile) {
+      this(configFile, configFile.lastModified());
+    }
+
+    private ParsedConfig(File configFile, long lastModified) {
+      this.configFile = configFile;
+      this.lastModified = lastModified;
+    }
+  }
 
   /**
    * A continuous looping thread that polls the file system for changes to all
@@ -108,7 +245,12 @@ public class WebAssetManager
           // if the file exists on the file system and it has been modified
           File configFile = new File(filePath);
           if (configFile.exists() && (configFile.lastModified() > fileLastMod)) {
-            loadAssetConfigFile(configFile);
+            if (lazyConfigs && idToConfigFile.containsValue(filePath)) {
+              reindexAssetConfigFile(configFile);
+            }
+            else {
+              loadAssetConfigFile(configFile);
+            }
           }
           else if (!configFile.exists()) {
             // the file existed previously but has now been removed
@@ -124,6 +266,14 @@ public class WebAssetManager
         }
         removed.clear();
 
+        // refilter only the assets whose inputs have changed
+        refilterChangedInputs();
+
+        // release lazily loaded configs that haven't been used in a while
+        if (lazyConfigs) {
+          releaseIdleConfigs();
+        }
+
         // sleep and then do it all over again
         try {
           Thread.sleep(reloadCheckInterval);
@@ -135,6 +285,47 @@ public class WebAssetManager
     }
   }
 
+  /**
+   * Connects the ids of a parsed config, or the global id, to the config.
+   * 
+   * @param configFile The file the config was parsed from.
+   * @param lastModified The last modified time of the file when parsed.
+   * @param assetConfig The parsed config.
+   */
+  private void applyAssetConfig(File configFile, long lastModified,
+    WebAssetConfig assetConfig) {
+
+    if (assetConfig.isGlobalConfig()) {
+
+      // if global load the aliases, used for resolution at request time
+      Map<String, String> aliases = assetConfig.getAliases();
+      if (aliases.size() > 0) {
+        aliasesCache.clear();
+        aliasesCache.putAll(aliases);
+      }
+      idToConfig.put(GLOBAL, assetConfig);
+
+      // aliases may have changed, recompute origins for every config
+      for (Entry<String, WebAssetConfig> idConfig : idToConfig.entrySet()) {
+        idToOrigins.put(idConfig.getKey(), collectOrigins(idConfig.getValue()));
+      }
+    }
+    else {
+      // connect id to config
+      Set<String> origins = collectOrigins(assetConfig);
+      for (String id : assetConfig.getIds()) {
+        idToConfig.put(id, assetConfig);
+        idToOrigins.put(id, origins);
+        if (lazyConfigs) {
+          idToConfigFile.put(id, configFile.getPath());
+        }
+      }
+    }
+
+    // set the last modified time to allow change detection
+    configLastModTimes.put(configFile.getPath(), lastModified);
+  }
+
   /**
    * Parses and loads a single web asset configuration file.
    * 
@@ -144,33 +335,559 @@ public class WebAssetManager
 
     try {
 
+      long lastModified = configFile.lastModified();
       WebAssetConfig assetConfig = webAssetParser.parseConfig(configFile);
       if (assetConfig != null) {
-        if (assetConfig.isGlobalConfig()) {
+        applyAssetConfig(configFile, lastModified, assetConfig);
 
-          // if global load the aliases, used for resolution at request time
-          Map<String, String> aliases = assetConfig.getAliases();
-          if (aliases.size() > 0) {
-            aliasesCache.clear();
-            aliasesCache.putAll(aliases);
-          }
-          idToConfig.put(GLOBAL, assetConfig);
+        // lists resolved from the previous config are out of date
+        clearRenderCaches();
+      }
+    }
+    catch (IOException | IllegalArgumentException e) {
+      // bad parsing, log and ignore file
+      LOG.warn("Error loading web asset config: " + configFile.getPath(), e);
+    }
+  }
+
+  private ParsedConfig parseAssetConfigFile(File configFile) {
+
+    ParsedConfig parsed = new ParsedConfig(configFile);
+    long start = System.currentTimeMillis();
+    try {
+      parsed.config = webAssetParser.parseConfig(configFile);
+    }
+    catch (Exception e) {
+      parsed.error = e;
+    }
+    parsed.parseMillis = System.currentTimeMillis() - start;
+    return parsed;
+  }
+
+  /**
+   * Parses the config files in parallel on a bounded pool and returns them in
+   * the order of the files.
+   */
+  private List<ParsedConfig> parseAssetConfigFiles(List<File> configFiles)
+    throws IOException {
+
+    List<ParsedConfig> parsedConfigs = new ArrayList<ParsedConfig>();
+    int threads = Math.min(configLoadThreads, configFiles.size());
+    if (threads <= 1) {
+      for (File configFile : configFiles) {
+        parsedConfigs.add(parseAssetConfigFile(configFile));
+      }
+      return parsedConfigs;
+    }
+
+    final AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService parsePool = Executors.newFixedThreadPool(threads,
+      runnable -> {
+        Thread thread = new Thread(runnable, "webasset-config-"
+          + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+
+    try {
+      List<Future<ParsedConfig>> futures = new ArrayList<Future<ParsedConfig>>();
+      for (File configFile : configFiles) {
+        futures.add(parsePool.submit(() -> parseAssetConfigFile(configFile)));
+      }
+      for (Future<ParsedConfig> future : futures) {
+        parsedConfigs.add(future.get());
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted loading web asset configs", e);
+    }
+    catch (ExecutionException e) {
+      throw new IOException("Error loading web asset configs", e.getCause());
+    }
+    finally {
+      parsePool.shutdownNow();
+    }
+    return parsedConfigs;
+  }
+
+  /**
+   * Returns the configs of the snapshot if it was written for the same config
+   * files, or null if there isn't one to use.
+   */
+  private List<ParsedConfig> readConfigSnapshot(List<File> configFiles,
+    String inputsKey) {
+
+    File snapshotFile = getRootRelativeFile(configSnapshotFile);
+    try {
+      WebAssetConfigSnapshot snapshot = WebAssetConfigSnapshot.read(
+        snapshotFile, inputsKey);
+      if (snapshot == null) {
+        return null;
+      }
+      List<ParsedConfig> parsedConfigs = new ArrayList<ParsedConfig>();
+      for (File configFile : configFiles) {
+        ParsedConfig parsedConfig = new ParsedConfig(configFile,
+          snapshot.getLastModified(configFile.getPath()));
+        parsedConfig.config = snapshot.getConfigs().get(configFile.getPath());
+        parsedConfigs.add(parsedConfig);
+      }
+      return parsedConfigs;
+    }
+    catch (IOException e) {
+      LOG.warn("Error reading web asset config snapshot: " + snapshotFile, e);
+      return null;
+    }
+  }
+
+  private void writeConfigSnapshot(List<ParsedConfig> parsedConfigs,
+    String inputsKey) {
+
+    WebAssetConfigSnapshot snapshot = new WebAssetConfigSnapshot(inputsKey);
+    for (ParsedConfig parsedConfig : parsedConfigs) {
+      if (parsedConfig.config != null) {
+        snapshot.add(parsedConfig.configFile.getPath(),
+          parsedConfig.lastModified, parsedConfig.config);
+      }
+    }
+    File snapshotFile = getRootRelativeFile(configSnapshotFile);
+    try {
+      snapshot.write(snapshotFile);
+    }
+    catch (IOException e) {
+      LOG.warn("Error writing web asset config snapshot: " + snapshotFile, e);
+    }
+  }
+
+  /**
+   * Loads the config files, parsing them in parallel and then applying them
+   * in path order with global configs first, so the result doesn't depend on
+   * parse timing. When more than one file claims an id the file last in path
+   * order wins. Failures, id collisions, and timings are logged as a single
+   * summary. With a config snapshot the parsed configs are read from the
+   * snapshot when the files are unchanged, and written to it when parsed
+   * without errors.
+   * 
+   * @param configFiles The web asset configuration files to load.
+   */
+  private void loadAssetConfigFiles(List<File> configFiles)
+    throws IOException {
+
+    long start = System.currentTimeMillis();
+    List<File> sortedFiles = new ArrayList<File>(configFiles);
+    Collections.sort(sortedFiles);
+
+    String inputsKey = null;
+    List<ParsedConfig> parsedConfigs = null;
+    if (StringUtils.isNotBlank(configSnapshotFile)) {
+      inputsKey = WebAssetConfigSnapshot.getInputsKey(sortedFiles);
+      parsedConfigs = readConfigSnapshot(sortedFiles, inputsKey);
+    }
+    boolean fromSnapshot = (parsedConfigs != null);
+    if (!fromSnapshot) {
+      parsedConfigs = parseAssetConfigFiles(sortedFiles);
+    }
+    long parsed = System.currentTimeMillis();
+
+    Map<String, String> errors = new TreeMap<String, String>();
+    List<ParsedConfig> globals = new ArrayList<ParsedConfig>();
+    List<ParsedConfig> locals = new ArrayList<ParsedConfig>();
+    ParsedConfig slowest = null;
+    for (ParsedConfig parsedConfig : parsedConfigs) {
+      if (parsedConfig.error != null) {
+        errors.put(parsedConfig.configFile.getPath(),
+          String.valueOf(parsedConfig.error.getMessage()));
+        LOG.debug("Error loading web asset config: "
+          + parsedConfig.configFile.getPath(), parsedConfig.error);
+      }
+      else if (parsedConfig.config != null) {
+        if (parsedConfig.config.isGlobalConfig()) {
+          globals.add(parsedConfig);
         }
         else {
-          // connect id to config
-          for (String id : assetConfig.getIds()) {
-            idToConfig.put(id, assetConfig);
+          locals.add(parsedConfig);
+        }
+      }
+      if (slowest == null || parsedConfig.parseMillis > slowest.parseMillis) {
+        slowest = parsedConfig;
+      }
+    }
+
+    // global first so aliases are in place for the origins of every config
+    Map<String, List<String>> idFiles = new TreeMap<String, List<String>>();
+    for (ParsedConfig parsedConfig : globals) {
+      applyAssetConfig(parsedConfig.configFile, parsedConfig.lastModified,
+        parsedConfig.config);
+    }
+    for (ParsedConfig parsedConfig : locals) {
+      applyAssetConfig(parsedConfig.configFile, parsedConfig.lastModified,
+        parsedConfig.config);
+      for (String id : parsedConfig.config.getIds()) {
+        List<String> files = idFiles.computeIfAbsent(id,
+          k -> new ArrayList<String>());
+        files.add(parsedConfig.configFile.getPath());
+      }
+    }
+    clearRenderCaches();
+
+    Map<String, List<String>> collisions = new TreeMap<String, List<String>>();
+    for (Entry<String, List<String>> idFile : idFiles.entrySet()) {
+      if (idFile.getValue().size() > 1) {
+        collisions.put(idFile.getKey(), idFile.getValue());
+      }
+    }
+    configLoadErrors = Collections.unmodifiableMap(errors);
+    idCollisions = Collections.unmodifiableMap(collisions);
+
+    // only snapshot a clean load so failed files are parsed and reported again
+    if (inputsKey != null && !fromSnapshot && errors.isEmpty()) {
+      writeConfigSnapshot(parsedConfigs, inputsKey);
+    }
+
+    if (fromSnapshot) {
+      LOG.info("Loaded {} web asset configs from snapshot in {} ms",
+        (globals.size() + locals.size()), (System.currentTimeMillis() - start));
+    }
+    else {
+      LOG.info("Loaded {} of {} web asset configs in {} ms, {} ms parsing on "
+        + "{} threads, slowest {} in {} ms", (globals.size() + locals.size()),
+        sortedFiles.size(), (System.currentTimeMillis() - start),
+        (parsed - start), Math.max(1, Math.min(configLoadThreads,
+          sortedFiles.size())), slowest.configFile.getName(),
+        slowest.parseMillis);
+    }
+    if (!errors.isEmpty()) {
+      LOG.warn("{} web asset configs failed to load: {}", errors.size(), errors);
+    }
+    if (!collisions.isEmpty()) {
+      LOG.warn("{} web asset ids are in more than one config, the last file "
+        + "wins: {}", collisions.size(), collisions);
+    }
+  }
+
+  /**
+   * Returns the config for an id. With lazy configs a config that isn't
+   * loaded is loaded from its indexed file, and the access is recorded so
+   * idle configs can be released.
+   */
+  private WebAssetConfig getConfig(String id) {
+
+    WebAssetConfig assetConfig = idToConfig.get(id);
+    if (lazyConfigs && !GLOBAL.equals(id)) {
+      String configPath = idToConfigFile.get(id);
+      if (configPath != null) {
+        if (assetConfig == null) {
+          assetConfig = loadLazyConfig(id, configPath);
+        }
+        configLastAccess.put(configPath, System.currentTimeMillis());
+      }
+    }
+    return assetConfig;
+  }
+
+  /**
+   * Parses an indexed config file and connects the ids the index gives to
+   * that file, a file later in path order keeps any others.
+   */
+  private WebAssetConfig loadLazyConfig(String id, String configPath) {
+
+    synchronized (lazyLoadLock) {
+
+      // another thread may have loaded it while waiting
+      WebAssetConfig loaded = idToConfig.get(id);
+      if (loaded != null) {
+        return loaded;
+      }
+
+      File configFile = new File(configPath);
+      try {
+        long lastModified = configFile.lastModified();
+        WebAssetConfig assetConfig = webAssetParser.parseConfig(configFile);
+        Set<String> origins = collectOrigins(assetConfig);
+        for (String configId : assetConfig.getIds()) {
+          if (configPath.equals(idToConfigFile.get(configId))) {
+            idToConfig.put(configId, assetConfig);
+            idToOrigins.put(configId, origins);
           }
         }
+        configLastModTimes.put(configPath, lastModified);
+        LOG.debug("Lazily loaded web asset config {}", configPath);
+      }
+      catch (IOException | IllegalArgumentException e) {
+        // drop the file from the index until it changes
+        LOG.warn("Error loading web asset config: " + configPath, e);
+        idToConfigFile.values().removeIf(configPath::equals);
+      }
+      return idToConfig.get(id);
+    }
+  }
+
+  /**
+   * Updates the index for a changed config file and drops its loaded config,
+   * which is parsed again on next use.
+   */
+  private void reindexAssetConfigFile(File configFile) {
+
+    String configPath = configFile.getPath();
+    synchronized (lazyLoadLock) {
+      try {
+        long lastModified = configFile.lastModified();
+        WebAssetConfig header = webAssetParser.parseConfigHeader(configFile);
+        unloadAssetConfigFiles(Collections.singleton(configPath), true);
+        for (String id : header.getIds()) {
+          idToConfigFile.put(id, configPath);
+        }
+        configLastModTimes.put(configPath, lastModified);
+      }
+      catch (IOException | IllegalArgumentException e) {
+        LOG.warn("Error indexing web asset config: " + configPath, e);
+        configLastModTimes.put(configPath, configFile.lastModified());
+      }
+    }
+
+    // lists resolved from the previous config are out of date
+    clearRenderCaches();
+  }
+
+  /**
+   * Removes the loaded configs of the config files, and their index entries
+   * if unindex is true.
+   */
+  private void unloadAssetConfigFiles(Set<String> configPaths, boolean unindex) {
+
+    for (Iterator<Entry<String, String>> idFiles = idToConfigFile.entrySet().iterator(); idFiles.hasNext();) {
+      Entry<String, String> idFile = idFiles.next();
+      if (configPaths.contains(idFile.getValue())) {
+        idToConfig.remove(idFile.getKey());
+        idToOrigins.remove(idFile.getKey());
+        if (unindex) {
+          idFiles.remove();
+        }
+      }
+    }
+    configLastAccess.keySet().removeAll(configPaths);
+  }
+
+  /**
+   * Releases lazily loaded configs not used within the idle timeout. The
+   * configs stay indexed and are parsed again on next use.
+   */
+  void releaseIdleConfigs() {
+
+    long idleBefore = System.currentTimeMillis() - idleConfigTimeout;
+    Set<String> idlePaths = new HashSet<String>();
+    for (Entry<String, Long> access : configLastAccess.entrySet()) {
+      if (access.getValue() < idleBefore) {
+        idlePaths.add(access.getKey());
+      }
+    }
+
+    if (!idlePaths.isEmpty()) {
+      synchronized (lazyLoadLock) {
+        unloadAssetConfigFiles(idlePaths, false);
+      }
+      LOG.debug("Released {} idle web asset configs", idlePaths.size());
+    }
+  }
+
+  private Properties readConfigIndex() {
+
+    Properties index = new Properties();
+    if (StringUtils.isBlank(configIndexFile)) {
+      return index;
+    }
+    File indexFile = getRootRelativeFile(configIndexFile);
+    if (indexFile.exists()) {
+      try (InputStream in = new FileInputStream(indexFile)) {
+        index.load(in);
+      }
+      catch (IOException e) {
+        LOG.warn("Error reading web asset config index: " + indexFile, e);
+        index.clear();
+      }
+    }
+    return index;
+  }
 
-        // set the last modified time to allow change detection
-        configLastModTimes.put(configFile.getPath(), configFile.lastModified());
+  private void writeConfigIndex(Properties index) {
+
+    if (StringUtils.isBlank(configIndexFile)) {
+      return;
+    }
+    File indexFile = getRootRelativeFile(configIndexFile);
+    try {
+      FileUtils.forceMkdirParent(indexFile);
+      try (OutputStream out = new FileOutputStream(indexFile)) {
+        index.store(out, "web asset config index, path=lastModified|ids");
       }
     }
     catch (IOException e) {
-      // bad parsing, log and ignore file
-      LOG.warn("Error loading web asset config: " + configFile.getPath(), e);
+      LOG.warn("Error writing web asset config index: " + indexFile, e);
+    }
+  }
+
+  private File getRootRelativeFile(String path) {
+    File file = new File(path);
+    return file.isAbsolute() ? file : new File(rootDirectory, path);
+  }
+
+  /**
+   * Indexes the config files by id without loading them, reading only the
+   * ids of each file or reusing the persisted index entry of unchanged files.
+   * Global configs are loaded as aliases are needed to resolve every config.
+   * Page configs are loaded on first use.
+   * 
+   * @param configFiles The web asset configuration files to index.
+   */
+  private void indexAssetConfigFiles(List<File> configFiles)
+    throws IOException {
+
+    long start = System.currentTimeMillis();
+    List<File> sortedFiles = new ArrayList<File>(configFiles);
+    Collections.sort(sortedFiles);
+
+    Properties persisted = readConfigIndex();
+    Properties index = new Properties();
+    List<File> globalFiles = new ArrayList<File>();
+    Map<String, String> errors = new TreeMap<String, String>();
+    Map<String, List<String>> idFiles = new TreeMap<String, List<String>>();
+    int reused = 0;
+
+    for (File configFile : sortedFiles) {
+
+      String configPath = configFile.getPath();
+      long lastModified = configFile.lastModified();
+      String entryPrefix = lastModified + "|";
+      String entry = persisted.getProperty(configPath);
+
+      // reuse the persisted ids of unchanged files, else read just the ids
+      String ids;
+      if (entry != null && entry.startsWith(entryPrefix)) {
+        ids = entry.substring(entryPrefix.length());
+        reused++;
+      }
+      else {
+        try {
+          WebAssetConfig header = webAssetParser.parseConfigHeader(configFile);
+          ids = header.isGlobalConfig() ? GLOBAL : StringUtils.join(
+            header.getIds(), ",");
+        }
+        catch (IOException | IllegalArgumentException e) {
+
+          // still monitored so the file is loaded once it is fixed
+          errors.put(configPath, String.valueOf(e.getMessage()));
+          configLastModTimes.put(configPath, lastModified);
+          continue;
+        }
+      }
+      index.setProperty(configPath, entryPrefix + ids);
+
+      if (GLOBAL.equals(ids)) {
+        globalFiles.add(configFile);
+      }
+      else {
+        for (String id : StringUtils.split(ids, ",")) {
+          idToConfigFile.put(id, configPath);
+          idFiles.computeIfAbsent(id, k -> new ArrayList<String>()).add(
+            configPath);
+        }
+        configLastModTimes.put(configPath, lastModified);
+      }
+    }
+    writeConfigIndex(index);
+
+    // global configs are always loaded
+    if (!globalFiles.isEmpty()) {
+      loadAssetConfigFiles(globalFiles);
+      errors.putAll(configLoadErrors);
     }
+    clearRenderCaches();
+
+    Map<String, List<String>> collisions = new TreeMap<String, List<String>>();
+    for (Entry<String, List<String>> idFile : idFiles.entrySet()) {
+      if (idFile.getValue().size() > 1) {
+        collisions.put(idFile.getKey(), idFile.getValue());
+      }
+    }
+    configLoadErrors = Collections.unmodifiableMap(errors);
+    idCollisions = Collections.unmodifiableMap(collisions);
+
+    LOG.info("Indexed {} web asset ids from {} configs in {} ms, {} from the "
+      + "persisted index", idToConfigFile.size(), sortedFiles.size(),
+      (System.currentTimeMillis() - start), reused);
+    if (!errors.isEmpty()) {
+      LOG.warn("{} web asset configs failed to index: {}", errors.size(), errors);
+    }
+    if (!collisions.isEmpty()) {
+      LOG.warn("{} web asset ids are in more than one config, the last file "
+        + "wins: {}", collisions.size(), collisions);
+    }
+  }
+
+  /**
+   * Returns the scheme and authority of an external url, such as
+   * https://cdn.example.com or //cdn.example.com, or null if the path is
+   * local or not a valid url.
+   * 
+   * @param path The asset path.
+   */
+  private static String getOrigin(String path) {
+
+    if (StringUtils.isBlank(path) || !path.matches("^(https?:)?//.*")) {
+      return null;
+    }
+
+    try {
+      URI uri = new URI(path);
+      if (StringUtils.isBlank(uri.getRawAuthority())) {
+        return null;
+      }
+      String scheme = uri.getScheme();
+      return (scheme != null ? scheme.toLowerCase() + ":" : "") + "//"
+        + uri.getRawAuthority().toLowerCase();
+    }
+    catch (URISyntaxException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the distinct external origins referenced by the scripts and links
+   * of a config, in config order. Aliases are resolved, paths that still need
+   * messages or a profile to resolve are skipped.
+   * 
+   * @param assetConfig The config to collect origins from.
+   */
+  private Set<String> collectOrigins(WebAssetConfig assetConfig) {
+
+    List<Map<String, String>> assets = new ArrayList<Map<String, String>>();
+    assets.addAll(assetConfig.getLinks());
+    assets.addAll(assetConfig.getScripts());
+
+    Set<String> origins = new LinkedHashSet<String>();
+    for (Map<String, String> assetConfigAttrs : assets) {
+
+      String path = assetConfigAttrs.get("path");
+      if (StringUtils.contains(path, "${")) {
+        Matcher tagMatcher = tagPattern.matcher(path);
+        StringBuffer buffer = new StringBuffer();
+        while (tagMatcher.find()) {
+          String code = StringUtils.substringBetween(tagMatcher.group(), "${",
+            "}");
+          String alias = aliasesCache.get(code);
+          tagMatcher.appendReplacement(buffer,
+            Matcher.quoteReplacement(alias != null ? alias : tagMatcher.group()));
+        }
+        tagMatcher.appendTail(buffer);
+        path = buffer.toString();
+      }
+
+      String origin = getOrigin(path);
+      if (origin != null) {
+        origins.add(origin);
+      }
+    }
+    return Collections.unmodifiableSet(origins);
   }
 
   /**
@@ -242,9 +959,170 @@ public class WebAssetManager
     return replaced;
   }
   
-  private String getCacheKey(String id, Locale locale, String profile) {
-    String cacheKey = id + "_" + StringUtils.lowerCase(locale.toString());
-    if (StringUtils.isNotBlank(profile)) {
+  /**
+   * Returns the directory, relative to the cache directory, that the cached
+   * version of the asset is written to. The path is the parent of the asset
+   * with the first matching asset prefix removed.
+   * 
+   * @param assetPath The raw asset path.
+   * 
+   * @return The relative cache directory, empty or ending in a separator.
+   */
+  private String getCachePrefix(String assetPath) {
+
+    // remove asset prefixes for cached directory structure, resulting path
+    // should be the parent of the asset file with the path prefix removed
+    String pathPrefix = assetPath;
+    for (String assetPrefix : assetPrefixes) {
+      if (pathPrefix.startsWith(assetPrefix)) {
+        pathPrefix = StringUtils.removeStart(pathPrefix, assetPrefix);
+        break;
+      }
+    }
+
+    // remove any starting slash and ending filename and extension
+    return FilenameUtils.getPath(pathPrefix);
+  }
+
+  /**
+   * Removes the recorded inputs of an asset from both the forward and the
+   * inverted input indexes.
+   * 
+   * @param assetPath The raw asset path.
+   */
+  private void clearAssetInputs(String assetPath) {
+
+    Map<String, Long> inputs = assetInputs.remove(assetPath);
+    if (inputs != null) {
+      for (String inputPath : inputs.keySet()) {
+        Set<String> assets = inputToAssets.get(inputPath);
+        if (assets != null) {
+          assets.remove(assetPath);
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds assets with inputs that changed since they were filtered, along with
+   * the assets that reference those assets, and refilters only them. Cached
+   * script and link lists are cleared if anything was refiltered.
+   * 
+   * @return The number of assets refiltered.
+   */
+  int refilterChangedInputs() {
+
+    // assets that read a changed input
+    Set<String> affected = new LinkedHashSet<String>();
+    for (Entry<String, Set<String>> inputEntry : inputToAssets.entrySet()) {
+      long inputLastModified = new File(inputEntry.getKey()).lastModified();
+      for (String assetPath : inputEntry.getValue()) {
+        Map<String, Long> inputs = assetInputs.get(assetPath);
+        Long readLastModified = inputs != null ? inputs.get(inputEntry.getKey())
+          : null;
+        if (readLastModified != null && readLastModified != inputLastModified) {
+          affected.add(assetPath);
+        }
+      }
+    }
+    if (affected.isEmpty()) {
+      return 0;
+    }
+
+    // assets that reference an affected asset get a new cached path for it,
+    // walk up through the index by the affected asset files
+    Deque<String> toVisit = new ArrayDeque<String>(affected);
+    while (!toVisit.isEmpty()) {
+      String assetFilePath = new File(rootDirectory, toVisit.pop()).getPath();
+      Set<String> referencing = inputToAssets.get(assetFilePath);
+      if (referencing != null) {
+        for (String assetPath : referencing) {
+          if (affected.add(assetPath)) {
+            toVisit.push(assetPath);
+          }
+        }
+      }
+    }
+
+    // mark everything stale first so referenced assets refilter only once,
+    // either on their own or through the asset referencing them
+    for (String assetPath : affected) {
+      assetLastModTimes.remove(assetPath);
+    }
+    for (String assetPath : affected) {
+      if (!assetLastModTimes.containsKey(assetPath)) {
+        cacheAsset(assetPath);
+      }
+    }
+
+    clearRenderCaches();
+    LOG.info("Refiltered {} assets with changed inputs", affected.size());
+    return affected.size();
+  }
+
+  /**
+   * Clears the cached lists resolved from configs and starts a new
+   * generation, so merged lists computed before are never used again.
+   */
+  private void clearRenderCaches() {
+    generation.incrementAndGet();
+    scriptsCache.clear();
+    metaCache.clear();
+    linksCache.clear();
+    titleCache.clear();
+    hintsCache.clear();
+    segmentCache.clear();
+    segmentIdsCache.clear();
+    mergedCache.clear();
+    fragmentCache.clear();
+  }
+
+  /**
+   * Returns true if the asset has been cached, hasn't changed since, none of
+   * the files it read while filtering have changed, and none of the assets it
+   * references have changed or been recached.
+   * 
+   * @param assetPath The raw asset path.
+   * @param checked Asset paths already checked, guards against cycles.
+   */
+  private boolean isAssetCurrent(String assetPath, Set<String> checked) {
+
+    Long lastModified = assetLastModTimes.get(assetPath);
+    File assetFile = new File(rootDirectory, assetPath);
+    if (lastModified == null || assetFile.lastModified() != lastModified) {
+      return false;
+    }
+
+    Map<String, Long> inputs = assetInputs.get(assetPath);
+    if (inputs != null) {
+      for (Entry<String, Long> input : inputs.entrySet()) {
+        if (new File(input.getKey()).lastModified() != input.getValue()) {
+          return false;
+        }
+      }
+    }
+
+    Map<String, String> dependencies = assetDependencies.get(assetPath);
+    if (dependencies != null) {
+      for (Entry<String, String> dependency : dependencies.entrySet()) {
+        String dependencyPath = dependency.getKey();
+        if (!checked.add(dependencyPath)) {
+          continue;
+        }
+        if (!isAssetCurrent(dependencyPath, checked)
+          || !StringUtils.equals(dependency.getValue(),
+            pathsCache.get(dependencyPath))) {
+          return false;
+        }
+      }
+    }
+
+    return true;
+  }
+
+  private String getCacheKey(String id, Locale locale, String profile) {
+    String cacheKey = id + "_" + StringUtils.lowerCase(locale.toString());
+    if (StringUtils.isNotBlank(profile)) {
       cacheKey += "_" + profile;
     }
     return cacheKey;
@@ -283,13 +1161,14 @@ public class WebAssetManager
     File assetFile = new File(rootDirectory, assetPath);
     if (assetFile.exists()) {
 
-      // if the file hasn't been changed since the last time it was filtered
-      // and cached, just return the cached path, don't reprocess. This also
-      // lets it keep any other attributes that may be different across configs
-      // using the same file
+      // if the file and the assets it references haven't been changed since
+      // the last time it was filtered and cached, just return the cached path,
+      // don't reprocess. This also lets it keep any other attributes that may
+      // be different across configs using the same file
       long assetLastModified = assetFile.lastModified();
-      if (assetLastModTimes.containsKey(assetPath)
-        && assetLastModified == assetLastModTimes.get(assetPath)) {
+      Set<String> checked = new HashSet<String>();
+      checked.add(assetPath);
+      if (isAssetCurrent(assetPath, checked)) {
         attributes.put("path", getCachedPath(assetPath));
         return true;
       }
@@ -298,27 +1177,19 @@ public class WebAssetManager
 
         LOG.info("Filtering and caching {}", assetFile.getPath());
 
-        // remove asset prefixes for cached directory structure, resulting path
-        // should be the parent of the asset file with the path prefix removed
-        String pathPrefix = assetPath;
-        for (String assetPrefix : assetPrefixes) {
-          if (pathPrefix.startsWith(assetPrefix)) {
-            pathPrefix = StringUtils.removeStart(pathPrefix, assetPrefix);
-            break;
-          }
-        }
-
-        // remove any starting slash and ending filename and extension
-        pathPrefix = FilenameUtils.getPath(pathPrefix);
+        // filters record references again as they filter
+        assetDependencies.remove(assetPath);
+        clearAssetInputs(assetPath);
+        String pathPrefix = getCachePrefix(assetPath);
 
         String assetFilePath = assetFile.getPath();
         String assetName = FilenameUtils.getName(assetFilePath);
         String assetExt = FilenameUtils.getExtension(assetFilePath);
         String tempFilename = FilenameUtils.concat(pathPrefix, assetName);
 
-        // copy the input file to the temp directory
-        String randomKey = "_webasset_work_" + System.currentTimeMillis();
-        File workingDir = new File(FileUtils.getTempDirectory(), randomKey);
+        // copy the input file to a unique temp directory, filters can cache
+        // other assets while this one is being filtered
+        File workingDir = Files.createTempDirectory("_webasset_work_").toFile();
         File workingFile = new File(workingDir, tempFilename);
         FileUtils.copyFile(assetFile, workingFile);
 
@@ -349,29 +1220,57 @@ public class WebAssetManager
           + filteredExt;
         String cachedPath = FilenameUtils.concat(pathPrefix, cachedName);
 
-        // write the file out to the cache, the parent directories of the
-        // file will be created in the cache dir if they don't already exist
-        File cacheFile = new File(cacheRoot, cachedPath);
-        boolean copyToCache = !cacheFile.exists()
-          || (overwriteCacheOnFirstRun && FileUtils.deleteQuietly(cacheFile));
-        if (copyToCache) {
-          FileUtils.writeByteArrayToFile(cacheFile, cachedBytes);
-          LOG.info("Added {} to cache as {}", assetFile.getPath(),
-            cacheFile.getPath());
+        // identical filtered content from a different source path, such as
+        // another copy of the same library, shares that asset's cached file
+        String contentKey = crcVal + ":" + cachedBytes.length + ":"
+          + filteredExt;
+        String canonicalPath = deduplicateAssets ? contentToCached.get(contentKey)
+          : null;
+        if (canonicalPath != null
+          && !isCachedContent(cacheRoot, canonicalPath, cachedBytes)) {
+          canonicalPath = null;
         }
-        else {
-          LOG.info("Existing file {} in cache, no copy", cacheFile.getPath());
+
+        String cachedDisplayPath;
+        if (canonicalPath != null) {
+          cachedDisplayPath = canonicalPath;
+          if (!canonicalPath.equals(StringUtils.replace(cachedPath, "\\", "/"))) {
+            LOG.info("Content of {} already cached as {}, no copy",
+              assetFile.getPath(), canonicalPath);
+          }
         }
+        else {
+
+          // write the file out to the cache, the parent directories of the
+          // file will be created in the cache dir if they don't already exist
+          File cacheFile = new File(cacheRoot, cachedPath);
+          boolean copyToCache = !cacheFile.exists()
+            || (overwriteCacheOnFirstRun && FileUtils.deleteQuietly(cacheFile));
+          if (copyToCache) {
+            FileUtils.writeByteArrayToFile(cacheFile, cachedBytes);
+            LOG.info("Added {} to cache as {}", assetFile.getPath(),
+              cacheFile.getPath());
+          }
+          else {
+            LOG.info("Existing file {} in cache, no copy", cacheFile.getPath());
+          }
 
-        // the display paths must always use url slashes
-        String cachedDisplayPath = StringUtils.replace(cachedPath, "\\", "/");
+          // the display paths must always use url slashes
+          cachedDisplayPath = StringUtils.replace(cachedPath, "\\", "/");
+          contentToCached.putIfAbsent(contentKey, cachedDisplayPath);
+        }
 
         // cache to prevent filtering of files that haven't changed and have
         // pointer from raw asset to the cached path
         assetLastModTimes.put(assetPath, assetLastModified);
-        pathsCache.put(assetPath, cachedDisplayPath);
+        String previousPath = pathsCache.put(assetPath, cachedDisplayPath);
         attributes.put("path", getCachedPath(assetPath));
 
+        // content held for inlining is dropped once the cached file changes
+        if (previousPath != null && !previousPath.equals(cachedDisplayPath)) {
+          inlineCache.remove(toCachedUrlPath(previousPath));
+        }
+
         // quietly remove the working directory used for filtering, any files
         // created during filtering are removed
         if (removeTempResources) {
@@ -392,6 +1291,62 @@ public class WebAssetManager
     return false;
   }
 
+  /**
+   * Returns true if the cached file exists and has exactly the content.
+   * 
+   * @param cacheRoot The cache directory.
+   * @param cachedPath The cached path relative to the cache directory.
+   * @param content The content to compare.
+   */
+  private boolean isCachedContent(File cacheRoot, String cachedPath,
+    byte[] content)
+    throws IOException {
+
+    File cacheFile = new File(cacheRoot, cachedPath);
+    return cacheFile.exists() && cacheFile.length() == content.length
+      && Arrays.equals(FileUtils.readFileToByteArray(cacheFile), content);
+  }
+
+  /**
+   * Adds a filter to the end of the filter chain for a file type if it isn't
+   * already in the chain.
+   * 
+   * @param type The file type, by extension.
+   * @param filterName The name of the filter to add.
+   */
+  private void appendFilter(String type, String filterName) {
+
+    String[] filterNames = typeToFilters.get(type);
+    if (filterNames == null) {
+      typeToFilters.put(type, new String[] {filterName});
+    }
+    else if (!Arrays.asList(filterNames).contains(filterName)) {
+      String[] appended = Arrays.copyOf(filterNames, filterNames.length + 1);
+      appended[filterNames.length] = filterName;
+      typeToFilters.put(type, appended);
+    }
+  }
+
+  /**
+   * Registers the built in css and js minifiers, run after any configured
+   * filters for their type.
+   */
+  private void registerMinifyFilters() {
+
+    // copy so configured maps, possibly immutable, aren't changed in place
+    filters = new HashMap<String, WebAssetFilter>(filters);
+    typeToFilters = new HashMap<String, String[]>(typeToFilters);
+
+    if (!filters.containsKey(CSS_MINIFY_FILTER)) {
+      filters.put(CSS_MINIFY_FILTER, new CssMinifyFilter());
+    }
+    if (!filters.containsKey(JS_MINIFY_FILTER)) {
+      filters.put(JS_MINIFY_FILTER, new JsMinifyFilter());
+    }
+    appendFilter("css", CSS_MINIFY_FILTER);
+    appendFilter("js", JS_MINIFY_FILTER);
+  }
+
   /**
    * Removes all cached asset files from the cache directory.
    */
@@ -442,175 +1397,803 @@ public class WebAssetManager
   }
 
   /**
-   * Initialize the web asset manager. Loads all of the configuration resources.
-   * Starts up file change monitoring.
+   * Initialize the web asset manager. Loads all of the configuration resources.
+   * Starts up file change monitoring.
+   */
+  @PostConstruct
+  public synchronized void startup()
+    throws IOException {
+
+    // try and set root directory with servlet context if empty
+    if (servletContext != null && StringUtils.isBlank(rootDirectory)) {
+      rootDirectory = servletContext.getRealPath("/");
+    }
+
+    // check that the root directory exists
+    File rootCache = new File(rootDirectory);
+    if (!rootCache.exists()) {
+      throw new IOException("Root directory doesn't exist.");
+    }
+
+    // create the cache directory if needed
+    File tempCache = new File(rootCache, cacheDirectory);
+    boolean cacheExists = tempCache.exists();
+    if (!cacheExists) {
+      cacheExists = tempCache.mkdirs();
+      if (!cacheExists) {
+        throw new IOException("Couldn't create cache directory for assets");
+      }
+      LOG.info("Created web asset cache directory: " + tempCache.getPath());
+    }
+
+    // quietly remove the cached assets on disk, start clean
+    if (clearCacheOnStartup) {
+      clearDiskCache();
+    }
+
+    // get the root asset directory from the classpath
+    File configRoot = new File(rootDirectory, configDirectory);
+    if (!configRoot.exists() || !configRoot.canRead()) {
+      throw new IOException("No configuration root directory found");
+    }
+
+    // set the default asset prefixes to remove, cached directory structure
+    // will be the asset path minus the first matched asset prefix
+    if (assetPrefixes.isEmpty()) {
+      assetPrefixes.add("/WEB-INF/static");
+      assetPrefixes.add("/WEB-INF");
+    }
+
+    // give filters that need it access to the manager
+    for (WebAssetFilter filter : filters.values()) {
+      if (filter instanceof WebAssetManagerAware) {
+        ((WebAssetManagerAware)filter).setWebAssetManager(this);
+      }
+    }
+
+    // register the built in minifiers for css and js if enabled
+    if (minifyAssets) {
+      registerMinifyFilters();
+    }
+
+    // collect all matching config files under the root asset path
+    List<File> configFiles = new ArrayList<File>();
+    SuffixFileFilter suffixFilter = new SuffixFileFilter(configFileSuffix);
+    FileIOUtils.collectFiles(configFiles, configRoot, suffixFilter, false);
+
+    // load all config files
+    if (configFiles.size() == 0) {
+      LOG.warn("No web asset config files to load.");
+    }
+    else if (lazyConfigs) {
+      indexAssetConfigFiles(configFiles);
+    }
+    else {
+      loadAssetConfigFiles(configFiles);
+    }
+
+    // activate the service
+    active.set(true);
+
+    // start the config file monitoring thread if we have reload interval
+    if (reloadCheckInterval > 0) {
+      configFileMonitor = new ConfigFileMonitor();
+      configFileMonitor.setDaemon(true);
+      configFileMonitor.start();
+    }
+  }
+
+  /**
+   * Shutdown the web asset manager. Clears all assets and configs. Clears all
+   * caches. Delete the cache directory from the file system.
+   */
+  @PreDestroy
+  public synchronized void shutdown() {
+
+    // set active to false to stop the config file monitoring thread
+    active.set(false);
+
+    // quietly remove the cached assets on disk
+    if (clearCacheOnShutdown) {
+      clearDiskCache();
+    }
+
+    // clear the caches
+    aliasesCache.clear();
+    scriptsCache.clear();
+    metaCache.clear();
+    linksCache.clear();
+    titleCache.clear();
+    assetLastModTimes.clear();
+    pathsCache.clear();
+    hintsCache.clear();
+    segmentCache.clear();
+    segmentIdsCache.clear();
+    mergedCache.clear();
+    fragmentCache.clear();
+    inlineCache.clear();
+    idToOrigins.clear();
+    idToConfigFile.clear();
+    configLastAccess.clear();
+    assetDependencies.clear();
+    assetInputs.clear();
+    inputToAssets.clear();
+    contentToCached.clear();
+
+  }
+
+  /**
+   * Reinitializes by shutting down and restarting.
+   */
+  public synchronized void restart()
+    throws IOException {
+    shutdown();
+    startup();
+  }
+
+  /**
+   * Returns the config ids, with lazy configs including ids not loaded yet.
+   */
+  public Set<String> getConfigIds() {
+    if (!lazyConfigs) {
+      return idToConfig.keySet();
+    }
+    Set<String> ids = new LinkedHashSet<String>(idToConfig.keySet());
+    ids.addAll(idToConfigFile.keySet());
+    return ids;
+  }
+
+  public WebAssetConfig getConfigForId(String id) {
+    return getConfig(id);
+  }
+
+  /**
+   * Returns the url path of a cached file from its path relative to the cache
+   * directory.
+   */
+  private String toCachedUrlPath(String cachedAsset) {
+
+    // ensure consistent paths
+    List<String> pathParts = new ArrayList<String>();
+    pathParts.addAll(Arrays.asList(StringUtils.split(cacheDirectory, "/")));
+    pathParts.addAll(Arrays.asList(StringUtils.split(cachedAsset, "/")));
+
+    return "/" + StringUtils.join(pathParts, "/");
+  }
+
+  public String getCachedPath(String assetPath) {
+
+    String cachedAsset = pathsCache.get(assetPath);
+    if (StringUtils.isBlank(cachedAsset)) {
+      return null;
+    }
+    return toCachedUrlPath(cachedAsset);
+  }
+
+  /**
+   * Returns the content of a cached script or stylesheet to write inline in
+   * the page, or null if it is larger than the max bytes or can't be inlined.
+   * Stylesheets with url() or @import references, which are relative to the
+   * cached file, and content that would close the surrounding script or
+   * style element are never inlined.
+   * 
+   * <p>The content is read once and held in memory by cached path. Cached
+   * file names change with their content, so held content is never stale.</p>
+   * 
+   * @param cachedPath The cached url path, as returned by getCachedPath.
+   * @param maxBytes The largest cached file size to inline.
+   * 
+   * @return The content to inline or null to write a normal tag.
+   */
+  public String getInlineContent(String cachedPath, int maxBytes) {
+
+    if (StringUtils.isBlank(cachedPath) || !cachedPath.startsWith("/")
+      || cachedPath.startsWith("//")) {
+      return null;
+    }
+
+    InlineContent inline = inlineCache.get(cachedPath);
+    if (inline == null) {
+
+      // only files written to the cache directory
+      File cacheRoot = new File(rootDirectory, cacheDirectory);
+      File cacheFile = new File(rootDirectory, cachedPath);
+      try {
+        if (!cacheFile.isFile()
+          || !FileUtils.directoryContains(cacheRoot, cacheFile)) {
+          return null;
+        }
+      }
+      catch (IOException e) {
+        return null;
+      }
+
+      // files over the limit are only recorded by size
+      String content = null;
+      long bytes = cacheFile.length();
+      if (bytes <= maxInlineBytes) {
+        try {
+          content = FileUtils.readFileToString(cacheFile, "UTF-8");
+        }
+        catch (IOException e) {
+          LOG.warn("Error reading cached file for inlining: " + cachedPath, e);
+          return null;
+        }
+        String lower = content.toLowerCase();
+        boolean references = "css".equalsIgnoreCase(FilenameUtils.getExtension(cachedPath))
+          && (lower.contains("url(") || lower.contains("@import"));
+        if (references || lower.contains("</script")
+          || lower.contains("</style")) {
+          content = null;
+        }
+      }
+      inline = new InlineContent(content, bytes);
+      inlineCache.put(cachedPath, inline);
+    }
+
+    return inline.bytes <= maxBytes ? inline.content : null;
+  }
+
+  /**
+   * Returns the raw paths of all cached assets mapped to their cached paths.
+   */
+  public Map<String, String> getAssetPathMappings() {
+
+    Map<String, String> mappings = new TreeMap<String, String>();
+    for (String assetPath : pathsCache.keySet()) {
+      String cachedPath = getCachedPath(assetPath);
+      if (cachedPath != null) {
+        mappings.put(assetPath, cachedPath);
+      }
+    }
+    return mappings;
+  }
+
+  /**
+   * Returns cached paths that more than one raw asset path maps to because
+   * the filtered content is identical.
+   * 
+   * @return The cached paths mapped to the raw asset paths sharing them.
+   */
+  public Map<String, List<String>> getDuplicateAssets() {
+
+    Map<String, List<String>> cachedToAssets = new TreeMap<String, List<String>>();
+    for (Entry<String, String> pathEntry : getAssetPathMappings().entrySet()) {
+      String cachedPath = pathEntry.getValue();
+      List<String> assetPaths = cachedToAssets.get(cachedPath);
+      if (assetPaths == null) {
+        assetPaths = new ArrayList<String>();
+        cachedToAssets.put(cachedPath, assetPaths);
+      }
+      assetPaths.add(pathEntry.getKey());
+    }
+
+    Map<String, List<String>> duplicates = new TreeMap<String, List<String>>();
+    for (Entry<String, List<String>> cachedEntry : cachedToAssets.entrySet()) {
+      if (cachedEntry.getValue().size() > 1) {
+        List<String> assetPaths = cachedEntry.getValue();
+        Collections.sort(assetPaths);
+        duplicates.put(cachedEntry.getKey(), assetPaths);
+      }
+    }
+    return duplicates;
+  }
+
+  /**
+   * Returns the url path of the directory the cached version of the asset is
+   * written to, for example /_webasset_cache_/css.
+   * 
+   * @param assetPath The raw asset path.
+   * 
+   * @return The cached directory url path.
+   */
+  public String getCachedDirectory(String assetPath) {
+
+    List<String> pathParts = new ArrayList<String>();
+    pathParts.addAll(Arrays.asList(StringUtils.split(cacheDirectory, "/")));
+    String cachePrefix = StringUtils.replace(getCachePrefix(assetPath), "\\", "/");
+    pathParts.addAll(Arrays.asList(StringUtils.split(cachePrefix, "/")));
+
+    return "/" + StringUtils.join(pathParts, "/");
+  }
+
+  /**
+   * Filters and caches a single asset, for example an image or font referenced
+   * from a stylesheet, and returns its cached path.  External paths are
+   * returned as is.
+   * 
+   * @param assetPath The raw asset path.
+   * 
+   * @return The cached path or null if the asset doesn't exist or couldn't be
+   * filtered.
+   */
+  public String cacheAsset(String assetPath) {
+
+    Map<String, String> attributes = new LinkedHashMap<String, String>();
+    attributes.put("path", assetPath);
+    return filterAndCache(attributes) ? attributes.get("path") : null;
+  }
+
+  /**
+   * Records that an asset references another asset, usually called by filters
+   * while filtering. The referencing asset is refiltered when the referenced
+   * asset changes or is recached.
+   * 
+   * @param assetPath The raw path of the referencing asset.
+   * @param dependencyPath The raw path of the referenced asset, which must
+   * already be cached.
+   */
+  public void addAssetDependency(String assetPath, String dependencyPath) {
+
+    Map<String, String> dependencies = assetDependencies.computeIfAbsent(
+      assetPath, k -> new ConcurrentHashMap<String, String>());
+    String cachedPath = pathsCache.get(dependencyPath);
+    dependencies.put(dependencyPath, cachedPath != null ? cachedPath : "");
+
+    // the referenced file is also an input, indexes the reference for
+    // incremental refiltering
+    addAssetInput(assetPath, new File(rootDirectory, dependencyPath));
+  }
+
+  /**
+   * Records that a file was read while filtering an asset, for example an
+   * imported partial or an include. Filters call this while filtering. When
+   * any input changes only the assets that read it are refiltered.
+   * 
+   * @param assetPath The raw path of the asset being filtered.
+   * @param input The file read while filtering.
+   */
+  public void addAssetInput(String assetPath, File input) {
+
+    String inputPath = input.getPath();
+    assetInputs.computeIfAbsent(assetPath,
+      k -> new ConcurrentHashMap<String, Long>()).put(inputPath,
+      input.lastModified());
+    inputToAssets.computeIfAbsent(inputPath,
+      k -> ConcurrentHashMap.<String> newKeySet()).add(assetPath);
+  }
+
+  /**
+   * Returns the raw paths of the assets that read the file while filtering.
+   * 
+   * @param input The input file.
+   * 
+   * @return The affected asset paths, empty if none.
+   */
+  public Set<String> getAssetsForInput(File input) {
+    Set<String> assets = inputToAssets.get(input.getPath());
+    return assets != null ? Collections.unmodifiableSet(assets)
+      : Collections.<String> emptySet();
+  }
+
+  public List<Map<String, String>> getGlobalScripts(Locale locale) {
+    return getScriptsForId(GLOBAL, locale, null);
+  }
+
+  public List<Map<String, String>> getScriptsForId(String id, Locale locale,
+    String profile) {
+
+    // check the cache first
+    String cacheKey = getCacheKey(id, locale, profile);
+    if (caching && scriptsCache.containsKey(cacheKey)) {
+      return scriptsCache.get(cacheKey);
+    }
+
+    // get the id script attributes
+    List<Map<String, String>> scripts = new ArrayList<Map<String, String>>();
+    WebAssetConfig assetConfig = getConfig(id);
+
+    if (assetConfig != null) {
+
+      // with caching even a config without segments is resolved as one, so
+      // its assets are shared with the configs that include it
+      boolean segmented = caching || assetConfig.hasSegments();
+      scripts = segmented ? getSegmented(SCRIPTS, id, locale, profile)
+        : resolveScripts(assetConfig, locale, profile);
+
+      if (caching) {
+        scriptsCache.put(cacheKey, scripts);
+      }
+    }
+
+    return scripts;
+  }
+
+  private List<Map<String, String>> resolveScripts(WebAssetConfig assetConfig,
+    Locale locale, String profile) {
+
+    List<Map<String, String>> scripts = new ArrayList<Map<String, String>>();
+    List<Map<String, String>> scriptConfigs = assetConfig.getScripts();
+    for (Map<String, String> scriptConfig : scriptConfigs) {
+
+      // resolving the aliases creates a copy of the script config
+      Map<String, String> scriptAttrs = resolveAll(scriptConfig, locale,
+        profile);
+
+      // script was successfully filtered and cached
+      if (filterAndCache(scriptAttrs)) {
+        scripts.add(scriptAttrs);
+      }
+    }
+    return scripts;
+  }
+
+  /**
+   * Returns the ids of the configs making up an id, in asset order. The
+   * config it extends comes first, then the configs it includes, each with
+   * their own segments before them, then the config of the id itself. Each
+   * config appears once, by its first id, however many of its ids are
+   * referenced, and missing configs, the global config, and cycles are
+   * skipped. The ids are computed once per id after configs are loaded.
+   * 
+   * @param id The config id.
+   */
+  public List<String> getSegmentIds(String id) {
+
+    List<String> segmentIds = segmentIdsCache.get(id);
+    if (segmentIds == null) {
+      segmentIds = new ArrayList<String>();
+      Set<WebAssetConfig> visiting = Collections.newSetFromMap(
+        new IdentityHashMap<WebAssetConfig, Boolean>());
+      Set<WebAssetConfig> added = Collections.newSetFromMap(
+        new IdentityHashMap<WebAssetConfig, Boolean>());
+      addSegmentIds(id, segmentIds, visiting, added);
+      segmentIds = Collections.unmodifiableList(segmentIds);
+      segmentIdsCache.put(id, segmentIds);
+    }
+    return segmentIds;
+  }
+
+  private void addSegmentIds(String id, List<String> segmentIds,
+    Set<WebAssetConfig> visiting, Set<WebAssetConfig> added) {
+
+    WebAssetConfig assetConfig = getConfig(id);
+    if (assetConfig == null) {
+      LOG.debug("Skipping missing web asset config {}", id);
+      return;
+    }
+    else if (added.contains(assetConfig)) {
+      return;
+    }
+    else if (!visiting.add(assetConfig)) {
+      LOG.warn("Web asset config {} extends or includes itself", id);
+      return;
+    }
+
+    List<String> segments = new ArrayList<String>();
+    if (assetConfig.getParent() != null) {
+      segments.add(assetConfig.getParent());
+    }
+    segments.addAll(assetConfig.getIncludes());
+    for (String segmentId : segments) {
+      if (!GLOBAL.equals(segmentId)) {
+        addSegmentIds(segmentId, segmentIds, visiting, added);
+      }
+    }
+
+    // the global config has no ids of its own
+    List<String> configIds = assetConfig.getIds();
+    segmentIds.add(configIds.isEmpty() ? id : configIds.get(0));
+    added.add(assetConfig);
+  }
+
+  /**
+   * Returns the resolved assets of one kind for a single config, without its
+   * segments. With caching the same immutable list, and the same attribute
+   * maps, are shared by every id extending or including the config.
    */
-  @PostConstruct
-  public synchronized void startup()
-    throws IOException {
+  private List<Map<String, String>> getSegment(String kind, String id,
+    Locale locale, String profile) {
 
-    // try and set root directory with servlet context if empty
-    if (servletContext != null && StringUtils.isBlank(rootDirectory)) {
-      rootDirectory = servletContext.getRealPath("/");
+    String cacheKey = kind + "|" + getCacheKey(id, locale, profile);
+    List<Map<String, String>> segment = caching ? segmentCache.get(cacheKey)
+      : null;
+    if (segment != null) {
+      return segment;
     }
 
-    // check that the root directory exists
-    File rootCache = new File(rootDirectory);
-    if (!rootCache.exists()) {
-      throw new IOException("Root directory doesn't exist.");
+    WebAssetConfig assetConfig = getConfig(id);
+    if (assetConfig == null) {
+      return Collections.emptyList();
     }
-
-    // create the cache directory if needed
-    File tempCache = new File(rootCache, cacheDirectory);
-    boolean cacheExists = tempCache.exists();
-    if (!cacheExists) {
-      cacheExists = tempCache.mkdirs();
-      if (!cacheExists) {
-        throw new IOException("Couldn't create cache directory for assets");
-      }
-      LOG.info("Created web asset cache directory: " + tempCache.getPath());
+    else if (SCRIPTS.equals(kind)) {
+      segment = resolveScripts(assetConfig, locale, profile);
     }
-
-    // quietly remove the cached assets on disk, start clean
-    if (clearCacheOnStartup) {
-      clearDiskCache();
+    else if (LINKS.equals(kind)) {
+      segment = resolveLinks(assetConfig, locale, profile);
     }
-
-    // get the root asset directory from the classpath
-    File configRoot = new File(rootDirectory, configDirectory);
-    if (!configRoot.exists() || !configRoot.canRead()) {
-      throw new IOException("No configuration root directory found");
+    else {
+      segment = resolveMetas(assetConfig, locale, profile);
     }
 
-    // set the default asset prefixes to remove, cached directory structure
-    // will be the asset path minus the first matched asset prefix
-    if (assetPrefixes.isEmpty()) {
-      assetPrefixes.add("/WEB-INF/static");
-      assetPrefixes.add("/WEB-INF");
+    segment = segment.isEmpty() ? Collections.<Map<String, String>> emptyList()
+      : Collections.unmodifiableList(segment);
+    if (caching) {
+      segmentCache.put(cacheKey, segment);
     }
+    return segment;
+  }
 
-    // collect all matching config files under the root asset path
-    List<File> configFiles = new ArrayList<File>();
-    SuffixFileFilter suffixFilter = new SuffixFileFilter(configFileSuffix);
-    FileIOUtils.collectFiles(configFiles, configRoot, suffixFilter, false);
+  /**
+   * Joins the segments of an id in order. A single non empty segment is
+   * returned as is rather than copied.
+   */
+  private List<Map<String, String>> getSegmented(String kind, String id,
+    Locale locale, String profile) {
 
-    // load all config files
-    if (configFiles.size() == 0) {
-      LOG.warn("No web asset config files to load.");
-    }
-    else {
-      for (File configFile : configFiles) {
-        loadAssetConfigFile(configFile);
+    List<List<Map<String, String>>> segments = new ArrayList<List<Map<String, String>>>();
+    int size = 0;
+    for (String segmentId : getSegmentIds(id)) {
+      List<Map<String, String>> segment = getSegment(kind, segmentId, locale,
+        profile);
+      if (!segment.isEmpty()) {
+        segments.add(segment);
+        size += segment.size();
       }
     }
 
-    // activate the service
-    active.set(true);
-
-    // start the config file monitoring thread if we have reload interval
-    if (reloadCheckInterval > 0) {
-      configFileMonitor = new ConfigFileMonitor();
-      configFileMonitor.setDaemon(true);
-      configFileMonitor.start();
+    if (segments.size() == 1) {
+      return segments.get(0);
+    }
+    List<Map<String, String>> joined = new ArrayList<Map<String, String>>(size);
+    for (List<Map<String, String>> segment : segments) {
+      joined.addAll(segment);
     }
+    return joined;
   }
 
   /**
-   * Shutdown the web asset manager. Clears all assets and configs. Clears all
-   * caches. Delete the cache directory from the file system.
+   * Returns the external origins referenced by the scripts and links of an
+   * id, computed when the config was loaded.
+   * 
+   * @param id The config id, or GLOBAL for the global config.
    */
-  @PreDestroy
-  public synchronized void shutdown() {
-
-    // set active to false to stop the config file monitoring thread
-    active.set(false);
-
-    // quietly remove the cached assets on disk
-    if (clearCacheOnShutdown) {
-      clearDiskCache();
+  public Set<String> getOriginsForId(String id) {
+
+    WebAssetConfig assetConfig = getConfig(id);
+    if (assetConfig != null && assetConfig.hasSegments()) {
+      Set<String> origins = new LinkedHashSet<String>();
+      for (String segmentId : getSegmentIds(id)) {
+        Set<String> segmentOrigins = idToOrigins.get(segmentId);
+        if (segmentOrigins != null) {
+          origins.addAll(segmentOrigins);
+        }
+      }
+      return origins;
     }
 
-    // clear the caches
-    aliasesCache.clear();
-    scriptsCache.clear();
-    metaCache.clear();
-    linksCache.clear();
-    titleCache.clear();
-    assetLastModTimes.clear();
-    pathsCache.clear();
+    Set<String> origins = idToOrigins.get(id);
+    return origins != null ? origins : Collections.<String> emptySet();
+  }
 
+  public List<Map<String, String>> getGlobalHints(Locale locale) {
+    return getHintsForId(GLOBAL, locale, null);
   }
 
   /**
-   * Reinitializes by shutting down and restarting.
+   * Returns the resource hint link attributes for an id. Each external origin
+   * gets a preconnect and a dns-prefetch hint, for browsers that don't
+   * support preconnect, and each local module script gets a modulepreload
+   * hint with its cached path.
+   * 
+   * @param id The config id.
+   * @param locale The current locale.
+   * @param profile The optional current profile.
+   * 
+   * @return The hint link attributes, each with rel and path.
    */
-  public synchronized void restart()
-    throws IOException {
-    shutdown();
-    startup();
-  }
+  public List<Map<String, String>> getHintsForId(String id, Locale locale,
+    String profile) {
 
-  public Set<String> getConfigIds() {
-    return idToConfig.keySet();
-  }
+    // check the cache first
+    String cacheKey = getCacheKey(id, locale, profile);
+    if (caching && hintsCache.containsKey(cacheKey)) {
+      return hintsCache.get(cacheKey);
+    }
 
-  public WebAssetConfig getConfigForId(String id) {
-    return idToConfig.get(id);
-  }
+    List<Map<String, String>> hints = new ArrayList<Map<String, String>>();
+    if (getConfig(id) != null) {
 
-  public String getCachedPath(String assetPath) {
+      for (String origin : getOriginsForId(id)) {
+        for (String rel : new String[] {"preconnect", "dns-prefetch"}) {
+          Map<String, String> hintAttrs = new LinkedHashMap<String, String>();
+          hintAttrs.put("rel", rel);
+          hintAttrs.put("path", origin);
+          hints.add(hintAttrs);
+        }
+      }
 
-    String cachedAsset = pathsCache.get(assetPath);
-    if (StringUtils.isBlank(cachedAsset)) {
-      return null;
+      // module scripts are only fetched after the html is parsed
+      for (Map<String, String> scriptAttrs : getScriptsForId(id, locale,
+        profile)) {
+        String path = scriptAttrs.get("path");
+        if ("module".equalsIgnoreCase(scriptAttrs.get("type"))
+          && getOrigin(path) == null) {
+          Map<String, String> hintAttrs = new LinkedHashMap<String, String>();
+          hintAttrs.put("rel", "modulepreload");
+          hintAttrs.put("path", path);
+          hints.add(hintAttrs);
+        }
+      }
+
+      if (caching) {
+        hintsCache.put(cacheKey, hints);
+      }
     }
 
-    // ensure consistent paths
-    List<String> pathParts = new ArrayList<String>();
-    pathParts.addAll(Arrays.asList(StringUtils.split(cacheDirectory, "/")));
-    pathParts.addAll(Arrays.asList(StringUtils.split(cachedAsset, "/")));
+    return hints;
+  }
 
-    return "/" + StringUtils.join(pathParts, "/");
+  /**
+   * Merges the asset lists for the ids in order, dropping assets with a path
+   * already in the list. Assets without a path are always kept.
+   */
+  private List<Map<String, String>> mergeAssets(boolean scripts,
+    Collection<String> ids, Locale locale, String profile,
+    boolean includeGlobal) {
+
+    List<String> mergeIds = new ArrayList<String>();
+    if (includeGlobal) {
+      mergeIds.add(GLOBAL);
+    }
+    mergeIds.addAll(ids);
+
+    List<Map<String, String>> merged = new ArrayList<Map<String, String>>();
+    Set<String> paths = new HashSet<String>();
+    for (String id : mergeIds) {
+      String idProfile = GLOBAL.equals(id) ? null : profile;
+      List<Map<String, String>> assets = scripts ? getScriptsForId(id, locale,
+        idProfile) : getLinksForId(id, locale, idProfile);
+      for (Map<String, String> assetAttrs : assets) {
+        String path = assetAttrs.get("path");
+        if (path == null || paths.add(path)) {
+          merged.add(assetAttrs);
+        }
+      }
+    }
+    return Collections.unmodifiableList(merged);
   }
 
-  public List<Map<String, String>> getGlobalScripts(Locale locale) {
-    return getScriptsForId(GLOBAL, locale, null);
+  private String getMergedCacheKey(boolean scripts, Collection<String> ids,
+    Locale locale, String profile, boolean includeGlobal) {
+
+    StringBuilder keyBuilder = new StringBuilder();
+    keyBuilder.append(generation.get()).append('|');
+    keyBuilder.append(scripts ? 's' : 'l').append(includeGlobal ? 'g' : '-');
+    for (String id : ids) {
+      keyBuilder.append('|').append(id);
+    }
+    keyBuilder.append('|').append(getCacheKey("", locale, profile));
+    return keyBuilder.toString();
   }
 
-  public List<Map<String, String>> getScriptsForId(String id, Locale locale,
-    String profile) {
+  private List<Map<String, String>> getMergedAssets(boolean scripts,
+    Collection<String> ids, Locale locale, String profile,
+    boolean includeGlobal) {
 
-    // check the cache first
-    String cacheKey = getCacheKey(id, locale, profile);
-    if (caching && scriptsCache.containsKey(cacheKey)) {
-      return scriptsCache.get(cacheKey);
+    if (!caching) {
+      return mergeAssets(scripts, ids, locale, profile, includeGlobal);
     }
 
-    // get the id script attributes
-    List<Map<String, String>> scripts = new ArrayList<Map<String, String>>();
-    WebAssetConfig assetConfig = idToConfig.get(id);
+    // the generation is read before merging, a merge racing a reload is
+    // stored under the old generation and never returned
+    String cacheKey = getMergedCacheKey(scripts, ids, locale, profile,
+      includeGlobal);
+    List<Map<String, String>> merged = mergedCache.get(cacheKey);
+    if (merged == null) {
+      merged = mergeAssets(scripts, ids, locale, profile, includeGlobal);
+      mergedCache.put(cacheKey, merged);
+    }
+    return merged;
+  }
 
-    if (assetConfig != null) {
+  /**
+   * Returns the scripts for the ids in page order, global scripts first if
+   * included, with each asset path only once. With caching the merged list
+   * is computed once per ids, locale, and profile until configs are reloaded
+   * or assets are refiltered.
+   * 
+   * @param ids The config ids in order.
+   * @param locale The current locale.
+   * @param profile The optional current profile.
+   * @param includeGlobal Include the global scripts first.
+   * 
+   * @return The unmodifiable merged script attributes.
+   */
+  public List<Map<String, String>> getScripts(Collection<String> ids,
+    Locale locale, String profile, boolean includeGlobal) {
+    return getMergedAssets(true, ids, locale, profile, includeGlobal);
+  }
+
+  /**
+   * Returns the stylesheet links for the ids in page order, global links
+   * first if included, with each asset path only once. With caching the
+   * merged list is computed once per ids, locale, and profile until configs
+   * are reloaded or assets are refiltered.
+   * 
+   * @param ids The config ids in order.
+   * @param locale The current locale.
+   * @param profile The optional current profile.
+   * @param includeGlobal Include the global links first.
+   * 
+   * @return The unmodifiable merged link attributes.
+   */
+  public List<Map<String, String>> getLinks(Collection<String> ids,
+    Locale locale, String profile, boolean includeGlobal) {
+    return getMergedAssets(false, ids, locale, profile, includeGlobal);
+  }
 
-      List<Map<String, String>> scriptConfigs = assetConfig.getScripts();
-      for (Map<String, String> scriptConfig : scriptConfigs) {
+  /**
+   * Returns the merged scripts for the ids only if they are already cached,
+   * without resolving or filtering anything.
+   * 
+   * @return The cached merged script attributes or null if not cached.
+   */
+  public List<Map<String, String>> getCachedScripts(Collection<String> ids,
+    Locale locale, String profile, boolean includeGlobal) {
+    return caching ? mergedCache.get(getMergedCacheKey(true, ids, locale,
+      profile, includeGlobal)) : null;
+  }
 
-        // resolving the aliases creates a copy of the script config
-        Map<String, String> scriptAttrs = resolveAll(scriptConfig, locale,
-          profile);
+  /**
+   * Returns the merged links for the ids only if they are already cached,
+   * without resolving or filtering anything.
+   * 
+   * @return The cached merged link attributes or null if not cached.
+   */
+  public List<Map<String, String>> getCachedLinks(Collection<String> ids,
+    Locale locale, String profile, boolean includeGlobal) {
+    return caching ? mergedCache.get(getMergedCacheKey(false, ids, locale,
+      profile, includeGlobal)) : null;
+  }
 
-        // script was successfully filtered and cached
-        if (filterAndCache(scriptAttrs)) {
-          scripts.add(scriptAttrs);
-        }
-      }
+  /**
+   * Returns the current generation of the render caches, which changes
+   * whenever configs are loaded or assets are refiltered. Read it before
+   * rendering and pass it to putRenderedFragment so html rendered from old
+   * configs is never returned.
+   */
+  public long getGeneration() {
+    return generation.get();
+  }
 
-      if (caching) {
-        scriptsCache.put(cacheKey, scripts);
-      }
+  /**
+   * Returns html rendered for the key in the current generation, split where
+   * the uri prefix of the request is written.
+   * 
+   * @param key The fragment key, built by the renderer.
+   * 
+   * @return The rendered html parts or null if not cached or caching is off.
+   */
+  public String[] getRenderedFragment(String key) {
+    if (!caching) {
+      return null;
     }
+    RenderedFragment fragment = fragmentCache.get(key);
+    return (fragment != null && fragment.generation == generation.get())
+      ? fragment.parts : null;
+  }
 
-    return scripts;
+  /**
+   * Returns the number of rendered fragments cached.
+   */
+  int getRenderedFragmentCount() {
+    return fragmentCache.size();
+  }
+
+  /**
+   * Caches html rendered for the key, does nothing when caching is off or
+   * the configs changed while rendering.
+   * 
+   * @param generation The generation read before rendering.
+   * @param key The fragment key, built by the renderer.
+   * @param fragment The rendered html, split where the uri prefix goes.
+   */
+  public void putRenderedFragment(long generation, String key,
+    String[] fragment) {
+    if (caching && generation == this.generation.get()) {
+      fragmentCache.put(key, new RenderedFragment(generation, fragment));
+    }
   }
 
   public List<Map<String, String>> getGlobalLinks(Locale locale) {
@@ -628,21 +2211,13 @@ public class WebAssetManager
 
     // get the id link attributes
     List<Map<String, String>> links = new ArrayList<Map<String, String>>();
-    WebAssetConfig assetConfig = idToConfig.get(id);
+    WebAssetConfig assetConfig = getConfig(id);
 
     if (assetConfig != null) {
 
-      List<Map<String, String>> linkConfigs = assetConfig.getLinks();
-      for (Map<String, String> linkConfig : linkConfigs) {
-
-        // resolving the aliases creates a copy of the script config
-        Map<String, String> linkAttrs = resolveAll(linkConfig, locale, profile);
-
-        // stylesheet was successfully filtered and cached
-        if (filterAndCache(linkAttrs)) {
-          links.add(linkAttrs);
-        }
-      }
+      boolean segmented = caching || assetConfig.hasSegments();
+      links = segmented ? getSegmented(LINKS, id, locale, profile)
+        : resolveLinks(assetConfig, locale, profile);
 
       if (caching) {
         linksCache.put(cacheKey, links);
@@ -652,6 +2227,24 @@ public class WebAssetManager
     return links;
   }
 
+  private List<Map<String, String>> resolveLinks(WebAssetConfig assetConfig,
+    Locale locale, String profile) {
+
+    List<Map<String, String>> links = new ArrayList<Map<String, String>>();
+    List<Map<String, String>> linkConfigs = assetConfig.getLinks();
+    for (Map<String, String> linkConfig : linkConfigs) {
+
+      // resolving the aliases creates a copy of the script config
+      Map<String, String> linkAttrs = resolveAll(linkConfig, locale, profile);
+
+      // stylesheet was successfully filtered and cached
+      if (filterAndCache(linkAttrs)) {
+        links.add(linkAttrs);
+      }
+    }
+    return links;
+  }
+
   public List<Map<String, String>> getGlobalMetas(Locale locale) {
     return getMetasForId(GLOBAL, locale, null);
   }
@@ -667,16 +2260,13 @@ public class WebAssetManager
 
     // get the id meta attributes
     List<Map<String, String>> metas = new ArrayList<Map<String, String>>();
-    WebAssetConfig assetConfig = idToConfig.get(id);
+    WebAssetConfig assetConfig = getConfig(id);
 
     if (assetConfig != null) {
 
-      // resolve any aliases and cache
-      List<Map<String, String>> metaConfigs = assetConfig.getMetas();
-      for (Map<String, String> metaConfig : metaConfigs) {
-        Map<String, String> metaAttrs = resolveAll(metaConfig, locale, profile);
-        metas.add(metaAttrs);
-      }
+      boolean segmented = caching || assetConfig.hasSegments();
+      metas = segmented ? getSegmented(METAS, id, locale, profile)
+        : resolveMetas(assetConfig, locale, profile);
 
       if (caching) {
         metaCache.put(cacheKey, metas);
@@ -686,6 +2276,19 @@ public class WebAssetManager
     return metas;
   }
 
+  private List<Map<String, String>> resolveMetas(WebAssetConfig assetConfig,
+    Locale locale, String profile) {
+
+    // resolve any aliases
+    List<Map<String, String>> metas = new ArrayList<Map<String, String>>();
+    List<Map<String, String>> metaConfigs = assetConfig.getMetas();
+    for (Map<String, String> metaConfig : metaConfigs) {
+      Map<String, String> metaAttrs = resolveAll(metaConfig, locale, profile);
+      metas.add(metaAttrs);
+    }
+    return metas;
+  }
+
   public String getGlobalTitle(Locale locale) {
     return getTitleForId(GLOBAL, locale, null);
   }
@@ -700,10 +2303,23 @@ public class WebAssetManager
 
     // get the global and local meta tag attributes
     String title = null;
-    WebAssetConfig assetConfig = idToConfig.get(id);
+    WebAssetConfig assetConfig = getConfig(id);
     if (assetConfig != null) {
 
+      // without a title of its own use the nearest title it extends
       title = assetConfig.getTitle();
+      Set<String> visited = new HashSet<String>();
+      visited.add(id);
+      WebAssetConfig parentConfig = assetConfig;
+      while (StringUtils.isBlank(title) && parentConfig.getParent() != null
+        && visited.add(parentConfig.getParent())) {
+        parentConfig = getConfig(parentConfig.getParent());
+        if (parentConfig == null) {
+          break;
+        }
+        title = parentConfig.getTitle();
+      }
+
       if (StringUtils.isNotBlank(title)) {
         title = resolve(title, locale, profile);
       }
@@ -761,6 +2377,22 @@ public class WebAssetManager
     this.reloadCheckInterval = reloadCheckInterval;
   }
 
+  public int getMaxInlineBytes() {
+    return maxInlineBytes;
+  }
+
+  public void setMaxInlineBytes(int maxInlineBytes) {
+    this.maxInlineBytes = maxInlineBytes;
+  }
+
+  public boolean isDeduplicateAssets() {
+    return deduplicateAssets;
+  }
+
+  public void setDeduplicateAssets(boolean deduplicateAssets) {
+    this.deduplicateAssets = deduplicateAssets;
+  }
+
   public boolean isCaching() {
     return caching;
   }
@@ -777,6 +2409,14 @@ public class WebAssetManager
     this.filters = filters;
   }
 
+  public boolean isMinifyAssets() {
+    return minifyAssets;
+  }
+
+  public void setMinifyAssets(boolean minifyAssets) {
+    this.minifyAssets = minifyAssets;
+  }
+
   public Map<String, String[]> getTypeToFilters() {
     return typeToFilters;
   }
@@ -817,6 +2457,62 @@ public class WebAssetManager
     this.configFileSuffix = configFileSuffix;
   }
 
+  public int getConfigLoadThreads() {
+    return configLoadThreads;
+  }
+
+  public void setConfigLoadThreads(int configLoadThreads) {
+    this.configLoadThreads = configLoadThreads;
+  }
+
+  public boolean isLazyConfigs() {
+    return lazyConfigs;
+  }
+
+  public void setLazyConfigs(boolean lazyConfigs) {
+    this.lazyConfigs = lazyConfigs;
+  }
+
+  public String getConfigIndexFile() {
+    return configIndexFile;
+  }
+
+  public void setConfigIndexFile(String configIndexFile) {
+    this.configIndexFile = configIndexFile;
+  }
+
+  public String getConfigSnapshotFile() {
+    return configSnapshotFile;
+  }
+
+  public void setConfigSnapshotFile(String configSnapshotFile) {
+    this.configSnapshotFile = configSnapshotFile;
+  }
+
+  public long getIdleConfigTimeout() {
+    return idleConfigTimeout;
+  }
+
+  public void setIdleConfigTimeout(long idleConfigTimeout) {
+    this.idleConfigTimeout = idleConfigTimeout;
+  }
+
+  /**
+   * Returns the config files that failed to load at the last startup, by
+   * path to the error message.
+   */
+  public Map<String, String> getConfigLoadErrors() {
+    return configLoadErrors;
+  }
+
+  /**
+   * Returns the ids claimed by more than one config file at the last startup,
+   * by id to the file paths in load order.
+   */
+  public Map<String, List<String>> getIdCollisions() {
+    return idCollisions;
+  }
+
   public List<String> getAssetPrefixes() {
     return assetPrefixes;
   }
@@ -0,0 +1,12 @@
+package com.denniskubes.webasset;
+
+/**
+ * Implemented by filters that need access to the WebAssetManager they are
+ * registered with, for example to cache assets they reference. The manager
+ * is set on startup before any assets are filtered.
+ */
+public interface WebAssetManagerAware {
+
+  public void setWebAssetManager(WebAssetManager webAssetManager);
+
+}
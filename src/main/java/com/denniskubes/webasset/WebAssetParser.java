@@ -1,19 +1,113 @@
 package com.denniskubes.webasset;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
 public class WebAssetParser {
 
   private final static Logger LOG = LoggerFactory.getLogger(WebAssetParser.class);
 
+  /**
+   * Returns true if the file starts with the yaml document marker.
+   */
+  private static boolean isYaml(File configFile)
+    throws IOException {
+
+    byte[] start = new byte[3];
+    int read = 0;
+    try (InputStream in = new FileInputStream(configFile)) {
+      while (read < start.length) {
+        int count = in.read(start, read, start.length - read);
+        if (count < 0) {
+          break;
+        }
+        read += count;
+      }
+    }
+    return read == 3 && "---".equals(new String(start, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Reads only the global flag and the ids of a config file, for indexing
+   * configs without parsing them. Json configs are streamed and fields other
+   * than global and ids are skipped without building any objects. Yaml
+   * configs are parsed in full.
+   * 
+   * @param configFile The config file path.
+   * 
+   * @return A WebAssetConfig with only the global flag and ids set.
+   * 
+   * @throws IOException If the config file doesn't exist or can't be parsed.
+   * 
+   * @throws IllegalArgumentException If the config doesn't contain any ids
+   * and isn't a global config.
+   */
+  public WebAssetConfig parseConfigHeader(File configFile)
+    throws IOException {
+
+    String configPath = configFile.getPath();
+    if (!configFile.exists() || !configFile.canRead()) {
+      throw new IOException("Web asset config doesn't exist or not readable: "
+        + configPath);
+    }
+
+    if (isYaml(configFile)) {
+      WebAssetConfig fullConfig = parseConfig(configFile);
+      WebAssetConfig header = new WebAssetConfig();
+      header.setGlobalConfig(fullConfig.isGlobalConfig());
+      header.getIds().addAll(fullConfig.getIds());
+      return header;
+    }
+
+    WebAssetConfig header = new WebAssetConfig();
+    try (JsonParser parser = JsonWebAssetConfigParser.JSON_FACTORY.createParser(
+      configFile)) {
+
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Web asset config isn't a json object: "
+          + configPath);
+      }
+
+      // top level fields only, everything else is tokenized but not built
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if ("global".equals(field)) {
+          header.setGlobalConfig(value == JsonToken.VALUE_TRUE);
+        }
+        else if ("ids".equals(field)) {
+          header.getIds().addAll(JsonWebAssetConfigParser.readStrings(parser));
+        }
+        else {
+          parser.skipChildren();
+        }
+      }
+    }
+
+    // ids of global configs are ignored, as when fully parsed
+    if (header.isGlobalConfig()) {
+      header.getIds().clear();
+    }
+    else if (header.getIds().isEmpty()) {
+      throw new IllegalArgumentException("Web asset config must "
+        + "have one or more ids: " + configPath);
+    }
+    return header;
+  }
+
   /**
    * Parse a web asset config json file into a WebAssetConfig object.
    * 
@@ -37,24 +131,27 @@ public class WebAssetParser {
         + configPath);
     }
 
-    // parse the web asset config file, if error return null
+    // both formats are streamed from the file
     LOG.debug("Started parsing {}", configPath);
-    String configStr = FileUtils.readFileToString(new File(configPath));
-
-    // some config files could parse to null
-    if (StringUtils.isBlank(configStr)) {
-      throw new IOException("Web asset config file doesn't have data: "
-        + configPath);
-    }
-
+    boolean yaml = isYaml(configFile);
     WebAssetConfigParser parser = null;
-    if (StringUtils.startsWith(configStr, "---")) {
-      LOG.debug("Using yaml config parser");
-      parser = new YamlWebAssetConfigParser(configStr);
+    try (InputStream in = new BufferedInputStream(new FileInputStream(
+      configFile))) {
+      if (yaml) {
+        LOG.debug("Using yaml config parser");
+        parser = new YamlWebAssetConfigParser(in);
+      }
+      else {
+        LOG.debug("Using json config parser");
+        parser = new JsonWebAssetConfigParser(in);
+      }
     }
-    else {
-      LOG.info("Using json config parser");
-      parser = new JsonWebAssetConfigParser(configStr);
+    catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(e.getMessage() + " in " + configPath,
+        e);
+    }
+    catch (IOException e) {
+      throw new IOException(e.getMessage() + ": " + configPath, e);
     }
 
     WebAssetConfig webAssetConfig = new WebAssetConfig();
@@ -108,7 +205,18 @@ public class WebAssetParser {
       webAssetConfig.getLinks().addAll(links);
     }
 
+    // get the configs whose assets come first
+    LOG.debug("Getting extends and includes");
+    String parent = parser.getExtends();
+    if (StringUtils.isNotBlank(parent)) {
+      webAssetConfig.setParent(parent);
+    }
+    List<String> includes = parser.getIncludes();
+    if (includes != null && includes.size() > 0) {
+      webAssetConfig.getIncludes().addAll(includes);
+    }
+
     LOG.debug("Finished parsing {}", configPath);
-    return webAssetConfig;
+    return webAssetConfig.compact();
   }
 }
@@ -0,0 +1,783 @@
+package com.denniskubes.webasset;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * <p>Writes the title, meta, hint, link, and script html for a set of web
+ * asset ids to any Appendable, so JSP, Thymeleaf, FreeMarker, and anything
+ * else render assets the same way.</p>
+ *
+ * <p>Lists come merged and deduplicated from the WebAssetManager. With
+ * caching enabled on the manager the html written for ids, locale, profile,
+ * and uri prefix is also cached as a single fragment until configs are
+ * reloaded or assets refiltered. Fragments aren't cached when extra assets
+ * from the request are written with them.</p>
+ *
+ * <p>A renderer holds only its options and is cheap to create. Uri prefixes
+ * are the scheme, host, port, and context path written before local cached
+ * paths, external paths are written as is.</p>
+ */
+public class WebAssetRenderer {
+
+  private final static String PATH = "path";
+
+  // fixed tag fragments, written as is
+  private final static char[] SCRIPT_START = "<script".toCharArray();
+  private final static char[] SCRIPT_END = "</script>\n".toCharArray();
+  private final static char[] LINK_START = "<link rel=\"stylesheet\"".toCharArray();
+  private final static char[] STYLE_START = "<style".toCharArray();
+  private final static char[] STYLE_END = "</style>\n".toCharArray();
+  private final static char[] META_START = "<meta".toCharArray();
+  private final static char[] HINT_START = "<link rel=\"".toCharArray();
+  private final static char[] SRC_START = " src=\"".toCharArray();
+  private final static char[] HREF_START = " href=\"".toCharArray();
+  private final static char[] EMPTY_TAG_END = " />\n".toCharArray();
+
+  private WebAssetManager webAssetManager;
+  private boolean includeGlobal = true;
+  private boolean inline = false;
+  private int inlineThreshold = 1024;
+
+  /**
+   * Writer over an Appendable that isn't already a Writer.
+   */
+  private static class AppendableWriter
+    extends Writer {
+
+    private final Appendable out;
+
+    private AppendableWriter(Appendable out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len)
+      throws IOException {
+      out.append(CharBuffer.wrap(cbuf, off, len));
+    }
+
+    @Override
+    public void write(String str, int off, int len)
+      throws IOException {
+      out.append(str, off, off + len);
+    }
+
+    @Override
+    public void write(int c)
+      throws IOException {
+      out.append((char)c);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  public WebAssetRenderer() {
+  }
+
+  public WebAssetRenderer(WebAssetManager webAssetManager) {
+    this.webAssetManager = webAssetManager;
+  }
+
+  private static Writer toWriter(Appendable out) {
+    return (out instanceof Writer) ? (Writer)out : new AppendableWriter(out);
+  }
+
+  /**
+   * Returns true if the path is an external url, such as http://host/path or
+   * //host/path, which is written as is.
+   */
+  static boolean isExternal(String path) {
+
+    int pos = 0;
+    if (path.startsWith("https")) {
+      pos = 5;
+    }
+    else if (path.startsWith("http")) {
+      pos = 4;
+    }
+    if (path.startsWith(":", pos)) {
+      pos++;
+    }
+    return path.startsWith("//", pos);
+  }
+
+  /**
+   * Returns the uri prefix for the request, as written by the WebAssetTag.
+   * The host is the configured web asset url or else the request server name,
+   * written without a scheme unless one is given or includeScheme is set.
+   *
+   * @param webAssetUrl The configured web asset host, can be blank.
+   * @param request The current request.
+   * @param includeHost Write the scheme, host, and port.
+   * @param includeScheme Write the request scheme if no scheme is given.
+   * @param scheme The scheme to write, including the colon, can be blank.
+   * @param includeContext Write the context path.
+   */
+  public static String getUriPrefix(String webAssetUrl,
+    HttpServletRequest request, boolean includeHost, boolean includeScheme,
+    String scheme, boolean includeContext) {
+
+    // use the universal no scheme by default unless forced or requested to
+    // use the browser scheme
+    if (StringUtils.isBlank(scheme) && includeScheme) {
+      scheme = request.getScheme() + ":";
+    }
+    return getUriPrefix(includeHost ? webAssetUrl : null,
+      includeHost ? request.getServerName() : null, request.getServerPort(),
+      scheme, includeContext ? request.getContextPath() : null);
+  }
+
+  /**
+   * Returns the uri prefix written by the WebAssetTag from the parts of a
+   * servlet or reactive request. The host is the configured web asset url or
+   * else the server name, and the port is only written if it isn't standard.
+   *
+   * @param webAssetUrl The configured web asset host, can be blank.
+   * @param serverName The request server name, blank to write no host.
+   * @param port The request port, -1 if not known.
+   * @param scheme The scheme to write, including the colon, can be blank.
+   * @param contextPath The context path, can be blank.
+   */
+  public static String getUriPrefix(String webAssetUrl, String serverName,
+    int port, String scheme, String contextPath) {
+
+    StringBuilder pathBuilder = new StringBuilder();
+
+    // default back to the server name if there is no web asset url
+    String host = StringUtils.isNotBlank(webAssetUrl) ? webAssetUrl
+      : serverName;
+
+    // only send scheme://host:port if host isn't blank
+    if (StringUtils.isNotBlank(host)) {
+      if (StringUtils.isNotBlank(scheme)) {
+        pathBuilder.append(scheme);
+      }
+      pathBuilder.append("//");
+      pathBuilder.append(host);
+
+      // port is only needed if it isn't standard, (i.e. 8080)
+      if (port > 0 && port != 80 && port != 443) {
+        pathBuilder.append(":" + port);
+      }
+    }
+
+    if (StringUtils.isNotBlank(contextPath)) {
+      pathBuilder.append(contextPath);
+    }
+    return pathBuilder.toString();
+  }
+
+  /**
+   * Returns the uri prefix for the request with the host and context path,
+   * the defaults of the WebAssetTag.
+   */
+  public String getUriPrefix(HttpServletRequest request) {
+    return getUriPrefix(webAssetManager.getWebAssetUrl(), request, true,
+      false, null, true);
+  }
+
+  /**
+   * Writes the full uri of an asset, external paths as is and local paths
+   * with the uri prefix.
+   */
+  private static void writeAssetUri(Writer out, String uriPrefix,
+    String cachedPath)
+    throws IOException {
+
+    if (!isExternal(cachedPath)) {
+      if (out instanceof FragmentBuffer) {
+        ((FragmentBuffer)out).markPrefix();
+      }
+      else {
+        HtmlAttributeWriter.writeEscaped(out, uriPrefix);
+      }
+    }
+    HtmlAttributeWriter.writeEscaped(out, cachedPath);
+  }
+
+  /**
+   * Writes the attributes other than the path, skipping blank values.
+   */
+  private static void writeAttributes(Writer out, Map<String, String> attrs)
+    throws IOException {
+
+    for (Entry<String, String> attr : attrs.entrySet()) {
+      String attrVal = attr.getValue();
+      if (!PATH.equals(attr.getKey()) && StringUtils.isNotBlank(attrVal)) {
+        HtmlAttributeWriter.writeAttribute(out, attr.getKey(), attrVal);
+      }
+    }
+  }
+
+  /**
+   * Writes a script tag, with a src for the path or with the content inline.
+   */
+  static void writeScriptTag(Writer out, String uriPrefix,
+    Map<String, String> scriptAttrs, String content)
+    throws IOException {
+
+    out.write(SCRIPT_START);
+    String path = scriptAttrs.get(PATH);
+    if (content == null && StringUtils.isNotBlank(path)) {
+      out.write(SRC_START);
+      writeAssetUri(out, uriPrefix, path);
+      out.write('"');
+    }
+    writeAttributes(out, scriptAttrs);
+    out.write('>');
+    if (content != null) {
+      out.write(content);
+    }
+    out.write(SCRIPT_END);
+  }
+
+  /**
+   * Writes a stylesheet link tag.
+   */
+  static void writeLinkTag(Writer out, String uriPrefix,
+    Map<String, String> linkAttrs)
+    throws IOException {
+
+    out.write(LINK_START);
+    String path = linkAttrs.get(PATH);
+    if (StringUtils.isNotBlank(path)) {
+      out.write(HREF_START);
+      writeAssetUri(out, uriPrefix, path);
+      out.write('"');
+    }
+    writeAttributes(out, linkAttrs);
+    out.write(EMPTY_TAG_END);
+  }
+
+  /**
+   * Writes a style block with the stylesheet content inline.
+   */
+  static void writeStyleTag(Writer out, Map<String, String> linkAttrs,
+    String content)
+    throws IOException {
+
+    out.write(STYLE_START);
+    String media = linkAttrs.get("media");
+    if (StringUtils.isNotBlank(media)) {
+      HtmlAttributeWriter.writeAttribute(out, "media", media);
+    }
+    out.write('>');
+    out.write(content);
+    out.write(STYLE_END);
+  }
+
+  /**
+   * Writes a meta tag, attributes with blank names are skipped.
+   */
+  static void writeMetaTag(Writer out, Map<String, String> metaAttrs)
+    throws IOException {
+
+    out.write(META_START);
+    for (Entry<String, String> metaAttr : metaAttrs.entrySet()) {
+      String key = metaAttr.getKey();
+      if (StringUtils.isNotBlank(key)) {
+        String value = metaAttr.getValue();
+        HtmlAttributeWriter.writeAttribute(out, key, value != null ? value
+          : "");
+      }
+    }
+    out.write(EMPTY_TAG_END);
+  }
+
+  /**
+   * Writes a resource hint link tag.
+   */
+  static void writeHintTag(Writer out, String uriPrefix,
+    Map<String, String> hintAttrs)
+    throws IOException {
+
+    out.write(HINT_START);
+    HtmlAttributeWriter.writeEscaped(out, hintAttrs.get("rel"));
+    out.write('"');
+    out.write(HREF_START);
+    writeAssetUri(out, uriPrefix, hintAttrs.get(PATH));
+    out.write('"');
+    out.write(EMPTY_TAG_END);
+  }
+
+  /**
+   * Returns the cached content to write inline for an asset, or null if the
+   * asset should be written as a normal tag.
+   */
+  private String inlineContent(String path) {
+    if (!inline || StringUtils.isBlank(path)) {
+      return null;
+    }
+    return webAssetManager.getInlineContent(path, inlineThreshold);
+  }
+
+  private String getFragmentKey(char type, Collection<String> ids,
+    Locale locale, String profile) {
+
+    StringBuilder keyBuilder = new StringBuilder();
+    keyBuilder.append(type).append(includeGlobal ? 'g' : '-');
+    keyBuilder.append(inline ? inlineThreshold : 0);
+    keyBuilder.append('|').append(locale).append('|');
+    if (StringUtils.isNotBlank(profile)) {
+      keyBuilder.append(profile);
+    }
+    keyBuilder.append('|');
+    for (String id : ids) {
+      keyBuilder.append('|').append(id);
+    }
+    return keyBuilder.toString();
+  }
+
+  /**
+   * Buffers a fragment for the cache, split where the uri prefix goes. The
+   * prefix can come from the request host, so it is written per request and
+   * never kept in the cache.
+   */
+  private static class FragmentBuffer
+    extends StringWriter {
+
+    private final List<String> parts = new ArrayList<String>();
+
+    private void markPrefix() {
+      parts.add(getBuffer().toString());
+      getBuffer().setLength(0);
+    }
+
+    private String[] toParts() {
+      parts.add(getBuffer().toString());
+      return parts.toArray(new String[parts.size()]);
+    }
+  }
+
+  private interface FragmentWriter {
+    void write(Writer out)
+      throws IOException;
+  }
+
+  /**
+   * Writes the cached fragment for the key if there is one, otherwise renders
+   * it, caches it, and writes it. The uri prefix is written between the
+   * cached parts so fragments are shared by every host. Without caching the
+   * fragment is written straight to the output and no key is built.
+   */
+  private void writeFragment(Appendable out, char type, Collection<String> ids,
+    Locale locale, String profile, String uriPrefix,
+    FragmentWriter fragmentWriter)
+    throws IOException {
+
+    if (!webAssetManager.isCaching()) {
+      fragmentWriter.write(toWriter(out));
+      return;
+    }
+
+    String key = getFragmentKey(type, ids, locale, profile);
+    String[] fragment = webAssetManager.getRenderedFragment(key);
+    if (fragment == null) {
+      long generation = webAssetManager.getGeneration();
+      FragmentBuffer fragmentOut = new FragmentBuffer();
+      fragmentWriter.write(fragmentOut);
+      fragment = fragmentOut.toParts();
+      webAssetManager.putRenderedFragment(generation, key, fragment);
+    }
+
+    // the prefix goes back in between the cached parts
+    Writer writer = toWriter(out);
+    writer.write(fragment[0]);
+    for (int i = 1; i < fragment.length; i++) {
+      HtmlAttributeWriter.writeEscaped(writer, uriPrefix);
+      writer.write(fragment[i]);
+    }
+  }
+
+  private static boolean hasExtras(Collection<Map<String, String>> extras) {
+    return extras != null && extras.size() > 0;
+  }
+
+  /**
+   * Writes the title tag, the first title of the ids, the global title if
+   * none of them have one, or the dynamic title if given.
+   *
+   * @param out Where to write the html.
+   * @param ids The web asset ids in page order.
+   * @param locale The current locale.
+   * @param profile The optional current profile.
+   * @param dynamicTitle A title that overrides configured titles, can be null.
+   *
+   * @return The title written or null if there was no title.
+   */
+  public String renderTitle(Appendable out, Collection<String> ids,
+    Locale locale, String profile, String dynamicTitle)
+    throws IOException {
+
+    String title = dynamicTitle;
+    if (StringUtils.isBlank(title)) {
+
+      // use only the first title found for an id, can't have multiple
+      for (String id : ids) {
+        String idTitle = webAssetManager.getTitleForId(id, locale, profile);
+        if (StringUtils.isNotBlank(idTitle)) {
+          title = idTitle;
+          break;
+        }
+      }
+
+      // fall back to the global title
+      if (StringUtils.isBlank(title)) {
+        title = webAssetManager.getGlobalTitle(locale);
+      }
+    }
+
+    if (StringUtils.isBlank(title)) {
+      return null;
+    }
+    out.append("<title>").append(title).append("</title>\n");
+    return title;
+  }
+
+  /**
+   * Writes the meta tags of the global config, if included, and the ids.
+   *
+   * @param out Where to write the html.
+   * @param ids The web asset ids in page order.
+   * @param locale The current locale.
+   * @param profile The optional current profile.
+   * @param extraMetas Metas from the request to write after, can be null.
+   *
+   * @return The metas written.
+   */
+  public Collection<Map<String, String>> renderMetas(Appendable out,
+    final Collection<String> ids, final Locale locale, final String profile,
+    Collection<Map<String, String>> extraMetas)
+    throws IOException {
+
+    final Set<Map<String, String>> allMetas = new LinkedHashSet<Map<String, String>>();
+    if (includeGlobal) {
+      List<Map<String, String>> globalMetas = webAssetManager.getGlobalMetas(locale);
+      if (globalMetas != null) {
+        allMetas.addAll(globalMetas);
+      }
+    }
+    for (String id : ids) {
+      List<Map<String, String>> idMetas = webAssetManager.getMetasForId(id,
+        locale, profile);
+      if (idMetas != null) {
+        allMetas.addAll(idMetas);
+      }
+    }
+
+    if (hasExtras(extraMetas)) {
+      allMetas.addAll(extraMetas);
+      Writer writer = toWriter(out);
+      for (Map<String, String> metaAttrs : allMetas) {
+        writeMetaTag(writer, metaAttrs);
+      }
+    }
+    else {
+      writeFragment(out, 'm', ids, locale, profile, "",
+        new FragmentWriter() {
+          @Override
+          public void write(Writer writer)
+            throws IOException {
+            for (Map<String, String> metaAttrs : allMetas) {
+              writeMetaTag(writer, metaAttrs);
+            }
+          }
+        });
+    }
+    return allMetas;
+  }
+
+  /**
+   * Writes the resource hint link tags of the global config, if included,
+   * and the ids.
+   *
+   * @param out Where to write the html.
+   * @param ids The web asset ids in page order.
+   * @param locale The current locale.
+   * @param profile The optional current profile.
+   * @param uriPrefix The prefix written before local paths.
+   */
+  public void renderHints(Appendable out, final Collection<String> ids,
+    final Locale locale, final String profile, final String uriPrefix)
+    throws IOException {
+
+    writeFragment(out, 'h', ids, locale, profile, uriPrefix,
+      new FragmentWriter() {
+        @Override
+        public void write(Writer writer)
+          throws IOException {
+
+          Set<Map<String, String>> allHints = new LinkedHashSet<Map<String, String>>();
+          if (includeGlobal) {
+            List<Map<String, String>> globalHints = webAssetManager.getGlobalHints(locale);
+            if (globalHints != null) {
+              allHints.addAll(globalHints);
+            }
+          }
+          for (String id : ids) {
+            List<Map<String, String>> idHints = webAssetManager.getHintsForId(
+              id, locale, profile);
+            if (idHints != null) {
+              allHints.addAll(idHints);
+            }
+          }
+          for (Map<String, String> hintAttrs : allHints) {
+            writeHintTag(writer, uriPrefix, hintAttrs);
+          }
+        }
+      });
+  }
+
+  private void writeLinks(Writer writer, String uriPrefix,
+    Collection<Map<String, String>> links)
+    throws IOException {
+
+    for (Map<String, String> linkAttrs : links) {
+
+      // small stylesheets are written as style blocks
+      String content = inlineContent(linkAttrs.get(PATH));
+      if (content != null) {
+        writeStyleTag(writer, linkAttrs, content);
+      }
+      else {
+        writeLinkTag(writer, uriPrefix, linkAttrs);
+      }
+    }
+  }
+
+  /**
+   * Writes the stylesheet link tags of the global config, if included, and
+   * the ids, small stylesheets as style blocks when inlining.
+   *
+   * @param out Where to write the html.
+   * @param ids The web asset ids in page order.
+   * @param locale The current locale.
+   * @param profile The optional current profile.
+   * @param uriPrefix The prefix written before local paths.
+   * @param extraLinks Links from the request to write after, can be null.
+   *
+   * @return The links written.
+   */
+  public Collection<Map<String, String>> renderLinks(Appendable out,
+    Collection<String> ids, Locale locale, String profile,
+    final String uriPrefix, Collection<Map<String, String>> extraLinks)
+    throws IOException {
+
+    // global and id links come merged and deduplicated from the manager
+    final Collection<Map<String, String>> links = webAssetManager.getLinks(
+      ids, locale, profile, includeGlobal);
+
+    if (hasExtras(extraLinks)) {
+      Collection<Map<String, String>> allLinks = new LinkedHashSet<Map<String, String>>(
+        links);
+      allLinks.addAll(extraLinks);
+      writeLinks(toWriter(out), uriPrefix, allLinks);
+      return allLinks;
+    }
+
+    writeFragment(out, 'l', ids, locale, profile, uriPrefix,
+      new FragmentWriter() {
+        @Override
+        public void write(Writer writer)
+          throws IOException {
+          writeLinks(writer, uriPrefix, links);
+        }
+      });
+    return links;
+  }
+
+  private void writeScripts(Writer writer, String uriPrefix,
+    Collection<Map<String, String>> scripts)
+    throws IOException {
+
+    for (Map<String, String> scriptAttrs : scripts) {
+
+      // deferred and async scripts would run early if inlined
+      String content = null;
+      if (!scriptAttrs.containsKey("defer") && !scriptAttrs.containsKey("async")) {
+        content = inlineContent(scriptAttrs.get(PATH));
+      }
+      writeScriptTag(writer, uriPrefix, scriptAttrs, content);
+    }
+  }
+
+  /**
+   * Writes the script tags of the global config, if included, and the ids,
+   * small scripts inline when inlining.
+   *
+   * @param out Where to write the html.
+   * @param ids The web asset ids in page order.
+   * @param locale The current locale.
+   * @param profile The optional current profile.
+   * @param uriPrefix The prefix written before local paths.
+   * @param extraScripts Scripts from the request to write after, can be null.
+   *
+   * @return The scripts written.
+   */
+  public Collection<Map<String, String>> renderScripts(Appendable out,
+    Collection<String> ids, Locale locale, String profile,
+    final String uriPrefix, Collection<Map<String, String>> extraScripts)
+    throws IOException {
+
+    // global and id scripts come merged and deduplicated from the manager
+    final Collection<Map<String, String>> scripts = webAssetManager.getScripts(
+      ids, locale, profile, includeGlobal);
+
+    if (hasExtras(extraScripts)) {
+      Collection<Map<String, String>> allScripts = new LinkedHashSet<Map<String, String>>(
+        scripts);
+      allScripts.addAll(extraScripts);
+      writeScripts(toWriter(out), uriPrefix, allScripts);
+      return allScripts;
+    }
+
+    writeFragment(out, 's', ids, locale, profile, uriPrefix,
+      new FragmentWriter() {
+        @Override
+        public void write(Writer writer)
+          throws IOException {
+          writeScripts(writer, uriPrefix, scripts);
+        }
+      });
+    return scripts;
+  }
+
+  /**
+   * Writes the asset types in head order, title, hints, metas, links, and
+   * scripts, without extra request assets.
+   *
+   * @param out Where to write the html.
+   * @param types The asset types to write.
+   * @param ids The web asset ids in page order.
+   * @param locale The current locale.
+   * @param profile The optional current profile.
+   * @param uriPrefix The prefix written before local paths.
+   */
+  public void render(Appendable out, Collection<String> types,
+    Collection<String> ids, Locale locale, String profile, String uriPrefix)
+    throws IOException {
+
+    if (types.contains("title")) {
+      renderTitle(out, ids, locale, profile, null);
+    }
+    if (types.contains("hints")) {
+      renderHints(out, ids, locale, profile, uriPrefix);
+    }
+    if (types.contains("metas")) {
+      renderMetas(out, ids, locale, profile, null);
+    }
+    if (types.contains("links")) {
+      renderLinks(out, ids, locale, profile, uriPrefix, null);
+    }
+    if (types.contains("scripts")) {
+      renderScripts(out, ids, locale, profile, uriPrefix, null);
+    }
+  }
+
+  /**
+   * Writes the asset types for a template engine. Ids come from the string
+   * if given, otherwise from the request, and the profile and uri prefix from
+   * the request. Without a request, outside of a servlet request, the ids
+   * come from the current thread and local paths are prefixed with only the
+   * web asset url.
+   *
+   * @param out Where to write the html.
+   * @param types The comma separated asset types.
+   * @param ids The comma separated ids, null to use the request ids.
+   * @param locale The current locale.
+   * @param request The current request, can be null.
+   */
+  public void render(Appendable out, String types, String ids, Locale locale,
+    HttpServletRequest request)
+    throws IOException {
+
+    WebAssetIds assetIds;
+    if (ids != null) {
+      assetIds = WebAssetIds.parse(ids);
+    }
+    else {
+      assetIds = request != null ? WebAssetRequest.getIds(request)
+        : WebAssetRequest.getIds();
+    }
+
+    String profile = null;
+    String uriPrefix = "";
+    if (request != null) {
+      profile = (String)request.getAttribute(WebAssetConstants.PROFILE);
+      uriPrefix = getUriPrefix(request);
+    }
+    else if (StringUtils.isNotBlank(webAssetManager.getWebAssetUrl())) {
+      uriPrefix = "//" + webAssetManager.getWebAssetUrl();
+    }
+
+    render(out, parseTypes(types), assetIds, locale, profile, uriPrefix);
+  }
+
+  /**
+   * Returns the lowercased asset types from a comma separated string.
+   */
+  public static Set<String> parseTypes(String types) {
+
+    Set<String> assetTypes = new LinkedHashSet<String>();
+    String[] includeTypes = StringUtils.split(types, ",");
+    if (includeTypes != null) {
+      for (String includeType : includeTypes) {
+        assetTypes.add(StringUtils.trim(StringUtils.lowerCase(includeType)));
+      }
+    }
+    return assetTypes;
+  }
+
+  public WebAssetManager getWebAssetManager() {
+    return webAssetManager;
+  }
+
+  public void setWebAssetManager(WebAssetManager webAssetManager) {
+    this.webAssetManager = webAssetManager;
+  }
+
+  public boolean isIncludeGlobal() {
+    return includeGlobal;
+  }
+
+  public void setIncludeGlobal(boolean includeGlobal) {
+    this.includeGlobal = includeGlobal;
+  }
+
+  public boolean isInline() {
+    return inline;
+  }
+
+  public void setInline(boolean inline) {
+    this.inline = inline;
+  }
+
+  public int getInlineThreshold() {
+    return inlineThreshold;
+  }
+
+  public void setInlineThreshold(int inlineThreshold) {
+    this.inlineThreshold = inlineThreshold;
+  }
+}
@@ -1,67 +1,132 @@
 package com.denniskubes.webasset;
 
-import java.util.Arrays;
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Set;
 
-import org.apache.commons.lang3.StringUtils;
+import javax.servlet.ServletRequest;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 
 /**
- * A Request object wrapping a ThreadLocal that stores one or more web asset
- * request ids.  The request ids match up to ids in the web asset configuration
- * files, *.waf.
- * 
+ * Stores one or more web asset request ids for the current request.  The
+ * request ids match up to ids in the web asset configuration files, *.waf.
+ *
+ * The ids are stored as an attribute of the request, so they follow the
+ * request through async dispatches and onto whatever thread renders it.  The
+ * static methods find the current request through Spring's
+ * RequestContextHolder and fall back to a ThreadLocal when no request is
+ * bound to the thread.
+ *
  * The web asset ids are retrieved by the WebAssetTag and used to place correct
- * web assets onto the final JSP page.  The WebAssetTag handles cleanup of the
- * ThreadLocal.
+ * web assets onto the final JSP page.  The WebAssetRequestListener handles
+ * cleanup of the ThreadLocal fallback.
  */
 public class WebAssetRequest {
 
-  private static ThreadLocal<String> requestIds = new ThreadLocal<String>();
+  private static ThreadLocal<WebAssetIds> requestIds = new ThreadLocal<WebAssetIds>();
+
+  private static RequestAttributes currentRequest() {
+    return RequestContextHolder.getRequestAttributes();
+  }
+
+  private static void set(WebAssetIds ids) {
+    RequestAttributes attributes = currentRequest();
+    if (attributes != null) {
+      attributes.setAttribute(WebAssetConstants.REQUEST_IDS, ids,
+        RequestAttributes.SCOPE_REQUEST);
+    }
+    else {
+      requestIds.set(ids);
+    }
+  }
 
   /**
    * Adds the id to the request. This id is used by the JSTL WebAssetTag
    * to display assets on JSP pages.
-   * 
-   * @param id The asset configuration id.
+   *
+   * @param id The asset configuration id, or comma separated ids.
    */
   public static void setup(String id) {
-    requestIds.set(id);
+    set(WebAssetIds.parse(id));
   }
 
   /**
    * Adds the ids to the request. These ids are used by the JSTL WebAssetTag to
    *  display assets on JSP pages.
-   * 
+   *
    * @param ids The asset configuration ids.
    */
   public static void setup(String[] ids) {
-    WebAssetRequest.setup(Arrays.asList(ids));
+    set(WebAssetIds.of(ids));
   }
 
   /**
    * Adds the ids to the request. These ids are used by the JSTL WebAssetTag to
    *  display assets on JSP pages.
-   * 
+   *
    * @param ids The asset configuration ids.
    */
   public static void setup(List<String> ids) {
-    Set<String> idSet = new LinkedHashSet<String>();
-    for (String id : ids) {
-      idSet.add(StringUtils.trim(id));
+    set(WebAssetIds.of(ids));
+  }
+
+  /**
+   * Adds the ids to the given request, for code that has the request and may
+   * not run on a thread bound to it.
+   *
+   * @param request The request to add the ids to.
+   * @param ids The asset configuration ids.
+   */
+  public static void setup(ServletRequest request, WebAssetIds ids) {
+    request.setAttribute(WebAssetConstants.REQUEST_IDS, ids);
+  }
+
+  /**
+   * Returns the current web asset ids for the request.
+   *
+   * @return The current request's webasset ids, empty if none are setup.
+   */
+  public static WebAssetIds getIds() {
+
+    RequestAttributes attributes = currentRequest();
+    if (attributes != null) {
+      Object ids = attributes.getAttribute(WebAssetConstants.REQUEST_IDS,
+        RequestAttributes.SCOPE_REQUEST);
+      if (ids instanceof WebAssetIds) {
+        return (WebAssetIds)ids;
+      }
     }
-    requestIds.set(StringUtils.join(idSet, ","));
+
+    WebAssetIds ids = requestIds.get();
+    return ids != null ? ids : WebAssetIds.EMPTY;
   }
-  
+
+  /**
+   * Returns the web asset ids for the given request, falling back to ids setup
+   * on the current thread.
+   *
+   * @param request The request to get the ids from.
+   *
+   * @return The request's webasset ids, empty if none are setup.
+   */
+  public static WebAssetIds getIds(ServletRequest request) {
+    Object ids = request.getAttribute(WebAssetConstants.REQUEST_IDS);
+    if (ids instanceof WebAssetIds) {
+      return (WebAssetIds)ids;
+    }
+    return getIds();
+  }
+
   /**
    * Returns the current web asset ids for the request.
-   * 
-   * @return The current request's webasset ids as a comma separated string.
+   *
+   * @return The current request's webasset ids as a comma separated string, or
+   * null if none are setup.
    */
   public static String get() {
-    return requestIds.get();
+    WebAssetIds ids = getIds();
+    return ids.isEmpty() ? null : ids.toString();
   }
 
   /**
@@ -69,5 +134,10 @@ public class WebAssetRequest {
    */
   public static void cleanup() {
     requestIds.remove();
+    RequestAttributes attributes = currentRequest();
+    if (attributes != null) {
+      attributes.removeAttribute(WebAssetConstants.REQUEST_IDS,
+        RequestAttributes.SCOPE_REQUEST);
+    }
   }
 }
@@ -1,19 +1,19 @@
 package com.denniskubes.webasset;
 
 import java.io.IOException;
-import java.util.HashSet;
+import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
+import javax.servlet.RequestDispatcher;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.jsp.JspException;
 import javax.servlet.jsp.JspWriter;
 
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.servlet.support.RequestContext;
 import org.springframework.web.servlet.tags.RequestContextAwareTag;
@@ -40,16 +40,17 @@ import org.springframework.web.servlet.tags.RequestContextAwareTag;
 public class WebAssetTag
   extends RequestContextAwareTag {
 
-  private final static String PATH = "path";
-
   private String types;
-  private String ids;
+  private WebAssetIds ids;
   private boolean includeGlobal = false;
   private boolean includeDynamic = false;
   private boolean includeContext = true;
   private boolean includeHost = true;
   private boolean includeScheme = false;
   private String scheme = null;
+  private boolean inline = false;
+  private int inlineThreshold = 1024;
+  private boolean flush = false;
 
   private WebAssetManager getWebAssetManager() {
     RequestContext rc = getRequestContext();
@@ -57,274 +58,35 @@ public class WebAssetTag
     return (WebAssetManager)context.getBean("webAssetManager");
   }
 
-  private String assetUri(HttpServletRequest request, String cachedPath) {
-
-    String fullPath = cachedPath;
-    if (!cachedPath.matches("^(https?)?:?//.*")) {
-
-      StringBuilder pathBuilder = new StringBuilder();
-
-      // allow including a full, possibly configured scheme://host:port
-      if (includeHost) {
-
-        // try and get the hostname from a the web asset manager but if not
-        // found default back to the server name
-        WebAssetManager wam = getWebAssetManager();
-        String host = wam.getWebAssetUrl();
-        if (StringUtils.isBlank(host)) {
-          host = request.getServerName();
-        }
-
-        // only send scheme://host:port if host isn't blank
-        if (StringUtils.isNotBlank(host)) {
-
-          // use the universal no scheme by default unless forced or requested
-          // to use the browser scheme
-          if (StringUtils.isNotBlank(scheme)) {
-            pathBuilder.append(scheme);
-          }
-          else if (includeScheme) {
-            String scheme = request.getScheme();
-            pathBuilder.append(scheme + ":");
-          }
-          pathBuilder.append("//");
-          pathBuilder.append(host);
-
-          // port is only needed if it isn't standard, (i.e. 8080) and if we
-          // aren't overriding the web asset url through properties
-          int port = request.getServerPort();
-
-          if (port != 80 && port != 443) {
-            pathBuilder.append(":" + port);
-          }
-        }
-      }
-
-      // allow including a context path
-      if (includeContext) {
-        String contextPath = request.getContextPath();
-        if (StringUtils.isNotBlank(contextPath)) {
-          pathBuilder.append(contextPath);
-        }
-      }
-
-      pathBuilder.append(cachedPath);
-      fullPath = pathBuilder.toString();
-    }
-
-    return fullPath;
-  }
-
-  private void writeTitleTag(Set<String> ids)
-    throws IOException {
-
-    HttpServletRequest request = (HttpServletRequest)pageContext.getRequest();
-    WebAssetManager wam = getWebAssetManager();
-    JspWriter out = pageContext.getOut();
-    Locale locale = request.getLocale();
-    String profile = (String)request.getAttribute(WebAssetConstants.PROFILE);
-
-    // start out with the global title
-    String title = wam.getGlobalTitle(locale);
-
-    // use only the first title found for an id, can't have multiple
-    for (String id : ids) {
-      String idTitle = wam.getTitleForId(id, locale, profile);
-      if (StringUtils.isNotBlank(idTitle)) {
-        title = idTitle;
-        break;
-      }
-    }
-
-    // dynamic title overrides
-    if (includeDynamic) {
-      String dynTitle = (String)request.getAttribute(WebAssetConstants.REQUEST_TITLE);
-      if (StringUtils.isNotBlank(dynTitle)) {
-        title = dynTitle;
-      }
-    }
-
-    // write out the title
-    if (StringUtils.isNotBlank(title)) {
-      StringBuilder titleTagBuilder = new StringBuilder();
-      titleTagBuilder.append("<title>");
-      titleTagBuilder.append(title);
-      titleTagBuilder.append("</title>");
-      out.print(titleTagBuilder.toString() + "\n");
-      request.setAttribute(WebAssetConstants.TITLE, title);
-    }
+  private List<Map<String, String>> getDynamicAssets(
+    HttpServletRequest request, String attribute) {
+    return includeDynamic
+      ? (List<Map<String, String>>)request.getAttribute(attribute) : null;
   }
 
-  private void writeScriptTags(Set<String> ids)
+  /**
+   * Flushes the page written so far to the client so browsers can start
+   * fetching head assets while the rest of the page renders. The response is
+   * committed by the flush, headers and redirects are ignored afterwards, so
+   * it is skipped for includes, error responses, and requests that set the
+   * NO_FLUSH attribute, and once the response is already committed.
+   */
+  private void flushHead()
     throws IOException {
 
     HttpServletRequest request = (HttpServletRequest)pageContext.getRequest();
-    WebAssetManager wam = getWebAssetManager();
-    JspWriter out = pageContext.getOut();
-    Locale locale = request.getLocale();
-    String profile = (String)request.getAttribute(WebAssetConstants.PROFILE);
-
-    Set<Map<String, String>> allScripts = new LinkedHashSet<Map<String, String>>();
-    if (includeGlobal) {
-      List<Map<String, String>> globalScripts = wam.getGlobalScripts(locale);
-      if (globalScripts != null && globalScripts.size() > 0) {
-        allScripts.addAll(globalScripts);
-      }
-    }
+    HttpServletResponse response = (HttpServletResponse)pageContext.getResponse();
 
-    for (String id : ids) {
-      List<Map<String, String>> idScripts = wam.getScriptsForId(id, locale,
-        profile);
-      if (idScripts != null && idScripts.size() > 0) {
-        allScripts.addAll(idScripts);
-      }
-    }
-
-    // include dynamic script tags
-    if (includeDynamic) {
-      List<Map<String, String>> requestScripts = (List<Map<String, String>>)request.getAttribute(WebAssetConstants.REQUEST_SCRIPTS);
-      if (requestScripts != null && requestScripts.size() > 0) {
-        allScripts.addAll(requestScripts);
-      }
+    boolean include = request.getAttribute(RequestDispatcher.INCLUDE_REQUEST_URI) != null;
+    boolean noFlush = Boolean.TRUE.equals(request.getAttribute(WebAssetConstants.NO_FLUSH));
+    int status = response.getStatus();
+    if (include || noFlush || status < 200 || status >= 300
+      || response.isCommitted()) {
+      return;
     }
 
-    // write out the scripts
-    if (allScripts.size() > 0) {
-      for (Map<String, String> scriptAttrs : allScripts) {
-        StringBuilder scriptTagBuilder = new StringBuilder();
-        scriptTagBuilder.append("<script");
-
-        String path = scriptAttrs.get(PATH);
-        if (StringUtils.isNotBlank(path)) {
-          scriptTagBuilder.append(" src=\"" + assetUri(request, path) + "\"");
-        }
-
-        for (String attr : scriptAttrs.keySet()) {
-          if (attr.equals("path")) {
-            continue;
-          }
-          String attrVal = scriptAttrs.get(attr);
-          if (StringUtils.isNotBlank(attrVal)) {
-            scriptTagBuilder.append(String.format(" %s=\"%s\"", attr, attrVal));
-          }
-        }
-
-        scriptTagBuilder.append(">");
-        scriptTagBuilder.append("</script>");
-        out.print(scriptTagBuilder.toString() + "\n");
-      }
-      request.setAttribute(WebAssetConstants.SCRIPTS, allScripts);
-    }
-  }
-
-  private void writeLinkTags(Set<String> ids)
-    throws IOException {
-
-    HttpServletRequest request = (HttpServletRequest)pageContext.getRequest();
-    WebAssetManager wam = getWebAssetManager();
-    JspWriter out = pageContext.getOut();
-    Locale locale = request.getLocale();
-    String profile = (String)request.getAttribute(WebAssetConstants.PROFILE);
-
-    Set<Map<String, String>> allLinks = new LinkedHashSet<Map<String, String>>();
-    if (includeGlobal) {
-      List<Map<String, String>> globalLinks = wam.getGlobalLinks(locale);
-      if (globalLinks != null && globalLinks.size() > 0) {
-        allLinks.addAll(globalLinks);
-      }
-    }
-
-    for (String id : ids) {
-      List<Map<String, String>> idLinks = wam.getLinksForId(id, locale, profile);
-      if (idLinks != null && idLinks.size() > 0) {
-        allLinks.addAll(idLinks);
-      }
-    }
-
-    // include dynamic link tags
-    if (includeDynamic) {
-      List<Map<String, String>> requestLinks = (List<Map<String, String>>)request.getAttribute(WebAssetConstants.REQUEST_LINKS);
-      if (requestLinks != null && requestLinks.size() > 0) {
-        allLinks.addAll(requestLinks);
-      }
-    }
-
-    // write out the links
-    if (allLinks.size() > 0) {
-      for (Map<String, String> linkAttrs : allLinks) {
-        StringBuilder linkTagBuilder = new StringBuilder();
-        linkTagBuilder.append("<link rel=\"stylesheet\"");
-
-        String path = linkAttrs.get(PATH);
-        if (StringUtils.isNotBlank(path)) {
-          linkTagBuilder.append(" href=\"" + assetUri(request, path) + "\"");
-        }
-        for (String attr : linkAttrs.keySet()) {
-          if (attr.equals(PATH)) {
-            continue;
-          }
-          String attrVal = linkAttrs.get(attr);
-          if (StringUtils.isNotBlank(attrVal)) {
-            linkTagBuilder.append(String.format(" %s=\"%s\"", attr, attrVal));
-          }
-        }
-        linkTagBuilder.append(" />");
-        out.print(linkTagBuilder.toString() + "\n");
-      }
-      request.setAttribute(WebAssetConstants.LINKS, allLinks);
-    }
-  }
-
-  private void writeMetaTags(Set<String> ids)
-    throws IOException {
-
-    HttpServletRequest request = (HttpServletRequest)pageContext.getRequest();
-    WebAssetManager wam = getWebAssetManager();
-    JspWriter out = pageContext.getOut();
-    Locale locale = request.getLocale();
-    String profile = (String)request.getAttribute(WebAssetConstants.PROFILE);
-
-    Set<Map<String, String>> allMetas = new LinkedHashSet<Map<String, String>>();
-    if (includeGlobal) {
-      List<Map<String, String>> globalMetas = wam.getGlobalMetas(locale);
-      if (globalMetas != null && globalMetas.size() > 0) {
-        allMetas.addAll(globalMetas);
-      }
-    }
-
-    for (String id : ids) {
-      List<Map<String, String>> idMetas = wam.getMetasForId(id, locale, profile);
-      if (idMetas != null && idMetas.size() > 0) {
-        allMetas.addAll(idMetas);
-      }
-    }
-
-    // include dynamic meta tags
-    if (includeDynamic) {
-      List<Map<String, String>> requestLinks = (List<Map<String, String>>)request.getAttribute(WebAssetConstants.REQUEST_METAS);
-      if (requestLinks != null && requestLinks.size() > 0) {
-        allMetas.addAll(requestLinks);
-      }
-    }
-
-    // write out the meta tags
-    if (allMetas.size() > 0) {
-      for (Map<String, String> metaAttrs : allMetas) {
-        StringBuilder metaTagBuilder = new StringBuilder();
-        metaTagBuilder.append("<meta");
-        for (Entry<String, String> metaAttr : metaAttrs.entrySet()) {
-          String key = metaAttr.getKey();
-          String value = metaAttr.getValue();
-          if (StringUtils.isNotBlank(key)) {
-            metaTagBuilder.append(" " + key + "=\"");
-          }
-          metaTagBuilder.append(value + "\"");
-        }
-        metaTagBuilder.append(" />");
-        out.print(metaTagBuilder.toString() + "\n");
-      }
-      request.setAttribute(WebAssetConstants.LINKS, allMetas);
-    }
+    pageContext.getOut().flush();
+    response.flushBuffer();
   }
 
   @Override
@@ -334,47 +96,82 @@ public class WebAssetTag
     try {
 
       // get the types of assets for this tag
-      Set<String> assetTypes = new HashSet<String>();
-      String[] includeTypes = StringUtils.split(types, ",");
-      if (includeTypes != null) {
-        for (String includeType : includeTypes) {
-          includeType = StringUtils.trim(StringUtils.lowerCase(includeType));
-          assetTypes.add(includeType);
-        }
-      }
+      Set<String> assetTypes = WebAssetRenderer.parseTypes(types);
 
       // are ids hardcoded on the tag itself, overrides anything specified
       // in the request. an id must be specified either on the tag or in the
       // request, even though they don't have to exist in the configuration
-      boolean tagSpecifiedIds = (this.ids != null);
-      String idStr = (tagSpecifiedIds) ? this.ids : WebAssetRequest.get();
-
-      // dedup tag ids, keep in order
-      Set<String> ids = new LinkedHashSet<String>();
-      if (StringUtils.isNotBlank(idStr)) {
-        for (String id : StringUtils.split(idStr, ",")) {
-          ids.add(StringUtils.trim(id));
+      WebAssetIds ids = (this.ids != null) ? this.ids
+        : WebAssetRequest.getIds(pageContext.getRequest());
+
+      HttpServletRequest request = (HttpServletRequest)pageContext.getRequest();
+      JspWriter out = pageContext.getOut();
+      Locale locale = request.getLocale();
+      String profile = (String)request.getAttribute(WebAssetConstants.PROFILE);
+
+      // the same rendering and fragment cache as the other template engines
+      WebAssetManager wam = getWebAssetManager();
+      WebAssetRenderer renderer = new WebAssetRenderer(wam);
+      renderer.setIncludeGlobal(includeGlobal);
+      renderer.setInline(inline);
+      renderer.setInlineThreshold(inlineThreshold);
+      String uriPrefix = WebAssetRenderer.getUriPrefix(wam.getWebAssetUrl(),
+        request, includeHost, includeScheme, scheme, includeContext);
+
+      // write out any title tag, the global title is always included
+      if (assetTypes.contains("title")) {
+        String dynTitle = includeDynamic
+          ? (String)request.getAttribute(WebAssetConstants.REQUEST_TITLE)
+          : null;
+        String title = renderer.renderTitle(out, ids, locale, profile, dynTitle);
+        if (title != null) {
+          request.setAttribute(WebAssetConstants.TITLE, title);
         }
       }
 
-      // write out any title tag
-      if (assetTypes.contains("title")) {
-        writeTitleTag(ids);
+      // write out any resource hints, early in the head
+      if (assetTypes.contains("hints")) {
+        renderer.renderHints(out, ids, locale, profile, uriPrefix);
       }
 
       // write out any meta tags
       if (assetTypes.contains("metas")) {
-        writeMetaTags(ids);
+        Collection<Map<String, String>> metas = renderer.renderMetas(out, ids,
+          locale, profile, getDynamicAssets(request,
+            WebAssetConstants.REQUEST_METAS));
+        if (metas.size() > 0) {
+          request.setAttribute(WebAssetConstants.LINKS,
+            new LinkedHashSet<Map<String, String>>(metas));
+        }
       }
 
       // write out any link tag
       if (assetTypes.contains("links")) {
-        writeLinkTags(ids);
+        Collection<Map<String, String>> links = renderer.renderLinks(out, ids,
+          locale, profile, uriPrefix, getDynamicAssets(request,
+            WebAssetConstants.REQUEST_LINKS));
+        if (links.size() > 0) {
+          request.setAttribute(WebAssetConstants.LINKS,
+            new LinkedHashSet<Map<String, String>>(links));
+        }
       }
 
       // write out any script tag
       if (assetTypes.contains("scripts")) {
-        writeScriptTags(ids);
+        Collection<Map<String, String>> scripts = renderer.renderScripts(out,
+          ids, locale, profile, uriPrefix, getDynamicAssets(request,
+            WebAssetConstants.REQUEST_SCRIPTS));
+        if (scripts.size() > 0) {
+          request.setAttribute(WebAssetConstants.SCRIPTS,
+            new LinkedHashSet<Map<String, String>>(scripts));
+        }
+      }
+
+      // send the head to the client early, only once the head assets written
+      if (flush
+        && (assetTypes.contains("title") || assetTypes.contains("metas")
+          || assetTypes.contains("links") || assetTypes.contains("hints"))) {
+        flushHead();
       }
 
     }
@@ -394,7 +191,7 @@ public class WebAssetTag
   }
 
   public void setIds(String ids) {
-    this.ids = ids;
+    this.ids = ids != null ? WebAssetIds.parse(ids) : null;
   }
 
   public void setIncludeGlobal(boolean includeGlobal) {
@@ -420,4 +217,16 @@ public class WebAssetTag
   public void setScheme(String scheme) {
     this.scheme = scheme;
   }
+
+  public void setInline(boolean inline) {
+    this.inline = inline;
+  }
+
+  public void setInlineThreshold(int inlineThreshold) {
+    this.inlineThreshold = inlineThreshold;
+  }
+
+  public void setFlush(boolean flush) {
+    this.flush = flush;
+  }
 }
@@ -0,0 +1,110 @@
+package com.denniskubes.webasset;
+
+import java.net.URI;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * <p>WebFlux filter that plays the part of the WebAssetInterceptor for
+ * reactive applications. Ids come from handlers calling
+ * ReactiveWebAssetRequest.setup, which keeps them in the exchange attributes,
+ * or from the WebAsset annotation on the handler method the dispatcher
+ * matched.</p>
+ *
+ * <p>Link preload headers for the local scripts and stylesheets of the ids
+ * are added just before the response is committed. Assets are resolved
+ * through the ReactiveWebAssetResolver, so lists that aren't cached yet are
+ * resolved on its bounded scheduler and not on the event loop.</p>
+ */
+public class WebAssetWebFilter
+  implements WebFilter {
+
+  private ReactiveWebAssetResolver resolver;
+  private boolean preloadHeaders = true;
+  private boolean includeGlobal = true;
+
+  public WebAssetWebFilter() {
+  }
+
+  public WebAssetWebFilter(ReactiveWebAssetResolver resolver) {
+    this.resolver = resolver;
+  }
+
+  private Mono<Void> addPreloads(ServerWebExchange exchange) {
+
+    WebAssetIds ids = ReactiveWebAssetRequest.getIds(exchange);
+    if (ids.isEmpty()) {
+      return Mono.empty();
+    }
+
+    Locale locale = exchange.getLocaleContext().getLocale();
+    final Locale assetLocale = locale != null ? locale : Locale.getDefault();
+    final String profile = exchange.getAttribute(WebAssetConstants.PROFILE);
+    final URI uri = exchange.getRequest().getURI();
+    final String uriPrefix = WebAssetRenderer.getUriPrefix(
+      resolver.getWebAssetManager().getWebAssetUrl(), uri.getHost(),
+      uri.getPort(), null, exchange.getRequest().getPath().contextPath().value());
+    final ServerHttpResponse response = exchange.getResponse();
+
+    // stylesheets block rendering so they are preloaded first
+    Mono<List<Map<String, String>>> links = resolver.getLinks(ids,
+      assetLocale, profile, includeGlobal);
+    Mono<List<Map<String, String>>> scripts = resolver.getScripts(ids,
+      assetLocale, profile, includeGlobal);
+    return links.zipWith(scripts).doOnNext(assets -> {
+      Set<String> preloads = new LinkedHashSet<String>();
+      WebAssetInterceptor.addPreloads(uriPrefix, assets.getT1(), "style",
+        preloads);
+      WebAssetInterceptor.addPreloads(uriPrefix, assets.getT2(), "script",
+        preloads);
+      HttpHeaders headers = response.getHeaders();
+      for (String preload : preloads) {
+        headers.add(HttpHeaders.LINK, preload);
+      }
+    }).then();
+  }
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+
+    if (preloadHeaders && resolver != null) {
+      exchange.getResponse().beforeCommit(() -> addPreloads(exchange));
+    }
+    return chain.filter(exchange);
+  }
+
+  public ReactiveWebAssetResolver getResolver() {
+    return resolver;
+  }
+
+  public void setResolver(ReactiveWebAssetResolver resolver) {
+    this.resolver = resolver;
+  }
+
+  public boolean isPreloadHeaders() {
+    return preloadHeaders;
+  }
+
+  public void setPreloadHeaders(boolean preloadHeaders) {
+    this.preloadHeaders = preloadHeaders;
+  }
+
+  public boolean isIncludeGlobal() {
+    return includeGlobal;
+  }
+
+  public void setIncludeGlobal(boolean includeGlobal) {
+    this.includeGlobal = includeGlobal;
+  }
+}
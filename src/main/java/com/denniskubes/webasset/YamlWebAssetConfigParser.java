@@ -1,5 +1,10 @@
 package com.denniskubes.webasset;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -7,144 +12,300 @@ import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.error.Mark;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.nodes.MappingNode;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.NodeTuple;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.SequenceNode;
+import org.yaml.snakeyaml.nodes.Tag;
 
+/**
+ * Parses a yaml config in a single pass over the composed yaml nodes, which
+ * keep their position in the file, without constructing java objects. Merge
+ * keys are flattened as the SafeConstructor would, any scalar is read as a
+ * string, and values of the wrong kind are errors that give the line and
+ * column of the value.
+ */
 public class YamlWebAssetConfigParser
   implements WebAssetConfigParser {
 
-  private Map<String, Object> root;
+  // Yaml isn't thread safe and is costly to create, one per parsing thread
+  private final static ThreadLocal<MergeConstructor> CONSTRUCTOR = ThreadLocal.withInitial(
+    MergeConstructor::new);
+  private final static ThreadLocal<Yaml> YAML = ThreadLocal.withInitial(
+    () -> new Yaml(CONSTRUCTOR.get()));
 
-  private Map<String, String> getAttributes(Map<String, Object> node) {
-    Map<String, String> attrMap = new LinkedHashMap<String, String>();
-    if (node != null) {
-      for (String fieldname : node.keySet()) {
-        String value = (String)node.get(fieldname);
-        if (StringUtils.isNotBlank(value)) {
-          attrMap.put(fieldname, value);
-        }
-      }
+  private boolean global = false;
+  private String title;
+  private Map<String, String> aliases = new LinkedHashMap<String, String>();
+  private List<String> ids;
+  private List<Map<String, String>> scripts = new ArrayList<Map<String, String>>();
+  private List<Map<String, String>> links = new ArrayList<Map<String, String>>();
+  private List<Map<String, String>> metas = new ArrayList<Map<String, String>>();
+  private String parent;
+  private List<String> includes;
+
+  /**
+   * Exposes the merge key flattening of the SafeConstructor for composed
+   * nodes.
+   */
+  private static class MergeConstructor
+    extends SafeConstructor {
+
+    private List<NodeTuple> flatten(MappingNode node) {
+      flattenMapping(node);
+      return node.getValue();
     }
-    return attrMap;
   }
 
   public YamlWebAssetConfigParser(String yamlConfig) {
+    parse(new StringReader(yamlConfig));
+  }
+
+  /**
+   * Parses the yaml config from the stream, the stream isn't closed.
+   *
+   * @param yamlConfig The stream of utf-8 yaml.
+   *
+   * @throws IllegalArgumentException If the yaml isn't valid or has values
+   * of the wrong kind, with the line and column of the problem.
+   */
+  public YamlWebAssetConfigParser(InputStream yamlConfig) {
+    parse(new InputStreamReader(yamlConfig, StandardCharsets.UTF_8));
+  }
+
+  private void parse(Reader yamlConfig) {
+
+    Node root;
     try {
-      Yaml yamlParser = new Yaml();
-      root = (Map<String, Object>)yamlParser.load(yamlConfig);
+      root = YAML.get().compose(yamlConfig);
+    }
+    catch (YAMLException e) {
+      throw new IllegalArgumentException("Couldn't parse config yaml: "
+        + e.getMessage(), e);
+    }
+    if (!(root instanceof MappingNode)) {
+      throw typeError(root, "the config", "a mapping");
     }
-    catch (Exception e) {
-      throw new IllegalArgumentException("Couldn't parse config yaml");
+
+    // a key given more than once keeps the last value
+    for (NodeTuple field : getTuples(root)) {
+      String name = getScalar(field.getKeyNode(), "a field name");
+      Node value = field.getValueNode();
+      if ("global".equals(name)) {
+        global = isTrue(value);
+      }
+      else if ("title".equals(name)) {
+        title = getScalar(value, "title");
+      }
+      else if ("aliases".equals(name)) {
+        aliases = getAttributes(value, "aliases", false);
+      }
+      else if ("ids".equals(name)) {
+        ids = getStrings(value, "ids");
+      }
+      else if ("scripts".equals(name)) {
+        scripts = getAssets(value, "scripts", "type", "text/javascript");
+      }
+      else if ("links".equals(name)) {
+        links = getAssets(value, "links", "rel", "stylesheet", "type",
+          "text/css");
+      }
+      else if ("meta".equals(name)) {
+        metas = getAssets(value, "meta");
+      }
+      else if ("extends".equals(name)) {
+        parent = getScalar(value, "extends");
+      }
+      else if ("include".equals(name)) {
+        includes = getStrings(value, "include");
+      }
     }
   }
 
-  @Override
-  public boolean isGlobal() {
-    return (Boolean)root.getOrDefault("global", false);
+  private static IllegalArgumentException typeError(Node node, String field,
+    String expected) {
+    Mark mark = (node != null) ? node.getStartMark() : null;
+    String location = (mark != null) ? " at line " + (mark.getLine() + 1)
+      + ", column " + (mark.getColumn() + 1) : "";
+    return new IllegalArgumentException("Couldn't parse config yaml" + location
+      + ": " + field + " must be " + expected);
   }
 
-  @Override
-  public String getTitle() {
-    return (String)root.get("title");
+  private static boolean isNull(Node node) {
+    return node == null || Tag.NULL.equals(node.getTag());
   }
 
-  @Override
-  public Map<String, String> getAliases() {
-    return getAttributes((Map<String, Object>)root.get("aliases"));
+  private static boolean isTrue(Node node) {
+    if (isNull(node)) {
+      return false;
+    }
+    if (!Tag.BOOL.equals(node.getTag())) {
+      throw typeError(node, "global", "true or false");
+    }
+    String value = ((ScalarNode)node).getValue().toLowerCase();
+    return "true".equals(value) || "yes".equals(value) || "on".equals(value);
   }
 
-  @Override
-  public List<String> getIds() {
+  /**
+   * Returns the value of a scalar as a string, null for a null value.
+   */
+  private static String getScalar(Node node, String field) {
+    if (isNull(node)) {
+      return null;
+    }
+    if (!(node instanceof ScalarNode)) {
+      throw typeError(node, field, "a single value");
+    }
+    return ((ScalarNode)node).getValue();
+  }
 
-    List<String> ids = null;
-    if (root.containsKey("ids")) {
-      List idObjs = (List)root.get("ids");
-      ids = new ArrayList<String>();
-      for (Object idObj : idObjs) {
-        ids.add((String)idObj);
-      }
+  /**
+   * Returns the fields of a mapping with any merge keys flattened, explicit
+   * fields overriding merged ones.
+   */
+  private static List<NodeTuple> getTuples(Node node) {
+    try {
+      return CONSTRUCTOR.get().flatten((MappingNode)node);
+    }
+    catch (YAMLException e) {
+      throw new IllegalArgumentException("Couldn't parse config yaml: "
+        + e.getMessage(), e);
     }
-    return ids;
   }
 
-  @Override
-  public List<Map<String, String>> getScripts() {
+  /**
+   * Returns the values of a mapping of scalars, with or without the blank
+   * values. A null value is kept as an empty value.
+   */
+  private static Map<String, String> getAttributes(Node node, String field,
+    boolean keepBlank) {
 
-    List<Map<String, String>> scripts = new ArrayList<Map<String, String>>();
-    if (root.containsKey("scripts")) {
-      for (Object scriptObj : (List)root.get("scripts")) {
-        Map<String, String> attributes = null;
-        if (scriptObj instanceof String) {
+    Map<String, String> attributes = new LinkedHashMap<String, String>();
+    if (isNull(node)) {
+      return attributes;
+    }
+    if (!(node instanceof MappingNode)) {
+      throw typeError(node, field, "a mapping of names to values");
+    }
+    for (NodeTuple attribute : getTuples(node)) {
+      String name = getScalar(attribute.getKeyNode(), field + " names");
+      String value = getScalar(attribute.getValueNode(), field + " values");
+      if (keepBlank || StringUtils.isNotBlank(value)) {
+        attributes.put(name, (value != null) ? value : "");
+      }
+    }
+    return attributes;
+  }
 
-          attributes = new LinkedHashMap<String, String>();
-          attributes.put("type", "text/javascript");
-          attributes.put("path", (String)scriptObj);
-        }
-        else if (scriptObj instanceof Map) {
+  /**
+   * Returns the non blank values of a single scalar or a sequence of them.
+   */
+  private static List<String> getStrings(Node node, String field) {
 
-          attributes = new LinkedHashMap<String, String>();
-          Map<String, Object> scriptMap = (Map<String, Object>)scriptObj;
-          for (String key : scriptMap.keySet()) {
-            attributes.put(key, (String)scriptMap.get(key));
-          }
-        }
-        if (attributes.size() > 0) {
-          scripts.add(attributes);
+    List<String> values = new ArrayList<String>();
+    if (node instanceof SequenceNode) {
+      for (Node element : ((SequenceNode)node).getValue()) {
+        String value = getScalar(element, field);
+        if (StringUtils.isNotBlank(value)) {
+          values.add(value);
         }
+      }
+    }
+    else {
+      String value = getScalar(node, field);
+      if (StringUtils.isNotBlank(value)) {
+        values.add(value);
+      }
+    }
+    return values;
+  }
 
+  /**
+   * Returns the attributes of each element of a sequence. An element that is
+   * a scalar is the asset path with the given default attributes, where
+   * there are defaults. Blank attribute values are kept, for attributes such
+   * as async. Elements without attributes are dropped.
+   */
+  private static List<Map<String, String>> getAssets(Node node, String field,
+    String... defaults) {
+
+    List<Map<String, String>> assets = new ArrayList<Map<String, String>>();
+    if (isNull(node)) {
+      return assets;
+    }
+    if (!(node instanceof SequenceNode)) {
+      throw typeError(node, field, "a list");
+    }
+    for (Node element : ((SequenceNode)node).getValue()) {
+      Map<String, String> attributes;
+      if (element instanceof ScalarNode && defaults.length > 0) {
+        attributes = new LinkedHashMap<String, String>();
+        for (int i = 0; i < defaults.length; i += 2) {
+          attributes.put(defaults[i], defaults[i + 1]);
+        }
+        attributes.put("path", ((ScalarNode)element).getValue());
+      }
+      else if (element instanceof MappingNode) {
+        attributes = getAttributes(element, field, true);
+      }
+      else {
+        throw typeError(element, field, (defaults.length > 0)
+          ? "a list of paths or mappings" : "a list of mappings");
+      }
+      if (attributes.size() > 0) {
+        assets.add(attributes);
       }
     }
+    return assets;
+  }
 
-    return scripts;
+  @Override
+  public boolean isGlobal() {
+    return global;
   }
 
   @Override
-  public List<Map<String, String>> getLinks() {
+  public String getTitle() {
+    return title;
+  }
 
-    List<Map<String, String>> links = new ArrayList<Map<String, String>>();
-    if (root.containsKey("links")) {
-      for (Object linkObj : (List)root.get("links")) {
-        Map<String, String> attributes = null;
-        if (linkObj instanceof String) {
+  @Override
+  public Map<String, String> getAliases() {
+    return aliases;
+  }
 
-          attributes = new LinkedHashMap<String, String>();
-          attributes.put("rel", "stylesheet");
-          attributes.put("type", "text/css");
-          attributes.put("path", (String)linkObj);
-        }
-        else if (linkObj instanceof Map) {
+  @Override
+  public List<String> getIds() {
+    return ids;
+  }
 
-          attributes = new LinkedHashMap<String, String>();
-          Map<String, Object> linkMap = (Map<String, Object>)linkObj;
-          for (String key : linkMap.keySet()) {
-            attributes.put(key, (String)linkMap.get(key));
-          }
-        }
-        if (attributes.size() > 0) {
-          links.add(attributes);
-        }
-      }
-    }
+  @Override
+  public List<Map<String, String>> getScripts() {
+    return scripts;
+  }
 
+  @Override
+  public List<Map<String, String>> getLinks() {
     return links;
   }
 
   @Override
   public List<Map<String, String>> getMetas() {
+    return metas;
+  }
 
-    List<Map<String, String>> metas = new ArrayList<Map<String, String>>();
-    if (root.containsKey("meta")) {
-      for (Object meta : (List)root.get("meta")) {
+  @Override
+  public String getExtends() {
+    return parent;
+  }
 
-        Map<String, String> attributes = new LinkedHashMap<String, String>();
-        Map<String, Object> metaMap = (Map<String, Object>)meta;
-        for (String key : metaMap.keySet()) {
-          attributes.put(key, (String)metaMap.get(key));
-        }
-        if (attributes.size() > 0) {
-          metas.add(attributes);
-        }
-      }
-    }
-    return metas;
+  @Override
+  public List<String> getIncludes() {
+    return includes;
   }
 
 }
@@ -0,0 +1,90 @@
+package com.denniskubes.utils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Compares reading nested values and numeric arrays with the JSON helpers,
+ * one field lookup per call and boxed lists, against compiled JsonPath
+ * constants filling primitive buffers. Not run by the build, run the main
+ * method from the test classpath, adding -prof gc to the JMH options to see
+ * allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonPathBenchmark {
+
+  private final static JsonPath NAME = JsonPath.compile("/user/profile/name");
+  private final static JsonPath AGE = JsonPath.compile("/user/profile/age");
+  private final static JsonPath SCORES = JsonPath.compile("/user/scores");
+
+  private JsonNode root;
+  private long[] buffer = new long[64];
+
+  @Setup
+  public void setUp() {
+
+    StringBuilder scores = new StringBuilder();
+    for (int i = 0; i < 64; i++) {
+      scores.append(i > 0 ? "," : "").append(i * 1000L);
+    }
+    root = JSON.parse("{\"user\": {\"profile\": {\"name\": \"dennis\", "
+      + "\"age\": 42}, \"scores\": [" + scores + "]}}");
+  }
+
+  @Benchmark
+  public long helpers() {
+
+    JsonNode profile = JSON.getJsonNode(JSON.getJsonNode(root, "user"),
+      "profile");
+    long total = JSON.getString(profile, "name").length();
+    total += JSON.getInt(profile, "age");
+    List<Long> scores = JSON.getLongs(JSON.getJsonNode(root, "user"), "scores");
+    for (Long score : scores) {
+      total += score;
+    }
+    return total;
+  }
+
+  @Benchmark
+  public long compiled() {
+
+    long total = NAME.getString(root).length();
+    total += AGE.getInt(root, 0);
+    int filled = SCORES.getLongs(root, buffer);
+    for (int i = 0; i < filled; i++) {
+      total += buffer[i];
+    }
+    return total;
+  }
+
+  public static void main(String[] args)
+    throws RunnerException {
+
+    Options options = new OptionsBuilder().include(
+      JsonPathBenchmark.class.getSimpleName()).build();
+    new Runner(options).run();
+  }
+
+}
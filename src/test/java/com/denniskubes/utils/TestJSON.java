@@ -0,0 +1,292 @@
+package com.denniskubes.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+public class TestJSON {
+
+  private final static String USER = "{\"name\":\"dennis\",\"age\":42}";
+  private final static String BAD = "{\"name\": ";
+
+  public static class User {
+    public String name;
+    public int age;
+  }
+
+  private static byte[] bytes(String json) {
+    return json.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static ByteArrayInputStream stream(String json) {
+    return new ByteArrayInputStream(bytes(json));
+  }
+
+  @Test
+  public void testParse()
+    throws Exception {
+
+    Assert.assertEquals("dennis", JSON.parse(USER).get("name").asText());
+    Assert.assertEquals(42, JSON.parse(bytes(USER)).get("age").asInt());
+    Assert.assertEquals(42, JSON.parse(stream(USER)).get("age").asInt());
+
+    Map<String, Object> user = JSON.parseToMap(USER);
+    Assert.assertEquals("dennis", user.get("name"));
+    Assert.assertEquals(42, JSON.parseToMap(bytes(USER)).get("age"));
+    Assert.assertEquals(42, JSON.parseToMap(stream(USER)).get("age"));
+
+    // errors give null
+    Assert.assertNull(JSON.parse(BAD));
+    Assert.assertNull(JSON.parse(bytes(BAD)));
+    Assert.assertNull(JSON.parse(stream(BAD)));
+    Assert.assertNull(JSON.parseToMap(BAD));
+    Assert.assertNull(JSON.parseToMap(bytes(BAD)));
+    Assert.assertNull(JSON.parseToMap(stream(BAD)));
+    Assert.assertNull(JSON.parseToMap("[1, 2]"));
+  }
+
+  @Test
+  public void testDeserialize()
+    throws Exception {
+
+    User user = (User)JSON.deserializeFromJson(USER, User.class);
+    Assert.assertEquals("dennis", user.name);
+    user = (User)JSON.deserializeFromJson(bytes(USER), User.class);
+    Assert.assertEquals(42, user.age);
+    user = (User)JSON.deserializeFromJson(stream(USER), User.class);
+    Assert.assertEquals(42, user.age);
+
+    Assert.assertNull(JSON.deserializeFromJson(BAD, User.class));
+    Assert.assertNull(JSON.deserializeFromJson(bytes(BAD), User.class));
+    Assert.assertNull(JSON.deserializeFromJson(stream(BAD), User.class));
+    Assert.assertNull(JSON.deserializeFromJson("{\"unknown\": 1}",
+      User.class));
+  }
+
+  @Test
+  public void testSerialize()
+    throws Exception {
+
+    Map<String, Object> user = new LinkedHashMap<String, Object>();
+    user.put("name", "dennis");
+    user.put("age", 42);
+    Assert.assertEquals(USER, JSON.serializeToJson(user));
+    Assert.assertEquals(USER, new String(JSON.serializeToJsonBytes(user),
+      StandardCharsets.UTF_8));
+    Assert.assertEquals("null", JSON.serializeToJson(null));
+
+    // the stream is written but left open
+    final boolean[] closed = new boolean[1];
+    ByteArrayOutputStream out = new ByteArrayOutputStream() {
+      @Override
+      public void close() {
+        closed[0] = true;
+      }
+    };
+    Assert.assertTrue(JSON.serializeToJson(user, out));
+    Assert.assertEquals(USER, out.toString("UTF-8"));
+    Assert.assertFalse(closed[0]);
+
+    // errors give null or false
+    Object unserializable = new Object();
+    Assert.assertNull(JSON.serializeToJson(unserializable));
+    Assert.assertNull(JSON.serializeToJsonBytes(unserializable));
+    Assert.assertFalse(JSON.serializeToJson(user, new OutputStream() {
+      @Override
+      public void write(int b)
+        throws IOException {
+        throw new IOException("closed");
+      }
+    }));
+  }
+
+  @Test
+  public void testReadersAndWriters()
+    throws Exception {
+
+    ObjectReader reader = JSON.getReader(User.class);
+    Assert.assertSame(reader, JSON.getReader(User.class));
+    Assert.assertEquals("dennis", ((User)reader.readValue(USER)).name);
+
+    ObjectWriter writer = JSON.getWriter(User.class);
+    Assert.assertSame(writer, JSON.getWriter(User.class));
+    Assert.assertNotSame(reader, JSON.getReader(JsonNode.class));
+  }
+
+  @Test
+  public void testConfigure()
+    throws Exception {
+
+    ObjectReader reader = JSON.getReader(User.class);
+    ObjectWriter writer = JSON.getWriter(Map.class);
+    Map<String, Object> values = new LinkedHashMap<String, Object>();
+    values.put("b", 1);
+    values.put("a", 2);
+    try {
+      JSON.configure(mapper -> mapper.enable(
+        SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS));
+
+      // readers and writers come from the new mapper
+      Assert.assertNotSame(reader, JSON.getReader(User.class));
+      Assert.assertNotSame(writer, JSON.getWriter(Map.class));
+      Assert.assertEquals("{\"a\":2,\"b\":1}", JSON.serializeToJson(values));
+      Assert.assertEquals(42, ((User)JSON.deserializeFromJson(USER,
+        User.class)).age);
+    }
+    finally {
+      JSON.configure(mapper -> mapper.disable(
+        SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS));
+    }
+    Assert.assertEquals("{\"b\":1,\"a\":2}", JSON.serializeToJson(values));
+  }
+
+  /**
+   * A stream that remembers whether it was closed.
+   */
+  private static class TrackedStream
+    extends ByteArrayInputStream {
+
+    private boolean closed = false;
+
+    private TrackedStream(String json) {
+      super(bytes(json));
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  private static long[] toArray(PrimitiveIterator.OfLong values) {
+    LongStream.Builder builder = LongStream.builder();
+    values.forEachRemaining((long value) -> builder.add(value));
+    return builder.build().toArray();
+  }
+
+  @Test
+  public void testIterateArray()
+    throws Exception {
+
+    String json = "{\"data\": [{\"items\": [0]}, {\"skip\": {\"items\": [9]}, "
+      + "\"items\": [{\"name\": \"a\"}, null, {\"name\": \"b\"}]}]}";
+    TrackedStream in = new TrackedStream(json);
+    Iterator<JsonNode> items = JSON.iterateArray(in, "/data/1/items",
+      JsonNode.class);
+    Assert.assertEquals("a", items.next().get("name").asText());
+    Assert.assertTrue(items.next().isNull());
+    Assert.assertEquals("b", items.next().get("name").asText());
+    Assert.assertFalse(items.hasNext());
+    Assert.assertTrue(in.closed);
+
+    // null elements bind to null for types other than trees
+    List<Map> maps = JSON.streamArray(stream("[{\"a\": 1}, null]"), "",
+      Map.class).collect(Collectors.toList());
+    Assert.assertEquals(2, maps.size());
+    Assert.assertNull(maps.get(1));
+
+    // missing pointers and values other than arrays are empty
+    Assert.assertFalse(JSON.iterateArray(stream(json), "/missing",
+      JsonNode.class).hasNext());
+    Assert.assertFalse(JSON.iterateArray(stream(json), "/data/5/items",
+      JsonNode.class).hasNext());
+    Assert.assertFalse(JSON.iterateArray(stream(json), "/data/0",
+      JsonNode.class).hasNext());
+    Assert.assertFalse(JSON.iterateArray(stream(json), "/data/name",
+      JsonNode.class).hasNext());
+    in = new TrackedStream("{\"data\": 1}");
+    Assert.assertFalse(JSON.iterateArray(in, "/data", JsonNode.class).hasNext());
+    Assert.assertTrue(in.closed);
+  }
+
+  @Test
+  public void testIteratePrimitives()
+    throws Exception {
+
+    String json = "{\"values\": [1, \"2\", 3.5, null, [4], {\"a\": 5}, -6]}";
+    Assert.assertTrue(Arrays.equals(new long[] {1, 3, -6},
+      toArray(JSON.iterateLongs(stream(json), "/values"))));
+    Assert.assertEquals(-1.5, JSON.streamDoubles(stream(json), "/values").sum());
+    Assert.assertEquals(-2L, JSON.streamLongs(stream(json), "/values").sum());
+    Assert.assertEquals(0, JSON.streamLongs(stream(json), "/missing").count());
+
+    PrimitiveIterator.OfDouble doubles = JSON.iterateDoubles(stream("[1.5]"), "");
+    Assert.assertEquals(1.5, doubles.nextDouble());
+    try {
+      doubles.nextDouble();
+      Assert.fail("Read past the end");
+    }
+    catch (NoSuchElementException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCloseEarly()
+    throws Exception {
+
+    TrackedStream in = new TrackedStream("[1, 2, 3]");
+    try (LongStream values = JSON.streamLongs(in, "")) {
+      Assert.assertEquals(1L, values.iterator().nextLong());
+      Assert.assertFalse(in.closed);
+    }
+    Assert.assertTrue(in.closed);
+
+    in = new TrackedStream("[{\"a\": 1}, {\"a\": 2}]");
+    try (Stream<JsonNode> nodes = JSON.streamArray(in, "", JsonNode.class)) {
+      Assert.assertEquals(1, nodes.findFirst().get().get("a").asInt());
+    }
+    Assert.assertTrue(in.closed);
+  }
+
+  @Test
+  public void testTruncatedArray()
+    throws Exception {
+
+    PrimitiveIterator.OfLong values = JSON.iterateLongs(stream(
+      "{\"values\": [1, 2,"), "/values");
+    Assert.assertEquals(1L, values.nextLong());
+    Assert.assertEquals(2L, values.nextLong());
+    try {
+      values.hasNext();
+      Assert.fail("Truncated json read");
+    }
+    catch (UncheckedIOException e) {
+      // expected
+    }
+
+    Iterator<JsonNode> nodes = JSON.iterateArray(stream("[{\"a\": 1}, {\"a\""),
+      "", JsonNode.class);
+    Assert.assertEquals(1, nodes.next().get("a").asInt());
+    try {
+      nodes.next();
+      Assert.fail("Truncated json read");
+    }
+    catch (UncheckedIOException e) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,98 @@
+package com.denniskubes.utils;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+public class TestJsonPath {
+
+  private JsonNode root = JSON.parse("{\"user\": {\"name\": \"dennis\", "
+    + "\"age\": 42, \"admin\": true, \"score\": 1.5, \"none\": null, "
+    + "\"a/b\": \"slash\", \"0\": \"zero\"}, \"values\": [1, \"x\", 2.5, null, "
+    + "[3], 4], \"rows\": [{\"id\": 7}, {\"id\": 8}]}");
+
+  @Test
+  public void testResolve() {
+
+    Assert.assertSame(root, JsonPath.compile("").resolve(root));
+    Assert.assertEquals("dennis", JsonPath.compile("/user/name").resolve(
+      root).textValue());
+    Assert.assertEquals(8, JsonPath.compile("/rows/1/id").resolve(root).intValue());
+    Assert.assertEquals("slash", JsonPath.compile("/user/a~1b").resolve(
+      root).textValue());
+
+    // numeric segments match object fields by name
+    Assert.assertEquals("zero", JsonPath.compile("/user/0").resolve(
+      root).textValue());
+
+    // missing values, nulls, and paths through values that aren't
+    // containers resolve to null
+    Assert.assertNull(JsonPath.compile("/user/missing").resolve(root));
+    Assert.assertNull(JsonPath.compile("/user/none").resolve(root));
+    Assert.assertNull(JsonPath.compile("/rows/5/id").resolve(root));
+    Assert.assertNull(JsonPath.compile("/rows/id").resolve(root));
+    Assert.assertNull(JsonPath.compile("/user/name/first").resolve(root));
+    Assert.assertNull(JsonPath.compile("/user").resolve(null));
+    Assert.assertEquals("/rows/1/id", JsonPath.compile("/rows/1/id").toString());
+  }
+
+  @Test
+  public void testGetters() {
+
+    JsonPath name = JsonPath.compile("/user/name");
+    JsonPath age = JsonPath.compile("/user/age");
+    Assert.assertEquals("dennis", name.getString(root));
+    Assert.assertNull(age.getString(root));
+    Assert.assertEquals("none", JsonPath.compile("/user/none").getString(root,
+      "none"));
+    Assert.assertTrue(JsonPath.compile("/user/admin").getBoolean(root, false));
+    Assert.assertFalse(name.getBoolean(root, false));
+    Assert.assertEquals(42, age.getInt(root, 0));
+    Assert.assertEquals(-1, name.getInt(root, -1));
+    Assert.assertEquals(42L, age.getLong(root, 0L));
+    Assert.assertEquals(1.5, JsonPath.compile("/user/score").getDouble(root, 0));
+
+    // any number is read as a double
+    Assert.assertEquals(42.0, age.getDouble(root, 0));
+    Assert.assertEquals(-1.0, name.getDouble(root, -1));
+  }
+
+  @Test
+  public void testBuffers() {
+
+    JsonPath values = JsonPath.compile("/values");
+    int[] ints = new int[8];
+    Assert.assertEquals(3, values.getInts(root, ints));
+    Assert.assertTrue(Arrays.equals(new int[] {1, 2, 4}, Arrays.copyOf(ints, 3)));
+
+    // filling stops at the end of the buffer
+    long[] longs = new long[2];
+    Assert.assertEquals(2, values.getLongs(root, longs));
+    Assert.assertTrue(Arrays.equals(new long[] {1, 2}, longs));
+    Assert.assertEquals(0, values.getLongs(root, new long[0]));
+
+    double[] doubles = new double[8];
+    Assert.assertEquals(3, values.getDoubles(root, doubles));
+    Assert.assertEquals(2.5, doubles[1]);
+
+    // a single number fills one element, other values none
+    JsonPath age = JsonPath.compile("/user/age");
+    Assert.assertEquals(1, age.getInts(root, ints));
+    Assert.assertEquals(42, ints[0]);
+    Assert.assertEquals(1, age.getDoubles(root, doubles));
+    Assert.assertEquals(0, age.getLongs(root, new long[0]));
+    Assert.assertEquals(0, JsonPath.compile("/user/name").getInts(root, ints));
+    Assert.assertEquals(0, JsonPath.compile("/missing").getDoubles(root,
+      doubles));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidPath() {
+    JsonPath.compile("user");
+  }
+
+}
@@ -0,0 +1,72 @@
+package com.denniskubes.webasset;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stub worker process used to test the ProcessPoolWebAssetFilter. Upper cases
+ * content by default, with a "count" argument the number of requests served
+ * by the process is appended. Content of "crash" exits the process, "hang"
+ * never answers, "fail" returns an error status, and "huge" and "negative"
+ * send a bad response length.
+ */
+public class StubFilterWorker {
+
+  public static void main(String[] args)
+    throws Exception {
+
+    DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+      System.out));
+
+    boolean count = args.length > 0 && args[0].equals("count");
+    int served = 0;
+    while (true) {
+
+      byte[] content;
+      try {
+        content = new byte[in.readInt()];
+        in.readFully(content);
+      }
+      catch (EOFException e) {
+        return;
+      }
+
+      String request = new String(content, StandardCharsets.UTF_8).trim();
+      if (request.equals("crash")) {
+        System.exit(1);
+      }
+      else if (request.equals("hang")) {
+        Thread.sleep(Long.MAX_VALUE);
+      }
+      else if (request.equals("huge") || request.equals("negative")) {
+        out.writeInt(0);
+        out.writeInt(request.equals("huge") ? Integer.MAX_VALUE : -1);
+        out.flush();
+        continue;
+      }
+
+      int status = 0;
+      byte[] response;
+      if (request.equals("fail")) {
+        status = 1;
+        response = "stub failure".getBytes(StandardCharsets.UTF_8);
+      }
+      else {
+        served++;
+        String suffix = count ? ":" + served : "";
+        response = (request.toUpperCase() + suffix).getBytes(
+          StandardCharsets.UTF_8);
+      }
+
+      out.writeInt(status);
+      out.writeInt(response.length);
+      out.write(response);
+      out.flush();
+    }
+  }
+}
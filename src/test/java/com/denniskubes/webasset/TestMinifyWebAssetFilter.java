@@ -0,0 +1,116 @@
+package com.denniskubes.webasset;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+public class TestMinifyWebAssetFilter {
+
+  private String rootDirectory = "/webasset/test-webapp";
+
+  private String minify(MinifyWebAssetFilter filter, String content)
+    throws Exception {
+    StringWriter out = new StringWriter();
+    filter.minify(new MinifyWebAssetFilter.Source(new StringReader(content)),
+      out);
+    return out.toString();
+  }
+
+  @Test
+  public void testCssMinify()
+    throws Exception {
+
+    CssMinifyFilter css = new CssMinifyFilter();
+    Assert.assertEquals("a{color:red}",
+      minify(css, "a {\n  color : red;\n}\n"));
+    Assert.assertEquals("/*! keep */a>b,c{margin:0;padding:.5em 0 -.25px}",
+      minify(css, "/*! keep */ /* drop */ a > b , c {\n margin: 0px; "
+        + "padding: 0.5em 0.0em -0.25px;\n}"));
+    Assert.assertEquals("#aabbcc{color:#abc;background:#ABCDEF}",
+      minify(css, "#aabbcc { color: #aabbcc; background: #ABCDEF; }"));
+    Assert.assertEquals("a{transition:all 0s;width:calc(0px + 5%)}",
+      minify(css, "a { transition: all 0s; width: calc(0px + 5%); }"));
+    Assert.assertEquals("div :first-child{content:\"a  b\"}",
+      minify(css, "div :first-child { content: \"a  b\"; }"));
+    Assert.assertEquals("@media screen and (max-width:100px){a:hover{top:0}}",
+      minify(css, "@media screen and (max-width: 100px) {\n"
+        + "  a:hover { top: 0em; }\n}"));
+    Assert.assertEquals("a{background:url(\"x y.png\") no-repeat}",
+      minify(css, "a { background: url( \"x y.png\" ) no-repeat; }"));
+
+    // custom properties and flex values keep their zero lengths
+    Assert.assertEquals(":root{--gap:0px;--ratio:0.50}"
+      + "a{margin:calc(var(--gap) + 10px);flex:1 1 0px;flex-basis:0%;top:0}",
+      minify(css, ":root { --gap: 0px; --ratio: 0.50; }\n"
+        + "a { margin: calc(var(--gap) + 10px); flex: 1 1 0px; "
+        + "flex-basis: 0%; top: 0px; }"));
+    Assert.assertEquals("a{-webkit-flex:1 0 0em;color:#abc}",
+      minify(css, "a { -webkit-flex: 1 0 0em; color: #aabbcc }"));
+  }
+
+  @Test
+  public void testJsMinify()
+    throws Exception {
+
+    JsMinifyFilter js = new JsMinifyFilter();
+    Assert.assertEquals("var a=1;var b=a+ +1;",
+      minify(js, "var a = 1; // comment\nvar b = a + +1;"));
+    Assert.assertEquals("/*! keep */\nfunction f(x){return x}",
+      minify(js, "/*! keep */\n/* drop */\nfunction f( x ) {\n  return x\n}"));
+    Assert.assertEquals("var s='a  // b';var t=`x  ${ y  }`",
+      minify(js, "var s = 'a  // b';\nvar t = `x  ${ y  }`"));
+    Assert.assertEquals("var r=/a  b\\//g.test(s)\nx=a/b/c",
+      minify(js, "var r = /a  b\\//g.test(s)\nx = a / b / c"));
+    Assert.assertEquals("if(x)return/x  y/.test(z)",
+      minify(js, "if (x) return /x  y/.test(z)"));
+    Assert.assertEquals("a\n++b", minify(js, "a\n++b"));
+  }
+
+  @Test
+  public void testMinifyRegisteredWithManager()
+    throws Exception {
+
+    Resource rootResource = new ClassPathResource(rootDirectory);
+    String fullRootPath = rootResource.getFile().getPath();
+    WebAssetManager wam = new WebAssetManager();
+    wam.setRootDirectory(fullRootPath);
+    wam.setConfigDirectory("/WEB-INF/config");
+    wam.setClearCacheOnShutdown(true);
+    wam.setMinifyAssets(true);
+    wam.startup();
+
+    try {
+
+      Assert.assertTrue(wam.getFilters().get(WebAssetManager.CSS_MINIFY_FILTER) instanceof CssMinifyFilter);
+      Assert.assertTrue(wam.getFilters().get(WebAssetManager.JS_MINIFY_FILTER) instanceof JsMinifyFilter);
+
+      List<Map<String, String>> links = wam.getGlobalLinks(Locale.US);
+      Assert.assertEquals(1, links.size());
+      File cached = new File(fullRootPath, links.get(0).get("path"));
+      String content = FileUtils.readFileToString(cached, StandardCharsets.UTF_8);
+      Assert.assertEquals("#global1{background-color:red}", content);
+
+      MinifyWebAssetFilter css = (MinifyWebAssetFilter)wam.getFilters().get(
+        WebAssetManager.CSS_MINIFY_FILTER);
+      MinifyWebAssetFilter.MinifyStats stats = css.getStats("/WEB-INF/css/global1.css");
+      Assert.assertNotNull(stats);
+      Assert.assertTrue(stats.getBytesSaved() > 0);
+      Assert.assertEquals(content.length(), stats.getMinifiedBytes());
+    }
+    finally {
+      wam.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,188 @@
+package com.denniskubes.webasset;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+public class TestProcessPoolWebAssetFilter {
+
+  private String rootDirectory = "/webasset/test-webapp";
+
+  private ProcessPoolWebAssetFilter createFilter(String... args) {
+
+    String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+    String classpath = System.getProperty("java.class.path");
+
+    ProcessPoolWebAssetFilter filter = new ProcessPoolWebAssetFilter();
+    List<String> command = new ArrayList<String>(Arrays.asList(java,
+      "-cp", classpath, StubFilterWorker.class.getName()));
+    command.addAll(Arrays.asList(args));
+    filter.setCommand(command);
+    filter.setMaxWorkers(1);
+    filter.setRequestTimeout(10000);
+    filter.startup();
+    return filter;
+  }
+
+  private String filter(ProcessPoolWebAssetFilter filter, String content)
+    throws IOException {
+    byte[] filtered = filter.filter(content.getBytes(StandardCharsets.UTF_8));
+    return new String(filtered, StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testWorkerReuse()
+    throws Exception {
+
+    ProcessPoolWebAssetFilter filter = createFilter("count");
+    try {
+      Assert.assertEquals("ABC:1", filter(filter, "abc"));
+      Assert.assertEquals("DEF:2", filter(filter, "def"));
+      Assert.assertEquals(1, filter.getWorkerCount());
+    }
+    finally {
+      filter.shutdown();
+    }
+    Assert.assertEquals(0, filter.getWorkerCount());
+  }
+
+  @Test
+  public void testWorkerFailureKeepsWorker()
+    throws Exception {
+
+    ProcessPoolWebAssetFilter filter = createFilter("count");
+    try {
+      Assert.assertEquals("ABC:1", filter(filter, "abc"));
+      try {
+        filter(filter, "fail");
+        Assert.fail("Expected worker failure");
+      }
+      catch (IOException e) {
+        Assert.assertTrue(e.getMessage().contains("stub failure"));
+      }
+      Assert.assertEquals("DEF:2", filter(filter, "def"));
+    }
+    finally {
+      filter.shutdown();
+    }
+  }
+
+  @Test
+  public void testCrashedWorkerRestarted()
+    throws Exception {
+
+    ProcessPoolWebAssetFilter filter = createFilter("count");
+    try {
+      Assert.assertEquals("ABC:1", filter(filter, "abc"));
+      try {
+        filter(filter, "crash");
+        Assert.fail("Expected worker crash");
+      }
+      catch (IOException e) {
+        // expected
+      }
+      Assert.assertEquals("DEF:1", filter(filter, "def"));
+    }
+    finally {
+      filter.shutdown();
+    }
+  }
+
+  @Test
+  public void testBadResponseLength()
+    throws Exception {
+
+    ProcessPoolWebAssetFilter filter = createFilter("count");
+    filter.setMaxResponseLength(1024);
+    try {
+      Assert.assertEquals("ABC:1", filter(filter, "abc"));
+      for (String request : Arrays.asList("huge", "negative")) {
+        try {
+          filter(filter, request);
+          Assert.fail("Expected a bad length");
+        }
+        catch (IOException e) {
+          Assert.assertTrue(e.getCause().getMessage().contains(
+            "Invalid response length"));
+        }
+
+        // the worker is replaced
+        Assert.assertEquals(0, filter.getWorkerCount());
+        Assert.assertEquals("DEF:1", filter(filter, "def"));
+      }
+    }
+    finally {
+      filter.shutdown();
+    }
+  }
+
+  @Test
+  public void testTimeout()
+    throws Exception {
+
+    ProcessPoolWebAssetFilter filter = createFilter("count");
+    filter.setRequestTimeout(1000);
+    try {
+      try {
+        filter(filter, "hang");
+        Assert.fail("Expected worker timeout");
+      }
+      catch (IOException e) {
+        Assert.assertTrue(e.getMessage().contains("timed out"));
+      }
+      filter.setRequestTimeout(10000);
+      Assert.assertEquals("DEF:1", filter(filter, "def"));
+    }
+    finally {
+      filter.shutdown();
+    }
+  }
+
+  @Test
+  public void testRegisteredWithManager()
+    throws Exception {
+
+    ProcessPoolWebAssetFilter filter = createFilter();
+
+    Resource rootResource = new ClassPathResource(rootDirectory);
+    String fullRootPath = rootResource.getFile().getPath();
+    WebAssetManager wam = new WebAssetManager();
+    wam.setRootDirectory(fullRootPath);
+    wam.setConfigDirectory("/WEB-INF/config");
+    wam.setClearCacheOnShutdown(true);
+
+    Map<String, WebAssetFilter> filters = new HashMap<String, WebAssetFilter>();
+    filters.put("upper", filter);
+    Map<String, String[]> typeToFilters = new HashMap<String, String[]>();
+    typeToFilters.put("css", new String[] {"upper"});
+    wam.setFilters(filters);
+    wam.setTypeToFilters(typeToFilters);
+    wam.startup();
+
+    try {
+      List<Map<String, String>> links = wam.getGlobalLinks(Locale.US);
+      Assert.assertEquals(1, links.size());
+      File cached = new File(fullRootPath, links.get(0).get("path"));
+      String content = FileUtils.readFileToString(cached, StandardCharsets.UTF_8);
+      Assert.assertTrue(content.contains("BACKGROUND-COLOR: RED"));
+    }
+    finally {
+      wam.shutdown();
+      filter.shutdown();
+    }
+  }
+
+}
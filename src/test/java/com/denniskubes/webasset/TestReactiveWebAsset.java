@@ -0,0 +1,154 @@
+package com.denniskubes.webasset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.HandlerMapping;
+
+import reactor.core.publisher.Mono;
+
+public class TestReactiveWebAsset {
+
+  private String rootDirectory = "/webasset/test-webapp";
+  private WebAssetManager wam;
+  private ReactiveWebAssetResolver resolver;
+
+  public static class PageController {
+
+    @WebAsset("good1")
+    public String page() {
+      return "page";
+    }
+
+    public String plain() {
+      return "plain";
+    }
+  }
+
+  @Before
+  public void setUp()
+    throws Exception {
+
+    Resource rootResource = new ClassPathResource(rootDirectory);
+    wam = new WebAssetManager();
+    wam.setRootDirectory(rootResource.getFile().getPath());
+    wam.setConfigDirectory("/WEB-INF/config");
+    wam.setClearCacheOnShutdown(true);
+    wam.setCaching(true);
+    wam.startup();
+    resolver = new ReactiveWebAssetResolver(wam);
+  }
+
+  @After
+  public void tearDown() {
+    resolver.shutdown();
+    wam.shutdown();
+  }
+
+  @Test
+  public void testResolver() {
+
+    // not cached yet, resolved off the calling thread
+    final List<String> threads = new ArrayList<String>();
+    List<String> ids = Arrays.asList("good1");
+    List<Map<String, String>> scripts = resolver.getScripts(ids,
+      Locale.US, null, true).doOnNext(
+      result -> threads.add(Thread.currentThread().getName())).block();
+    Assert.assertEquals(wam.getScripts(ids, Locale.US, null, true), scripts);
+    Assert.assertTrue(threads.get(0).startsWith("webasset-resolver-"));
+
+    // cached, returned straight away on the calling thread
+    threads.clear();
+    Mono<List<Map<String, String>>> cached = resolver.getScripts(ids,
+      Locale.US, null, true);
+    Assert.assertSame(scripts, cached.doOnNext(
+      result -> threads.add(Thread.currentThread().getName())).block());
+    Assert.assertEquals(Thread.currentThread().getName(), threads.get(0));
+  }
+
+  @Test
+  public void testWebFilterPreloads() {
+
+    WebAssetWebFilter filter = new WebAssetWebFilter(resolver);
+    MockServerWebExchange exchange = MockServerWebExchange.from(
+      MockServerHttpRequest.get("/app/page").contextPath("/app").build());
+    filter.filter(exchange, filtered -> {
+      ReactiveWebAssetRequest.setup(filtered, "good1");
+      return filtered.getResponse().setComplete();
+    }).block();
+
+    Assert.assertEquals("good1",
+      ReactiveWebAssetRequest.getIds(exchange).toString());
+    List<String> links = exchange.getResponse().getHeaders().get(
+      HttpHeaders.LINK);
+    Assert.assertEquals(6, links.size());
+    Assert.assertEquals("</app" + wam.getCachedPath("/WEB-INF/css/global1.css")
+      + ">; rel=preload; as=style", links.get(0));
+
+    // the host and port of the request, as the tag writes them
+    exchange = MockServerWebExchange.from(MockServerHttpRequest.get(
+      "http://example.com:8080/app/page").contextPath("/app").build());
+    filter.filter(exchange, filtered -> {
+      ReactiveWebAssetRequest.setup(filtered, "good1");
+      return filtered.getResponse().setComplete();
+    }).block();
+    Assert.assertEquals("<//example.com:8080/app"
+      + wam.getCachedPath("/WEB-INF/css/global1.css")
+      + ">; rel=preload; as=style", exchange.getResponse().getHeaders().get(
+        HttpHeaders.LINK).get(0));
+
+    // no ids, no preloads
+    exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/").build());
+    filter.filter(exchange, filtered -> filtered.getResponse().setComplete()).block();
+    Assert.assertNull(exchange.getResponse().getHeaders().get(HttpHeaders.LINK));
+  }
+
+  @Test
+  public void testAnnotatedIds()
+    throws Exception {
+
+    // the filter reads the handler matched by the dispatcher
+    WebAssetWebFilter filter = new WebAssetWebFilter(resolver);
+    MockServerWebExchange exchange = MockServerWebExchange.from(
+      MockServerHttpRequest.get("/page").build());
+    final HandlerMethod page = new HandlerMethod(new PageController(), "page");
+    filter.filter(exchange, filtered -> {
+      filtered.getAttributes().put(
+        HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE, page);
+      return filtered.getResponse().setComplete();
+    }).block();
+    Assert.assertEquals("good1",
+      ReactiveWebAssetRequest.getIds(exchange).toString());
+    Assert.assertEquals(6, exchange.getResponse().getHeaders().get(
+      HttpHeaders.LINK).size());
+
+    // ids setup by the handler win over the annotation
+    exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/page").build());
+    exchange.getAttributes().put(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE,
+      page);
+    ReactiveWebAssetRequest.setup(exchange, "good2");
+    Assert.assertEquals("good2",
+      ReactiveWebAssetRequest.getIds(exchange).toString());
+
+    // handlers without the annotation have no ids
+    exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/plain").build());
+    exchange.getAttributes().put(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE,
+      new HandlerMethod(new PageController(), "plain"));
+    Assert.assertTrue(ReactiveWebAssetRequest.getIds(exchange).isEmpty());
+  }
+
+}
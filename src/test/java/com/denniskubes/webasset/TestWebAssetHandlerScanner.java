@@ -0,0 +1,105 @@
+package com.denniskubes.webasset;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+public class TestWebAssetHandlerScanner {
+
+  private String rootDirectory = "/webasset/test-webapp";
+  private WebAssetManager wam;
+
+  @Controller
+  public static class MappedController {
+
+    @WebAsset("good1")
+    @RequestMapping("/one")
+    public String one() {
+      return "one";
+    }
+
+    @WebAsset(value = "good1", ids = "good2")
+    @RequestMapping("/two")
+    public String two() {
+      return "two";
+    }
+
+    @WebAsset("good1")
+    @RequestMapping("/again")
+    public String again() {
+      return "again";
+    }
+
+    @RequestMapping("/plain")
+    public String plain() {
+      return "plain";
+    }
+  }
+
+  @Before
+  public void setUp()
+    throws Exception {
+
+    Resource rootResource = new ClassPathResource(rootDirectory);
+    wam = new WebAssetManager();
+    wam.setRootDirectory(rootResource.getFile().getPath());
+    wam.setConfigDirectory("/WEB-INF/config");
+    wam.setClearCacheOnShutdown(true);
+    wam.setCaching(true);
+    wam.startup();
+  }
+
+  @After
+  public void tearDown() {
+    wam.shutdown();
+  }
+
+  @Test
+  public void testScanWarmsCaches()
+    throws Exception {
+
+    WebAssetInterceptor interceptor = new WebAssetInterceptor();
+    WebAssetHandlerScanner scanner = new WebAssetHandlerScanner();
+    scanner.setWebAssetManager(wam);
+    scanner.setWebAssetInterceptor(interceptor);
+    scanner.setLocales(Arrays.asList(Locale.US, Locale.FRANCE));
+
+    StaticWebApplicationContext context = new StaticWebApplicationContext();
+    context.setServletContext(new MockServletContext());
+    context.registerSingleton("mappedController", MappedController.class);
+    context.registerSingleton("handlerMapping",
+      RequestMappingHandlerMapping.class);
+    context.getBeanFactory().registerSingleton("scanner", scanner);
+    context.refresh();
+
+    // one entry per distinct id set, unannotated methods skipped
+    Set<WebAssetIds> scanned = scanner.getScannedIds();
+    Assert.assertEquals(2, scanned.size());
+    Assert.assertTrue(scanned.contains(WebAssetIds.of("good1", "good2")));
+
+    // warm for every locale before any request
+    WebAssetIds ids = WebAssetIds.parse("good1");
+    Assert.assertNotNull(wam.getCachedScripts(ids, Locale.US, null, true));
+    Assert.assertNotNull(wam.getCachedLinks(ids, Locale.FRANCE, null, false));
+    Assert.assertNull(wam.getCachedScripts(ids, Locale.GERMANY, null, true));
+
+    // parsed ids are cached for the interceptor
+    Assert.assertSame(interceptor.getIds(MappedController.class.getMethod("two")),
+      interceptor.getIds(MappedController.class.getMethod("two")));
+    context.close();
+  }
+
+}
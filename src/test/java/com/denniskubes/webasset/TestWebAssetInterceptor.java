@@ -0,0 +1,207 @@
+package com.denniskubes.webasset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.method.HandlerMethod;
+
+public class TestWebAssetInterceptor {
+
+  private String rootDirectory = "/webasset/test-webapp";
+  private WebAssetManager wam;
+
+  public static class PageController {
+
+    @WebAsset("good1")
+    public String page() {
+      return "page";
+    }
+
+    @WebAsset(value = " good1, good2 ", ids = {"good2", "external1"})
+    public String multiple() {
+      return "multiple";
+    }
+
+    public String plain() {
+      return "plain";
+    }
+  }
+
+  @Before
+  public void setUp()
+    throws Exception {
+
+    Resource rootResource = new ClassPathResource(rootDirectory);
+    wam = new WebAssetManager();
+    wam.setRootDirectory(rootResource.getFile().getPath());
+    wam.setConfigDirectory("/WEB-INF/config");
+    wam.setClearCacheOnShutdown(true);
+    wam.startup();
+  }
+
+  @After
+  public void tearDown() {
+    wam.shutdown();
+    WebAssetRequest.cleanup();
+  }
+
+  @Test
+  public void testPreloadHeaders()
+    throws Exception {
+
+    WebAssetInterceptor interceptor = new WebAssetInterceptor();
+    interceptor.setWebAssetManager(wam);
+
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/app/page");
+    request.setContextPath("/app");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    HandlerMethod handler = new HandlerMethod(new PageController(), "page");
+    Assert.assertTrue(interceptor.preHandle(request, response, handler));
+    Assert.assertEquals("good1", WebAssetRequest.getIds(request).toString());
+
+    List<String> links = response.getHeaders("Link");
+    Assert.assertEquals(6, links.size());
+    Assert.assertEquals("<//localhost/app"
+      + wam.getCachedPath("/WEB-INF/css/global1.css")
+      + ">; rel=preload; as=style", links.get(0));
+    Assert.assertEquals("<//localhost/app"
+      + wam.getCachedPath("/WEB-INF/js/global3.js")
+      + ">; rel=preload; as=script", links.get(5));
+    Assert.assertEquals(200, response.getStatus());
+
+    // external assets aren't preloaded
+    interceptor.setIncludeGlobal(false);
+    Assert.assertTrue(interceptor.getPreloadLinks(request,
+      Arrays.asList("external1")).isEmpty());
+    interceptor.setIncludeGlobal(true);
+
+    // no annotation, no preloads
+    response = new MockHttpServletResponse();
+    handler = new HandlerMethod(new PageController(), "plain");
+    Assert.assertTrue(interceptor.preHandle(request, response, handler));
+    Assert.assertTrue(response.getHeaders("Link").isEmpty());
+  }
+
+  @Test
+  public void testPreloadHost()
+    throws Exception {
+
+    WebAssetInterceptor interceptor = new WebAssetInterceptor();
+    interceptor.setWebAssetManager(wam);
+    wam.setWebAssetUrl("static.example.com");
+
+    // the preload urls match the tag, including a non-standard port
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/app/page");
+    request.setContextPath("/app");
+    request.setServerPort(8080);
+    WebAssetRenderer renderer = new WebAssetRenderer(wam);
+    String uriPrefix = renderer.getUriPrefix(request);
+    Assert.assertEquals("//static.example.com:8080/app", uriPrefix);
+    List<String> links = new ArrayList<String>(interceptor.getPreloadLinks(
+      request, Arrays.asList("good1")));
+    Assert.assertEquals("<" + uriPrefix
+      + wam.getCachedPath("/WEB-INF/css/global1.css")
+      + ">; rel=preload; as=style", links.get(0));
+
+    // standard ports are left off
+    request.setServerPort(443);
+    links = new ArrayList<String>(interceptor.getPreloadLinks(request,
+      Arrays.asList("good1")));
+    Assert.assertEquals("<//static.example.com/app"
+      + wam.getCachedPath("/WEB-INF/css/global1.css")
+      + ">; rel=preload; as=style", links.get(0));
+
+    Assert.assertEquals("//static.example.com:8080/app",
+      WebAssetRenderer.getUriPrefix("static.example.com", "localhost", 8080,
+        null, "/app"));
+    Assert.assertEquals("https://localhost",
+      WebAssetRenderer.getUriPrefix(null, "localhost", -1, "https:", ""));
+    Assert.assertEquals("/app", WebAssetRenderer.getUriPrefix(null, null,
+      8080, null, "/app"));
+  }
+
+  @Test
+  public void testEarlyHints()
+    throws Exception {
+
+    WebAssetInterceptor interceptor = new WebAssetInterceptor();
+    interceptor.setWebAssetManager(wam);
+    interceptor.setEarlyHints(true);
+    interceptor.setIncludeGlobal(false);
+
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/page");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    HandlerMethod handler = new HandlerMethod(new PageController(), "page");
+    interceptor.preHandle(request, response, handler);
+
+    Assert.assertEquals(WebAssetInterceptor.SC_EARLY_HINTS, response.getStatus());
+    Assert.assertEquals(4, response.getHeaders("Link").size());
+  }
+
+  @Test
+  public void testIdsFollowRequest()
+    throws Exception {
+
+    WebAssetInterceptor interceptor = new WebAssetInterceptor();
+    interceptor.setWebAssetManager(wam);
+    interceptor.setPreloadHeaders(false);
+
+    final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/page");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    HandlerMethod handler = new HandlerMethod(new PageController(), "multiple");
+    interceptor.preHandle(request, response, handler);
+    Assert.assertEquals(Arrays.asList("good1", "good2", "external1"),
+      WebAssetRequest.getIds(request));
+    Assert.assertTrue(response.getHeaders("Link").isEmpty());
+
+    // ids are read from the request on any thread, such as an async dispatch
+    final List<WebAssetIds> seen = new ArrayList<WebAssetIds>();
+    Thread asyncThread = new Thread() {
+      @Override
+      public void run() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(
+          request));
+        try {
+          seen.add(WebAssetRequest.getIds());
+        }
+        finally {
+          RequestContextHolder.resetRequestAttributes();
+        }
+      }
+    };
+    asyncThread.start();
+    asyncThread.join();
+    Assert.assertEquals("good1,good2,external1", seen.get(0).toString());
+    Assert.assertNull(WebAssetRequest.get());
+  }
+
+  @Test
+  public void testParseIds() {
+
+    WebAssetIds ids = WebAssetIds.parse(" a, b ,,a, c ");
+    Assert.assertEquals(Arrays.asList("a", "b", "c"), ids);
+    Assert.assertEquals("a,b,c", ids.toString());
+    Assert.assertSame(WebAssetIds.EMPTY, WebAssetIds.parse(" "));
+    Assert.assertSame(ids, WebAssetIds.of(ids));
+    Assert.assertEquals(ids, WebAssetIds.of("a", "b,c"));
+
+    // thread fallback when no request is bound
+    WebAssetRequest.setup(" x, y ");
+    Assert.assertEquals("x,y", WebAssetRequest.get());
+    WebAssetRequest.cleanup();
+    Assert.assertTrue(WebAssetRequest.getIds().isEmpty());
+  }
+
+}
@@ -2,9 +2,16 @@ package com.denniskubes.webasset;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import junit.framework.Assert;
 
@@ -409,4 +416,596 @@ public class TestWebAssetManager {
     wam.shutdown();
   }
 
+  private WebAssetManager createCssUrlManager(String fullRootPath)
+    throws IOException {
+
+    WebAssetManager wam = new WebAssetManager();
+    wam.setRootDirectory(fullRootPath);
+    wam.setConfigDirectory("/WEB-INF/config");
+    wam.setClearCacheOnShutdown(true);
+
+    Map<String, WebAssetFilter> filters = new HashMap<String, WebAssetFilter>();
+    filters.put("cssUrls", new CssUrlRewriteFilter());
+    Map<String, String[]> typeToFilters = new HashMap<String, String[]>();
+    typeToFilters.put("css", new String[] {"cssUrls"});
+    wam.setFilters(filters);
+    wam.setTypeToFilters(typeToFilters);
+    wam.startup();
+    return wam;
+  }
+
+  @Test
+  public void testCssUrlRewriting()
+    throws Exception {
+
+    Resource rootResource = new ClassPathResource(rootDirectory);
+    String fullRootPath = rootResource.getFile().getPath();
+    WebAssetManager wam = createCssUrlManager(fullRootPath);
+
+    List<Map<String, String>> links = wam.getLinksForId("cssurl1", Locale.US,
+      null);
+    Assert.assertEquals(1, links.size());
+    File cached = new File(fullRootPath, links.get(0).get("path"));
+    String css = FileUtils.readFileToString(cached, "UTF-8");
+
+    String imported = wam.getCachedPath("/WEB-INF/css/imported.css");
+    String pixel = wam.getCachedPath("/WEB-INF/img/pixel.png");
+    String font = wam.getCachedPath("/WEB-INF/fonts/font.woff");
+    Assert.assertTrue(matches(pixel, cacheDirectory + "/img/pixel.cache.", "png"));
+    Assert.assertTrue(css.contains("@import \"" + StringUtils.substringAfterLast(
+      imported, "/") + "\""));
+    Assert.assertTrue(css.contains("url(../img/" + StringUtils.substringAfterLast(
+      pixel, "/") + ")"));
+    Assert.assertTrue(css.contains("url('../fonts/" + StringUtils.substringAfterLast(
+      font, "/") + "?v=1#font')"));
+    Assert.assertTrue(css.contains("url(\"http://localhost/external.png\")"));
+
+    // imported stylesheets are rewritten recursively, root relative paths too
+    String importedCss = FileUtils.readFileToString(new File(fullRootPath,
+      imported), "UTF-8");
+    Assert.assertTrue(importedCss.contains("url(../img/"
+      + StringUtils.substringAfterLast(pixel, "/") + ")"));
+
+    wam.shutdown();
+  }
+
+  @Test
+  public void testCssDependencyReloading()
+    throws Exception {
+
+    Resource rootResource = new ClassPathResource(rootDirectory);
+    String fullRootPath = rootResource.getFile().getPath();
+    WebAssetManager wam = createCssUrlManager(fullRootPath);
+
+    wam.getLinksForId("cssurl1", Locale.US, null);
+    String origCss = wam.getCachedPath("/WEB-INF/css/urls.css");
+    String origImported = wam.getCachedPath("/WEB-INF/css/imported.css");
+
+    // unchanged files are not refiltered
+    wam.getLinksForId("cssurl1", Locale.US, null);
+    Assert.assertEquals(origCss, wam.getCachedPath("/WEB-INF/css/urls.css"));
+
+    // changing an imported file refilters the importing stylesheet
+    File importedFile = new File(fullRootPath, "/WEB-INF/css/imported.css");
+    File savedFile = new File(fullRootPath, "/WEB-INF/css/imported.css.old");
+    FileUtils.copyFile(importedFile, savedFile);
+    try {
+      FileUtils.writeStringToFile(importedFile, "#changed { color: red; }",
+        "UTF-8");
+      importedFile.setLastModified(System.currentTimeMillis() + 1000);
+      wam.getLinksForId("cssurl1", Locale.US, null);
+      String newImported = wam.getCachedPath("/WEB-INF/css/imported.css");
+      String newCss = wam.getCachedPath("/WEB-INF/css/urls.css");
+      Assert.assertFalse(origImported.equals(newImported));
+      Assert.assertFalse(origCss.equals(newCss));
+    }
+    finally {
+      FileUtils.copyFile(savedFile, importedFile);
+      FileUtils.deleteQuietly(savedFile);
+    }
+
+    wam.shutdown();
+  }
+
+  /**
+   * Test filter that prepends a partial and reports it as an input.
+   */
+  private static class BannerFilter
+    implements WebAssetFilter, WebAssetManagerAware {
+
+    private WebAssetManager webAssetManager;
+
+    @Override
+    public File filterAsset(File input, Map<String, String> fieldMap) {
+      try {
+        File banner = new File(webAssetManager.getRootDirectory(),
+          "/WEB-INF/css/partials/banner.txt");
+        webAssetManager.addAssetInput(fieldMap.get("path"), banner);
+        String content = FileUtils.readFileToString(banner, "UTF-8")
+          + FileUtils.readFileToString(input, "UTF-8");
+        FileUtils.writeStringToFile(input, content, "UTF-8");
+        return input;
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public void setWebAssetManager(WebAssetManager webAssetManager) {
+      this.webAssetManager = webAssetManager;
+    }
+  }
+
+  @Test
+  public void testInputChangeRefiltersAffectedAssets()
+    throws Exception {
+
+    Resource rootResource = new ClassPathResource(rootDirectory);
+    String fullRootPath = rootResource.getFile().getPath();
+    WebAssetManager wam = new WebAssetManager();
+    wam.setRootDirectory(fullRootPath);
+    wam.setConfigDirectory("/WEB-INF/config");
+    wam.setClearCacheOnShutdown(true);
+    wam.setReloadCheckInterval(0);
+
+    Map<String, WebAssetFilter> filters = new HashMap<String, WebAssetFilter>();
+    filters.put("banner", new BannerFilter());
+    Map<String, String[]> typeToFilters = new HashMap<String, String[]>();
+    typeToFilters.put("css", new String[] {"banner"});
+    wam.setFilters(filters);
+    wam.setTypeToFilters(typeToFilters);
+    wam.startup();
+
+    wam.getLinksForId("good1", Locale.US, null);
+    wam.getScriptsForId("good1", Locale.US, null);
+    String origCss = wam.getCachedPath("/WEB-INF/css/global3.css");
+    String origJs = wam.getCachedPath("/WEB-INF/js/global3.js");
+
+    File banner = new File(fullRootPath, "/WEB-INF/css/partials/banner.txt");
+    Assert.assertEquals(2, wam.getAssetsForInput(banner).size());
+    Assert.assertEquals(0, wam.refilterChangedInputs());
+
+    File savedBanner = new File(fullRootPath, "/WEB-INF/css/partials/banner.old");
+    FileUtils.copyFile(banner, savedBanner);
+    try {
+
+      // only the two stylesheets that read the partial are refiltered
+      FileUtils.writeStringToFile(banner, "/* changed */", "UTF-8");
+      banner.setLastModified(System.currentTimeMillis() + 2000);
+      Assert.assertEquals(2, wam.refilterChangedInputs());
+      Assert.assertFalse(origCss.equals(wam.getCachedPath("/WEB-INF/css/global3.css")));
+      Assert.assertEquals(origJs, wam.getCachedPath("/WEB-INF/js/global3.js"));
+      Assert.assertEquals(0, wam.refilterChangedInputs());
+    }
+    finally {
+      FileUtils.copyFile(savedBanner, banner);
+      FileUtils.deleteQuietly(savedBanner);
+    }
+
+    wam.shutdown();
+  }
+
+  @Test
+  public void testIdenticalContentDeduplicated()
+    throws Exception {
+
+    Resource rootResource = new ClassPathResource(rootDirectory);
+    String fullRootPath = rootResource.getFile().getPath();
+    WebAssetManager wam = new WebAssetManager();
+    wam.setRootDirectory(fullRootPath);
+    wam.setConfigDirectory("/WEB-INF/config");
+    wam.setClearCacheOnShutdown(true);
+    wam.startup();
+
+    String original = wam.cacheAsset("/WEB-INF/js/global1.js");
+    String copy = wam.cacheAsset("/WEB-INF/js/vendor/global1.js");
+    Assert.assertNotNull(original);
+    Assert.assertEquals(original, copy);
+    Assert.assertFalse(new File(fullRootPath, cacheDirectory
+      + "/js/vendor").exists());
+
+    Map<String, String> mappings = wam.getAssetPathMappings();
+    Assert.assertEquals(mappings.get("/WEB-INF/js/global1.js"),
+      mappings.get("/WEB-INF/js/vendor/global1.js"));
+    List<String> duplicates = wam.getDuplicateAssets().get(original);
+    Assert.assertNotNull(duplicates);
+    Assert.assertTrue(duplicates.contains("/WEB-INF/js/global1.js"));
+    Assert.assertTrue(duplicates.contains("/WEB-INF/js/vendor/global1.js"));
+
+    wam.shutdown();
+  }
+
+  @Test
+  public void testResourceHints()
+    throws Exception {
+
+    Resource rootResource = new ClassPathResource(rootDirectory);
+    String fullRootPath = rootResource.getFile().getPath();
+    WebAssetManager wam = new WebAssetManager();
+    wam.setRootDirectory(fullRootPath);
+    wam.setConfigDirectory("/WEB-INF/config");
+    wam.setClearCacheOnShutdown(true);
+    wam.setCaching(true);
+    wam.startup();
+
+    Set<String> origins = wam.getOriginsForId("hints1");
+    Assert.assertEquals(2, origins.size());
+    Assert.assertTrue(origins.contains("//fonts.example.com"));
+    Assert.assertTrue(origins.contains("https://cdn.example.com"));
+    Assert.assertTrue(wam.getOriginsForId(WebAssetConstants.GLOBAL).isEmpty());
+    Assert.assertTrue(wam.getOriginsForId("external1").contains(
+      "http://localhost"));
+
+    List<Map<String, String>> hints = wam.getHintsForId("hints1", Locale.US,
+      null);
+    Assert.assertEquals(5, hints.size());
+    Assert.assertEquals("preconnect", hints.get(0).get("rel"));
+    Assert.assertEquals("//fonts.example.com", hints.get(0).get("path"));
+    Assert.assertEquals("dns-prefetch", hints.get(1).get("rel"));
+    Assert.assertEquals("https://cdn.example.com", hints.get(3).get("path"));
+    Assert.assertEquals("modulepreload", hints.get(4).get("rel"));
+    Assert.assertEquals(wam.getCachedPath("/WEB-INF/js/global2.js"),
+      hints.get(4).get("path"));
+    Assert.assertSame(hints, wam.getHintsForId("hints1", Locale.US, null));
+    Assert.assertTrue(wam.getGlobalHints(Locale.US).isEmpty());
+
+    wam.shutdown();
+  }
+
+  @Test
+  public void testInlineContent()
+    throws Exception {
+
+    Resource rootResource = new ClassPathResource(rootDirectory);
+    String fullRootPath = rootResource.getFile().getPath();
+    WebAssetManager wam = new WebAssetManager();
+    wam.setRootDirectory(fullRootPath);
+    wam.setConfigDirectory("/WEB-INF/config");
+    wam.setClearCacheOnShutdown(true);
+    wam.setReloadCheckInterval(0);
+    wam.startup();
+
+    File cssFile = new File(fullRootPath, "/WEB-INF/css/global1.css");
+    String css = FileUtils.readFileToString(cssFile, "UTF-8");
+    String cssPath = wam.cacheAsset("/WEB-INF/css/global1.css");
+    Assert.assertEquals(css, wam.getInlineContent(cssPath, 1024));
+    Assert.assertNull(wam.getInlineContent(cssPath, css.length() - 1));
+
+    // relative references and external paths are never inlined
+    String urlsPath = wam.cacheAsset("/WEB-INF/css/urls.css");
+    Assert.assertNull(wam.getInlineContent(urlsPath, 1024 * 1024));
+    Assert.assertNull(wam.getInlineContent("//localhost/script1.js", 1024));
+    Assert.assertNull(wam.getInlineContent("/WEB-INF/css/global1.css", 1024));
+
+    // a changed file gets a new cached path and new inline content
+    File savedCss = new File(fullRootPath, "/WEB-INF/css/global1.old");
+    FileUtils.copyFile(cssFile, savedCss);
+    try {
+      FileUtils.writeStringToFile(cssFile, "#changed { color: blue; }", "UTF-8");
+      cssFile.setLastModified(System.currentTimeMillis() + 2000);
+      String changedPath = wam.cacheAsset("/WEB-INF/css/global1.css");
+      Assert.assertFalse(cssPath.equals(changedPath));
+      Assert.assertEquals("#changed { color: blue; }",
+        wam.getInlineContent(changedPath, 1024));
+    }
+    finally {
+      FileUtils.copyFile(savedCss, cssFile);
+      FileUtils.deleteQuietly(savedCss);
+    }
+
+    wam.shutdown();
+  }
+
+  @Test
+  public void testMergedAssetLists()
+    throws Exception {
+
+    Resource rootResource = new ClassPathResource(rootDirectory);
+    String fullRootPath = rootResource.getFile().getPath();
+    WebAssetManager wam = new WebAssetManager();
+    wam.setRootDirectory(fullRootPath);
+    wam.setConfigDirectory("/WEB-INF/config");
+    wam.setClearCacheOnShutdown(true);
+    wam.setCaching(true);
+    wam.startup();
+
+    // good1 and good2 share their scripts, each path is listed once
+    List<String> ids = Arrays.asList("good1", "good2");
+    List<Map<String, String>> scripts = wam.getScripts(ids, Locale.US, null,
+      true);
+    Assert.assertEquals(3, scripts.size());
+    Assert.assertEquals(wam.getCachedPath("/WEB-INF/js/global1.js"),
+      scripts.get(0).get("path"));
+    Assert.assertEquals(wam.getCachedPath("/WEB-INF/js/global3.js"),
+      scripts.get(2).get("path"));
+    Assert.assertSame(scripts, wam.getScripts(ids, Locale.US, null, true));
+
+    List<Map<String, String>> links = wam.getLinks(ids, Locale.US, null, false);
+    Assert.assertEquals(2, links.size());
+    Assert.assertEquals(wam.getCachedPath("/WEB-INF/css/global2.css"),
+      links.get(0).get("path"));
+
+    // external paths are deduplicated by url
+    List<Map<String, String>> external = wam.getScripts(Arrays.asList(
+      "external1", "external1"), Locale.US, null, false);
+    Assert.assertEquals(2, external.size());
+
+    wam.shutdown();
+  }
+
+  @Test
+  public void testParallelConfigLoading()
+    throws Exception {
+
+    File root = Files.createTempDirectory("webasset").toFile();
+    WebAssetManager wam = new WebAssetManager();
+    try {
+      File configRoot = new File(root, "/WEB-INF/config");
+      FileUtils.writeStringToFile(new File(configRoot, "global.waf"),
+        "{\"global\": true, \"title\": \"Global\"}", StandardCharsets.UTF_8);
+      for (int i = 0; i < 20; i++) {
+        FileUtils.writeStringToFile(new File(configRoot, "page" + i + ".waf"),
+          "{\"ids\": [\"page" + i + "\"], \"title\": \"Page " + i + "\"}",
+          StandardCharsets.UTF_8);
+      }
+      FileUtils.writeStringToFile(new File(configRoot, "a/shared.waf"),
+        "{\"ids\": [\"shared\"], \"title\": \"First\"}", StandardCharsets.UTF_8);
+      FileUtils.writeStringToFile(new File(configRoot, "b/shared.waf"),
+        "{\"ids\": [\"shared\"], \"title\": \"Second\"}",
+        StandardCharsets.UTF_8);
+      FileUtils.writeStringToFile(new File(configRoot, "broken.waf"),
+        "{\"title\": \"No ids\"}", StandardCharsets.UTF_8);
+
+      wam.setRootDirectory(root.getPath());
+      wam.setConfigDirectory("/WEB-INF/config");
+      wam.setConfigLoadThreads(4);
+      wam.startup();
+
+      Assert.assertEquals("Global", wam.getGlobalTitle(Locale.US));
+      Assert.assertEquals("Page 7", wam.getTitleForId("page7", Locale.US, null));
+
+      // the file last in path order wins a collision, whatever the timing
+      Assert.assertEquals("Second", wam.getTitleForId("shared", Locale.US, null));
+      List<String> sharedFiles = wam.getIdCollisions().get("shared");
+      Assert.assertEquals(2, sharedFiles.size());
+      Assert.assertTrue(sharedFiles.get(0).endsWith("shared.waf"));
+      Assert.assertTrue(sharedFiles.get(0).compareTo(sharedFiles.get(1)) < 0);
+
+      // failures are reported instead of stopping startup
+      Assert.assertEquals(1, wam.getConfigLoadErrors().size());
+      Assert.assertTrue(wam.getConfigLoadErrors().keySet().iterator().next().endsWith(
+        "broken.waf"));
+    }
+    finally {
+      wam.shutdown();
+      FileUtils.deleteQuietly(root);
+    }
+  }
+
+  @Test
+  public void testLazyConfigs()
+    throws Exception {
+
+    File root = Files.createTempDirectory("webasset").toFile();
+    WebAssetManager wam = new WebAssetManager();
+    try {
+      File configRoot = new File(root, "/WEB-INF/config");
+      FileUtils.writeStringToFile(new File(configRoot, "global.waf"),
+        "{\"title\": \"Global\", \"global\": true}", StandardCharsets.UTF_8);
+      for (int i = 0; i < 5; i++) {
+        FileUtils.writeStringToFile(new File(configRoot, "page" + i + ".waf"),
+          "{\"title\": \"Page " + i + "\", \"ids\": [\"page" + i + "\"]}",
+          StandardCharsets.UTF_8);
+      }
+      FileUtils.writeStringToFile(new File(configRoot, "yaml.waf"),
+        "---\nids:\n  - yaml1\ntitle: Yaml\n", StandardCharsets.UTF_8);
+
+      wam.setRootDirectory(root.getPath());
+      wam.setConfigDirectory("/WEB-INF/config");
+      wam.setLazyConfigs(true);
+      wam.setConfigIndexFile("index/configs.properties");
+      wam.startup();
+
+      Assert.assertEquals("Global", wam.getGlobalTitle(Locale.US));
+      Assert.assertTrue(wam.getConfigIds().containsAll(Arrays.asList("page0",
+        "page4", "yaml1")));
+      Assert.assertTrue(new File(root, "index/configs.properties").exists());
+
+      // page configs are only parsed on first use
+      FileUtils.writeStringToFile(new File(configRoot, "page2.waf"), "{bad",
+        StandardCharsets.UTF_8);
+      Assert.assertNull(wam.getConfigForId("page2"));
+      Assert.assertEquals("Page 1", wam.getTitleForId("page1", Locale.US, null));
+      Assert.assertEquals("Yaml", wam.getTitleForId("yaml1", Locale.US, null));
+
+      // idle configs are released and parsed again when used
+      WebAssetConfig page1 = wam.getConfigForId("page1");
+      Assert.assertSame(page1, wam.getConfigForId("page1"));
+      wam.setIdleConfigTimeout(0);
+      Thread.sleep(5);
+      wam.releaseIdleConfigs();
+      Assert.assertNotSame(page1, wam.getConfigForId("page1"));
+
+      // unchanged files are indexed from the persisted index
+      File page3 = new File(configRoot, "page3.waf");
+      long lastModified = page3.lastModified();
+      FileUtils.writeStringToFile(page3, "{\"ids\": [\"renamed\"]}",
+        StandardCharsets.UTF_8);
+      page3.setLastModified(lastModified);
+      wam.restart();
+      Assert.assertTrue(wam.getConfigIds().contains("page3"));
+      Assert.assertFalse(wam.getConfigIds().contains("renamed"));
+    }
+    finally {
+      wam.shutdown();
+      FileUtils.deleteQuietly(root);
+    }
+  }
+
+  @Test
+  public void testLazyConfigErrors()
+    throws Exception {
+
+    File root = Files.createTempDirectory("webasset").toFile();
+    WebAssetManager wam = new WebAssetManager();
+    try {
+      File configRoot = new File(root, "/WEB-INF/config");
+      FileUtils.writeStringToFile(new File(configRoot, "home.waf"),
+        "{\"title\": \"Home\", \"ids\": \"home\"}", StandardCharsets.UTF_8);
+      FileUtils.writeStringToFile(new File(configRoot, "blank.waf"),
+        "{\"ids\": [\"\", \"blank1\", 1]}", StandardCharsets.UTF_8);
+      File broken = new File(configRoot, "broken.waf");
+      FileUtils.writeStringToFile(broken, "{\"ids\": ", StandardCharsets.UTF_8);
+
+      wam.setRootDirectory(root.getPath());
+      wam.setConfigDirectory("/WEB-INF/config");
+      wam.setLazyConfigs(true);
+      wam.setReloadCheckInterval(50);
+      wam.startup();
+
+      // ids are read the same as by the full parse
+      Assert.assertEquals("Home", wam.getTitleForId("home", Locale.US, null));
+      Assert.assertEquals(new HashSet<String>(Arrays.asList("home", "blank1")),
+        wam.getConfigIds());
+
+      // broken files are monitored and loaded once fixed
+      FileUtils.writeStringToFile(broken, "{\"title\": \"Fixed\", "
+        + "\"ids\": [\"fixed\"]}", StandardCharsets.UTF_8);
+      broken.setLastModified(System.currentTimeMillis() + 1000);
+      for (int i = 0; i < 100 && !wam.getConfigIds().contains("fixed"); i++) {
+        Thread.sleep(50);
+      }
+      Assert.assertEquals("Fixed", wam.getTitleForId("fixed", Locale.US, null));
+    }
+    finally {
+      wam.shutdown();
+      FileUtils.deleteQuietly(root);
+    }
+  }
+
+  @Test
+  public void testConfigSnapshot()
+    throws Exception {
+
+    File root = Files.createTempDirectory("webasset").toFile();
+    WebAssetManager wam = new WebAssetManager();
+    try {
+      File configRoot = new File(root, "/WEB-INF/config");
+      FileUtils.writeStringToFile(new File(configRoot, "global.waf"),
+        "{\"global\": true, \"aliases\": {\"cdn\": \"https://cdn.example.com\"}}",
+        StandardCharsets.UTF_8);
+      File page1 = new File(configRoot, "page1.waf");
+      FileUtils.writeStringToFile(page1, "{\"title\": \"Page 1\", \"ids\": "
+        + "[\"page1\"], \"scripts\": [\"${cdn}/page1.js\"]}",
+        StandardCharsets.UTF_8);
+
+      wam.setRootDirectory(root.getPath());
+      wam.setConfigDirectory("/WEB-INF/config");
+      wam.setConfigSnapshotFile("snapshot/configs.bin");
+      wam.startup();
+      WebAssetConfig parsed = wam.getConfigForId("page1");
+      Assert.assertTrue(new File(root, "snapshot/configs.bin").exists());
+
+      // unchanged files are loaded from the snapshot, not parsed
+      long lastModified = page1.lastModified();
+      String content = FileUtils.readFileToString(page1,
+        StandardCharsets.UTF_8);
+      FileUtils.writeStringToFile(page1, content.replace("Page 1", "Page X"),
+        StandardCharsets.UTF_8);
+      page1.setLastModified(lastModified);
+      wam.restart();
+      Assert.assertEquals(parsed, wam.getConfigForId("page1"));
+      Assert.assertEquals("Page 1", wam.getTitleForId("page1", Locale.US, null));
+      Assert.assertEquals(Collections.singleton("https://cdn.example.com"),
+        wam.getOriginsForId("page1"));
+
+      // a changed file rebuilds the snapshot
+      page1.setLastModified(lastModified + 10000);
+      wam.restart();
+      Assert.assertEquals("Page X", wam.getTitleForId("page1", Locale.US, null));
+    }
+    finally {
+      wam.shutdown();
+      FileUtils.deleteQuietly(root);
+    }
+  }
+
+  @Test
+  public void testConfigSegments()
+    throws Exception {
+
+    File root = Files.createTempDirectory("webasset").toFile();
+    WebAssetManager wam = new WebAssetManager();
+    try {
+      FileUtils.writeStringToFile(new File(root, "/WEB-INF/js/section.js"),
+        "var section = 1;", StandardCharsets.UTF_8);
+      FileUtils.writeStringToFile(new File(root, "/WEB-INF/js/page.js"),
+        "var page = 1;", StandardCharsets.UTF_8);
+      File configRoot = new File(root, "/WEB-INF/config");
+      FileUtils.writeStringToFile(new File(configRoot, "section.waf"),
+        "{\"title\": \"Section\", \"ids\": [\"section\"], \"scripts\": "
+          + "[\"/WEB-INF/js/section.js\", \"https://cdn.example.com/lib.js\"]}",
+        StandardCharsets.UTF_8);
+      FileUtils.writeStringToFile(new File(configRoot, "page1.waf"),
+        "{\"ids\": [\"page1\"], \"extends\": \"section\", \"scripts\": "
+          + "[\"/WEB-INF/js/page.js\"]}", StandardCharsets.UTF_8);
+      FileUtils.writeStringToFile(new File(configRoot, "page2.waf"),
+        "---\nids: [page2]\ntitle: Page 2\ninclude: [section, missing]\n",
+        StandardCharsets.UTF_8);
+      FileUtils.writeStringToFile(new File(configRoot, "cycle.waf"),
+        "{\"ids\": [\"cycle1\", \"cycle2\"], \"include\": [\"cycle1\", "
+          + "\"cycle2\"]}", StandardCharsets.UTF_8);
+      FileUtils.writeStringToFile(new File(configRoot, "forms.waf"),
+        "{\"ids\": [\"forms\", \"forms-v2\"], \"scripts\": "
+          + "[\"/WEB-INF/js/section.js\"]}", StandardCharsets.UTF_8);
+      FileUtils.writeStringToFile(new File(configRoot, "page3.waf"),
+        "{\"ids\": [\"page3\"], \"extends\": \"forms\", \"include\": "
+          + "[\"forms-v2\"]}", StandardCharsets.UTF_8);
+
+      wam.setRootDirectory(root.getPath());
+      wam.setConfigDirectory("/WEB-INF/config");
+      wam.setCaching(true);
+      wam.startup();
+
+      // extended assets come first and the title is inherited
+      List<Map<String, String>> page1 = wam.getScriptsForId("page1", Locale.US,
+        null);
+      Assert.assertEquals(3, page1.size());
+      Assert.assertEquals(wam.getCachedPath("/WEB-INF/js/section.js"),
+        page1.get(0).get("path"));
+      Assert.assertEquals(wam.getCachedPath("/WEB-INF/js/page.js"),
+        page1.get(2).get("path"));
+      Assert.assertEquals("Section", wam.getTitleForId("page1", Locale.US,
+        null));
+      Assert.assertEquals(Collections.singleton("https://cdn.example.com"),
+        wam.getOriginsForId("page1"));
+
+      // the resolved section assets are shared, missing includes skipped
+      List<Map<String, String>> page2 = wam.getScriptsForId("page2", Locale.US,
+        null);
+      Assert.assertSame(wam.getScriptsForId("section", Locale.US, null).get(0),
+        page1.get(0));
+      Assert.assertSame(page1.get(0), page2.get(0));
+      Assert.assertEquals(2, page2.size());
+      Assert.assertEquals("Page 2", wam.getTitleForId("page2", Locale.US, null));
+
+      // a config reached through several of its ids is added once
+      Assert.assertEquals(Arrays.asList("forms", "page3"),
+        wam.getSegmentIds("page3"));
+      Assert.assertEquals(1, wam.getScriptsForId("page3", Locale.US,
+        null).size());
+
+      // cycles end, and the segment ids are kept until configs change
+      List<String> cycle = wam.getSegmentIds("cycle1");
+      Assert.assertEquals(Arrays.asList("cycle1"), cycle);
+      Assert.assertSame(cycle, wam.getSegmentIds("cycle1"));
+      Assert.assertTrue(wam.getScriptsForId("cycle1", Locale.US, null).isEmpty());
+    }
+    finally {
+      wam.shutdown();
+      FileUtils.deleteQuietly(root);
+    }
+  }
+
 }
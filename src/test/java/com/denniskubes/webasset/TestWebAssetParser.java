@@ -2,7 +2,9 @@ package com.denniskubes.webasset;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -44,6 +46,134 @@ public class TestWebAssetParser {
     Assert.assertEquals(errorsThrown, 2);
   }
 
+  @Test
+  public void testJsonErrorLocation()
+    throws Exception {
+
+    WebAssetParser parser = new WebAssetParser();
+    Resource badRes = new ClassPathResource(parserFolder + "/bad-json.waf");
+    try {
+      parser.parseConfig(badRes.getFile());
+      Assert.fail("Bad json parsed");
+    }
+    catch (IllegalArgumentException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("line 4, column 6"));
+      Assert.assertTrue(e.getMessage().endsWith(badRes.getFile().getPath()));
+    }
+
+    // values of the wrong type are ignored and not errors
+    JsonWebAssetConfigParser json = new JsonWebAssetConfigParser(
+      "{\"ids\": \"single\", \"title\": 1, \"global\": \"true\", "
+        + "\"scripts\": [\"/a.js\", {\"path\": \"/b.js\", \"defer\": true}, 2], "
+        + "\"meta\": [\"ignored\", {\"name\": \" \"}], \"other\": {\"x\": [1]}}");
+    Assert.assertEquals(Arrays.asList("single"), json.getIds());
+    Assert.assertNull(json.getTitle());
+    Assert.assertFalse(json.isGlobal());
+    Assert.assertEquals(2, json.getScripts().size());
+    Assert.assertEquals("text/javascript", json.getScripts().get(0).get("type"));
+    Assert.assertEquals(1, json.getScripts().get(1).size());
+    Assert.assertTrue(json.getMetas().isEmpty());
+  }
+
+  @Test
+  public void testYamlErrorLocation()
+    throws Exception {
+
+    try {
+      new YamlWebAssetConfigParser("---\nids:\n  - page\nscripts:\n"
+        + "  - /a.js\n  - [/b.js]\n");
+      Assert.fail("Bad yaml parsed");
+    }
+    catch (IllegalArgumentException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("line 6, column 5"));
+    }
+
+    // scalars of any type are strings
+    YamlWebAssetConfigParser yaml = new YamlWebAssetConfigParser("---\n"
+      + "ids: page\nglobal: no\nscripts:\n  - path: /a.js\n    async: true\n");
+    Assert.assertEquals(Arrays.asList("page"), yaml.getIds());
+    Assert.assertFalse(yaml.isGlobal());
+    Assert.assertEquals("true", yaml.getScripts().get(0).get("async"));
+  }
+
+  @Test
+  public void testYamlMergeKeys()
+    throws Exception {
+
+    YamlWebAssetConfigParser yaml = new YamlWebAssetConfigParser("---\n"
+      + "defaults: &base\n  title: Merged\n  ids: [page]\n"
+      + "script: &script\n  type: text/javascript\n  async: ''\n"
+      + "<<: *base\n"
+      + "scripts:\n  - <<: *script\n    path: /js/a.js\n"
+      + "  - <<: *script\n    type: module\n    path: /js/b.js\n"
+      + "meta:\n  - name: robots\n    content:\n");
+    Assert.assertEquals("Merged", yaml.getTitle());
+    Assert.assertEquals(Arrays.asList("page"), yaml.getIds());
+
+    // merged attributes are overridden by explicit ones, blanks are kept
+    Map<String, String> script = yaml.getScripts().get(0);
+    Assert.assertEquals(Arrays.asList("type", "async", "path"),
+      new ArrayList<String>(script.keySet()));
+    Assert.assertEquals("", script.get("async"));
+    Assert.assertEquals("module", yaml.getScripts().get(1).get("type"));
+    Assert.assertEquals("", yaml.getMetas().get(0).get("content"));
+
+    try {
+      new YamlWebAssetConfigParser("---\nids: [page]\nscripts:\n"
+        + "  - <<: [/a.js]\n");
+      Assert.fail("Bad merge parsed");
+    }
+    catch (IllegalArgumentException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("for merging"));
+    }
+  }
+
+  @Test
+  public void testCompactConfig()
+    throws Exception {
+
+    WebAssetParser parser = new WebAssetParser();
+    File json = new ClassPathResource(parserFolder + "/good-json.waf").getFile();
+    File yaml = new ClassPathResource(parserFolder + "/good-yaml.waf").getFile();
+    WebAssetConfig jsonConfig = parser.parseConfig(json);
+    WebAssetConfig yamlConfig = parser.parseConfig(yaml);
+    Assert.assertEquals(jsonConfig, yamlConfig);
+    Assert.assertEquals(jsonConfig.hashCode(), yamlConfig.hashCode());
+
+    // the hash computed when compacted matches an uncompacted copy, and is
+    // recomputed when the config is changed
+    WebAssetConfig copyConfig = new WebAssetConfig();
+    copyConfig.setIds(new ArrayList<String>(jsonConfig.getIds()));
+    copyConfig.setTitle(jsonConfig.getTitle());
+    copyConfig.setMetas(jsonConfig.getMetas());
+    copyConfig.setScripts(jsonConfig.getScripts());
+    copyConfig.setLinks(jsonConfig.getLinks());
+    Assert.assertEquals(jsonConfig, copyConfig);
+    Assert.assertEquals(copyConfig.hashCode(), jsonConfig.hashCode());
+    yamlConfig.setTitle("Changed");
+    copyConfig.setTitle("Changed");
+    Assert.assertEquals(copyConfig.hashCode(), yamlConfig.hashCode());
+
+    // repeated strings are shared between configs
+    Map<String, String> jsonScript = jsonConfig.getScripts().get(0);
+    Map<String, String> yamlScript = yamlConfig.getScripts().get(0);
+    Assert.assertSame(jsonScript.get("path"), yamlScript.get("path"));
+    Assert.assertSame(jsonScript.get("type"), yamlScript.get("type"));
+
+    // attributes are immutable and equal to the same attributes in any map
+    Map<String, String> copy = new LinkedHashMap<String, String>(jsonScript);
+    Assert.assertEquals(copy, jsonScript);
+    Assert.assertEquals(jsonScript, copy);
+    Assert.assertEquals(copy.hashCode(), jsonScript.hashCode());
+    try {
+      jsonScript.put("async", "async");
+      Assert.fail("Attributes changed");
+    }
+    catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
   @Test(expected = IOException.class)
   public void testBlankConfig()
     throws Exception {
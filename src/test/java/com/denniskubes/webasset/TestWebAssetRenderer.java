@@ -0,0 +1,126 @@
+package com.denniskubes.webasset;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.StaticMessageSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+public class TestWebAssetRenderer {
+
+  private String rootDirectory = "/webasset/test-webapp";
+  private WebAssetManager wam;
+
+  @Before
+  public void setUp()
+    throws Exception {
+
+    Resource rootResource = new ClassPathResource(rootDirectory);
+    wam = new WebAssetManager();
+    wam.setRootDirectory(rootResource.getFile().getPath());
+    wam.setConfigDirectory("/WEB-INF/config");
+    wam.setClearCacheOnShutdown(true);
+    wam.setCaching(true);
+    wam.setMessageSource(new StaticMessageSource());
+    wam.startup();
+  }
+
+  @After
+  public void tearDown() {
+    wam.shutdown();
+    WebAssetRequest.cleanup();
+  }
+
+  @Test
+  public void testRenderAndFragmentCache()
+    throws Exception {
+
+    WebAssetRenderer renderer = new WebAssetRenderer(wam);
+    List<String> ids = Arrays.asList("good1");
+    List<String> types = Arrays.asList("links", "scripts");
+
+    // any appendable gets the same html as a writer
+    StringBuilder builder = new StringBuilder();
+    renderer.render(builder, types, ids, Locale.US, null, "/app");
+    StringWriter writer = new StringWriter();
+    renderer.render(writer, types, ids, Locale.US, null, "/app");
+    Assert.assertEquals(builder.toString(), writer.toString());
+    Assert.assertTrue(builder.toString().startsWith(
+      "<link rel=\"stylesheet\" href=\"/app"
+        + wam.getCachedPath("/WEB-INF/css/global1.css") + "\""));
+    Assert.assertTrue(builder.toString().contains(
+      "<script src=\"/app" + wam.getCachedPath("/WEB-INF/js/global3.js")));
+
+    // the fragment is cached until the configs are reloaded
+    Assert.assertNotNull(wam.getRenderedFragment("lg0|en_US|||good1"));
+    wam.restart();
+    Assert.assertNull(wam.getRenderedFragment("lg0|en_US|||good1"));
+  }
+
+  @Test
+  public void testFragmentCacheHosts()
+    throws Exception {
+
+    WebAssetRenderer renderer = new WebAssetRenderer(wam);
+
+    // each host gets its own prefix from one cached fragment
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setServerName("one.example.com");
+    StringBuilder one = new StringBuilder();
+    renderer.render(one, "links", "good1", Locale.US, request);
+    String cachedCss = wam.getCachedPath("/WEB-INF/css/global1.css");
+    Assert.assertTrue(one.toString().contains(
+      "href=\"//one.example.com" + cachedCss + "\""));
+    Assert.assertEquals(1, wam.getRenderedFragmentCount());
+
+    request = new MockHttpServletRequest();
+    request.setServerName("two.example.com");
+    StringBuilder two = new StringBuilder();
+    renderer.render(two, "links", "good1", Locale.US, request);
+    Assert.assertEquals(one.toString().replace("one.example.com",
+      "two.example.com"), two.toString());
+    Assert.assertEquals(1, wam.getRenderedFragmentCount());
+  }
+
+  @Test
+  public void testTemplateEngines()
+    throws Exception {
+
+    WebAssetRequest.setup("good1");
+
+    TemplateEngine engine = new TemplateEngine();
+    engine.setTemplateResolver(new StringTemplateResolver());
+    engine.addDialect(new WebAssetDialect(wam));
+    String html = engine.process("<head><webasset:assets types=\"links\" "
+      + "include-global=\"true\" /></head>", new Context(Locale.US));
+    String cachedCss = wam.getCachedPath("/WEB-INF/css/global1.css");
+    Assert.assertTrue(html.contains("href=\"" + cachedCss + "\""));
+    Assert.assertFalse(html.contains("webasset:assets"));
+
+    Configuration config = new Configuration(Configuration.VERSION_2_3_31);
+    config.setSharedVariable("webasset", new WebAssetDirective(wam));
+    Template template = new Template("head", new StringReader(
+      "<head><@webasset types=\"links\" includeGlobal=true /></head>"), config);
+    StringWriter out = new StringWriter();
+    template.process(new HashMap<String, Object>(), out);
+    Assert.assertEquals(html, out.toString());
+  }
+
+}
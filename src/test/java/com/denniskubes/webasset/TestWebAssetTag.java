@@ -0,0 +1,177 @@
+package com.denniskubes.webasset;
+
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.RequestDispatcher;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.StaticMessageSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockPageContext;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+
+public class TestWebAssetTag {
+
+  private String rootDirectory = "/webasset/test-webapp";
+  private WebAssetManager wam;
+  private MockServletContext servletContext;
+
+  @Before
+  public void setUp()
+    throws Exception {
+
+    Resource rootResource = new ClassPathResource(rootDirectory);
+    wam = new WebAssetManager();
+    wam.setRootDirectory(rootResource.getFile().getPath());
+    wam.setConfigDirectory("/WEB-INF/config");
+    wam.setClearCacheOnShutdown(true);
+    wam.setMessageSource(new StaticMessageSource());
+    wam.startup();
+
+    servletContext = new MockServletContext();
+    StaticWebApplicationContext context = new StaticWebApplicationContext();
+    context.setServletContext(servletContext);
+    context.getBeanFactory().registerSingleton("webAssetManager", wam);
+    context.refresh();
+    servletContext.setAttribute(
+      WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE, context);
+  }
+
+  @After
+  public void tearDown() {
+    wam.shutdown();
+  }
+
+  private MockPageContext createPageContext(MockHttpServletRequest request,
+    MockHttpServletResponse response) {
+    return new MockPageContext(servletContext, request, response);
+  }
+
+  private WebAssetTag createTag(MockPageContext pageContext, String types) {
+    WebAssetTag tag = new WebAssetTag();
+    tag.setPageContext(pageContext);
+    tag.setTypes(types);
+    tag.setIds("good1");
+    tag.setIncludeGlobal(true);
+    tag.setIncludeHost(false);
+    return tag;
+  }
+
+  @Test
+  public void testFlushHead()
+    throws Exception {
+
+    MockHttpServletRequest request = new MockHttpServletRequest(servletContext);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    MockPageContext pageContext = createPageContext(request, response);
+    WebAssetTag tag = createTag(pageContext, "title,links");
+    tag.setFlush(true);
+    tag.doStartTag();
+
+    Assert.assertTrue(response.isCommitted());
+    Assert.assertTrue(response.getContentAsString().contains(
+      wam.getCachedPath("/WEB-INF/css/global3.css")));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testRequestAttributes()
+    throws Exception {
+
+    // written assets are left in the request as modifiable ordered sets
+    MockHttpServletRequest request = new MockHttpServletRequest(servletContext);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    createTag(createPageContext(request, response), "links,scripts")
+      .doStartTag();
+
+    Object links = request.getAttribute(WebAssetConstants.LINKS);
+    Object scripts = request.getAttribute(WebAssetConstants.SCRIPTS);
+    Assert.assertTrue(links instanceof LinkedHashSet);
+    Assert.assertTrue(scripts instanceof LinkedHashSet);
+    Set<Map<String, String>> scriptSet = (Set<Map<String, String>>)scripts;
+    Assert.assertEquals(wam.getCachedPath("/WEB-INF/js/global1.js"),
+      scriptSet.iterator().next().get("path"));
+    Assert.assertTrue(scriptSet.add(new LinkedHashMap<String, String>()));
+  }
+
+  @Test
+  public void testFlushSafeguards()
+    throws Exception {
+
+    // not for scripts only
+    MockHttpServletRequest request = new MockHttpServletRequest(servletContext);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    WebAssetTag tag = createTag(createPageContext(request, response), "scripts");
+    tag.setFlush(true);
+    tag.doStartTag();
+    Assert.assertFalse(response.isCommitted());
+
+    // not when the request opts out
+    request = new MockHttpServletRequest(servletContext);
+    request.setAttribute(WebAssetConstants.NO_FLUSH, Boolean.TRUE);
+    response = new MockHttpServletResponse();
+    tag = createTag(createPageContext(request, response), "links");
+    tag.setFlush(true);
+    tag.doStartTag();
+    Assert.assertFalse(response.isCommitted());
+
+    // not for includes or error responses
+    request = new MockHttpServletRequest(servletContext);
+    request.setAttribute(RequestDispatcher.INCLUDE_REQUEST_URI, "/include");
+    response = new MockHttpServletResponse();
+    tag = createTag(createPageContext(request, response), "links");
+    tag.setFlush(true);
+    tag.doStartTag();
+    Assert.assertFalse(response.isCommitted());
+
+    request = new MockHttpServletRequest(servletContext);
+    response = new MockHttpServletResponse();
+    response.setStatus(404);
+    tag = createTag(createPageContext(request, response), "links");
+    tag.setFlush(true);
+    tag.doStartTag();
+    Assert.assertFalse(response.isCommitted());
+  }
+
+  @Test
+  public void testDirectRendering()
+    throws Exception {
+
+    Map<String, String> scriptAttrs = new LinkedHashMap<String, String>();
+    scriptAttrs.put("type", "text/javascript");
+    scriptAttrs.put("path", "/cache/a.js?x=1&y=2");
+    scriptAttrs.put("async", "");
+    StringWriter out = new StringWriter();
+    WebAssetRenderer.writeScriptTag(out, "//host/ctx", scriptAttrs, null);
+    Assert.assertEquals("<script src=\"//host/ctx/cache/a.js?x=1&amp;y=2\" "
+      + "type=\"text/javascript\"></script>\n", out.toString());
+
+    Map<String, String> linkAttrs = new LinkedHashMap<String, String>();
+    linkAttrs.put("path", "https://cdn/a.css");
+    linkAttrs.put("title", "A \"quoted\" <title> &amp; more");
+    out = new StringWriter();
+    WebAssetRenderer.writeLinkTag(out, "//host/ctx", linkAttrs);
+    Assert.assertEquals("<link rel=\"stylesheet\" href=\"https://cdn/a.css\" "
+      + "title=\"A &quot;quoted&quot; &lt;title&gt; &amp; more\" />\n",
+      out.toString());
+
+    Assert.assertTrue(HtmlAttributeWriter.isCharacterReference("&#x27;", 0));
+    Assert.assertTrue(HtmlAttributeWriter.isCharacterReference("&#39;", 0));
+    Assert.assertFalse(HtmlAttributeWriter.isCharacterReference("& b;", 0));
+    Assert.assertFalse(HtmlAttributeWriter.isCharacterReference("&amp", 0));
+  }
+
+}
@@ -0,0 +1,130 @@
+package com.denniskubes.webasset;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares parsing a directory of yaml configs against the same configs in
+ * json through the WebAssetParser, as at startup. Not run by the build, run
+ * the main method from the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebAssetConfigDirectoryBenchmark {
+
+  private final static int CONFIGS = 100;
+  private final static int ASSETS = 20;
+
+  private File root;
+  private List<File> jsonConfigs = new ArrayList<File>();
+  private List<File> yamlConfigs = new ArrayList<File>();
+  private WebAssetParser parser = new WebAssetParser();
+
+  @Setup
+  public void setUp()
+    throws IOException {
+
+    root = Files.createTempDirectory("webasset-bench").toFile();
+    for (int i = 0; i < CONFIGS; i++) {
+
+      StringBuilder json = new StringBuilder();
+      StringBuilder yaml = new StringBuilder();
+      json.append("{\"ids\": [\"page").append(i).append("\"], \"title\": \"Page ").append(
+        i).append("\", \"meta\": [");
+      yaml.append("---\nids:\n  - page").append(i).append("\ntitle: Page ").append(
+        i).append("\nmeta:\n");
+      for (int j = 0; j < ASSETS; j++) {
+        json.append(j > 0 ? "," : "").append("{\"name\": \"meta").append(j).append(
+          "\", \"content\": \"content ").append(j).append("\"}");
+        yaml.append("  - name: meta").append(j).append("\n    content: content ").append(
+          j).append("\n");
+      }
+      json.append("], \"scripts\": [");
+      yaml.append("scripts:\n");
+      for (int j = 0; j < ASSETS; j++) {
+        json.append(j > 0 ? "," : "").append("\"/WEB-INF/js/script").append(j).append(
+          ".js\"");
+        yaml.append("  - /WEB-INF/js/script").append(j).append(".js\n");
+      }
+      json.append("], \"links\": [");
+      yaml.append("links:\n");
+      for (int j = 0; j < ASSETS; j++) {
+        json.append(j > 0 ? "," : "").append("{\"path\": \"/WEB-INF/css/style").append(
+          j).append(".css\", \"media\": \"print\"}");
+        yaml.append("  - path: /WEB-INF/css/style").append(j).append(
+          ".css\n    media: print\n");
+      }
+      json.append("]}");
+
+      File jsonConfig = new File(root, "json/page" + i + ".waf");
+      File yamlConfig = new File(root, "yaml/page" + i + ".waf");
+      FileUtils.writeStringToFile(jsonConfig, json.toString(),
+        StandardCharsets.UTF_8);
+      FileUtils.writeStringToFile(yamlConfig, yaml.toString(),
+        StandardCharsets.UTF_8);
+      jsonConfigs.add(jsonConfig);
+      yamlConfigs.add(yamlConfig);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    FileUtils.deleteQuietly(root);
+  }
+
+  private int parseAll(List<File> configs)
+    throws IOException {
+    int assets = 0;
+    for (File config : configs) {
+      assets += parser.parseConfig(config).getScripts().size();
+    }
+    return assets;
+  }
+
+  @Benchmark
+  public int json()
+    throws IOException {
+    return parseAll(jsonConfigs);
+  }
+
+  @Benchmark
+  public int yaml()
+    throws IOException {
+    return parseAll(yamlConfigs);
+  }
+
+  public static void main(String[] args)
+    throws RunnerException {
+
+    Options options = new OptionsBuilder().include(
+      WebAssetConfigDirectoryBenchmark.class.getSimpleName()).build();
+    new Runner(options).run();
+  }
+
+}
@@ -0,0 +1,111 @@
+package com.denniskubes.webasset;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Measures the heap retained by a WebAssetManager holding a large synthetic
+ * set of configs, as loaded with compact attributes, and again after the
+ * configs are swapped back to the LinkedHashMap form they used to be kept in.
+ * Not run by the build, run the main method from the test classpath with a
+ * fixed heap, such as -Xms1g -Xmx1g, for stable numbers.
+ */
+public class WebAssetConfigHeapBenchmark {
+
+  private final static int CONFIGS = 5000;
+  private final static int ASSETS = 10;
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static List<Map<String, String>> expand(
+    List<Map<String, String>> assets) {
+    List<Map<String, String>> expanded = new ArrayList<Map<String, String>>();
+    for (Map<String, String> attributes : assets) {
+      Map<String, String> copy = new LinkedHashMap<String, String>();
+      for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+        copy.put(new String(attribute.getKey()), new String(attribute.getValue()));
+      }
+      expanded.add(copy);
+    }
+    return expanded;
+  }
+
+  private static void writeConfigs(File configRoot)
+    throws IOException {
+
+    FileUtils.writeStringToFile(new File(configRoot, "global.waf"),
+      "{\"global\": true}", StandardCharsets.UTF_8);
+    for (int i = 0; i < CONFIGS; i++) {
+      StringBuilder json = new StringBuilder();
+      json.append("{\"ids\": [\"page").append(i).append("\"], \"meta\": [");
+      for (int j = 0; j < ASSETS; j++) {
+        json.append(j > 0 ? "," : "").append("{\"name\": \"viewport\", ").append(
+          "\"content\": \"width=device-width\"}");
+      }
+      json.append("], \"scripts\": [");
+      for (int j = 0; j < ASSETS; j++) {
+        json.append(j > 0 ? "," : "").append("\"/WEB-INF/js/lib").append(j).append(
+          ".js\"");
+      }
+      json.append("], \"links\": [");
+      for (int j = 0; j < ASSETS; j++) {
+        json.append(j > 0 ? "," : "").append("{\"path\": \"/WEB-INF/css/page").append(
+          i).append("-").append(j).append(".css\", \"media\": \"screen\"}");
+      }
+      json.append("]}");
+      FileUtils.writeStringToFile(new File(configRoot, "page" + i + ".waf"),
+        json.toString(), StandardCharsets.UTF_8);
+    }
+  }
+
+  public static void main(String[] args)
+    throws IOException {
+
+    File root = Files.createTempDirectory("webasset-heap").toFile();
+    try {
+      writeConfigs(new File(root, "/WEB-INF/config"));
+
+      long base = usedHeap();
+      WebAssetManager wam = new WebAssetManager();
+      wam.setRootDirectory(root.getPath());
+      wam.setConfigDirectory("/WEB-INF/config");
+      wam.setReloadCheckInterval(0);
+      wam.startup();
+      long compact = usedHeap() - base;
+
+      // swap every loaded config back to a map and strings of its own per
+      // asset, as each parse used to create
+      for (int i = 0; i < CONFIGS; i++) {
+        WebAssetConfig config = wam.getConfigForId("page" + i);
+        config.setIds(new ArrayList<String>(config.getIds()));
+        config.setMetas(expand(config.getMetas()));
+        config.setScripts(expand(config.getScripts()));
+        config.setLinks(expand(config.getLinks()));
+      }
+      long expanded = usedHeap() - base;
+
+      System.out.println(String.format(Locale.US, "%d configs retained by the "
+        + "manager, compact: %,d bytes, expanded: %,d bytes", CONFIGS, compact,
+        expanded));
+      wam.shutdown();
+    }
+    finally {
+      FileUtils.deleteQuietly(root);
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package com.denniskubes.webasset;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.denniskubes.utils.JSON;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+/**
+ * Compares parsing a large synthetic json config into a JsonNode tree and
+ * walking it once per section, the way JsonWebAssetConfigParser used to,
+ * against the single pass streaming parser. Not run by the build, run the
+ * main method from the test classpath, adding -prof gc to the JMH options to
+ * see allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebAssetParserBenchmark {
+
+  @Param({"10", "1000"})
+  private int assets;
+
+  private byte[] config;
+
+  @Setup
+  public void setUp() {
+
+    StringBuilder json = new StringBuilder();
+    json.append("{\"ids\": [\"page\", \"page2\"], \"title\": \"${page.title}\",");
+    json.append("\"meta\": [");
+    for (int i = 0; i < assets; i++) {
+      json.append(i > 0 ? "," : "").append("{\"name\": \"meta").append(i).append(
+        "\", \"content\": \"content of meta ").append(i).append("\"}");
+    }
+    json.append("], \"scripts\": [");
+    for (int i = 0; i < assets; i++) {
+      json.append(i > 0 ? "," : "").append(i % 2 == 0
+        ? "\"/WEB-INF/js/script" + i + ".js\""
+        : "{\"path\": \"/WEB-INF/js/script" + i + ".js\", \"async\": \"async\"}");
+    }
+    json.append("], \"links\": [");
+    for (int i = 0; i < assets; i++) {
+      json.append(i > 0 ? "," : "").append(i % 2 == 0
+        ? "\"/WEB-INF/css/style" + i + ".css\""
+        : "{\"path\": \"/WEB-INF/css/style" + i + ".css\", \"media\": \"print\"}");
+    }
+    json.append("]}");
+    config = json.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static List<Map<String, String>> legacyAssets(JsonNode root,
+    String field, String... defaults) {
+
+    List<Map<String, String>> assets = new ArrayList<Map<String, String>>();
+    if (root.has(field)) {
+      for (JsonNode asset : root.get(field)) {
+        Map<String, String> attributes = null;
+        if (asset instanceof TextNode && defaults.length > 0) {
+          attributes = new LinkedHashMap<String, String>();
+          for (int i = 0; i < defaults.length; i += 2) {
+            attributes.put(defaults[i], defaults[i + 1]);
+          }
+          attributes.put("path", asset.asText());
+        }
+        else {
+          attributes = JSON.getAttributes(asset);
+        }
+        if (attributes.size() > 0) {
+          assets.add(attributes);
+        }
+      }
+    }
+    return assets;
+  }
+
+  @Benchmark
+  public int legacy() {
+
+    JsonNode root = JSON.parse(new String(config, StandardCharsets.UTF_8));
+    int parsed = JSON.getStrings(root.get("ids")).size();
+    parsed += JSON.getAttributes(root.get("aliases")).size();
+    parsed += legacyAssets(root, "meta").size();
+    parsed += legacyAssets(root, "scripts", "type", "text/javascript").size();
+    parsed += legacyAssets(root, "links", "rel", "stylesheet", "type",
+      "text/css").size();
+    return parsed + JSON.getString(root, "title").length();
+  }
+
+  @Benchmark
+  public int streaming()
+    throws IOException {
+
+    JsonWebAssetConfigParser parser = new JsonWebAssetConfigParser(
+      new ByteArrayInputStream(config));
+    int parsed = parser.getIds().size();
+    parsed += parser.getAliases().size();
+    parsed += parser.getMetas().size();
+    parsed += parser.getScripts().size();
+    parsed += parser.getLinks().size();
+    return parsed + parser.getTitle().length();
+  }
+
+  public static void main(String[] args)
+    throws RunnerException {
+
+    Options options = new OptionsBuilder().include(
+      WebAssetParserBenchmark.class.getSimpleName()).build();
+    new Runner(options).run();
+  }
+
+}
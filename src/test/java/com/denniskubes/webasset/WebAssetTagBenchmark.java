@@ -0,0 +1,224 @@
+package com.denniskubes.webasset;
+
+import java.io.CharArrayWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares writing script and link tags through StringBuilder and
+ * String.format, the way WebAssetTag used to, against writing them straight
+ * to the writer, and measures the full WebAssetRenderer path used by the tag
+ * with and without caching. Not run by the build, run the main method from
+ * the test classpath, adding -prof gc to the JMH options to see allocation
+ * rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebAssetTagBenchmark {
+
+  private final static String URI_PREFIX = "//myhost:8080/mycontext";
+
+  private List<Map<String, String>> scripts = new ArrayList<Map<String, String>>();
+  private List<Map<String, String>> links = new ArrayList<Map<String, String>>();
+  private CharArrayWriter out = new CharArrayWriter(8192);
+
+  /**
+   * A manager over a temporary root with a page config, rendered through the
+   * WebAssetRenderer as the tag does.
+   */
+  @State(Scope.Thread)
+  public static class RenderState {
+
+    @Param({"false", "true"})
+    public boolean caching;
+
+    private File root;
+    private WebAssetManager manager;
+    private WebAssetRenderer renderer;
+    private List<String> ids = Arrays.asList("page");
+    private Set<String> types = WebAssetRenderer.parseTypes(
+      "title,hints,metas,links,scripts");
+    private CharArrayWriter out = new CharArrayWriter(8192);
+
+    @Setup
+    public void setUp()
+      throws Exception {
+
+      root = Files.createTempDirectory("webasset-bench").toFile();
+      StringBuilder config = new StringBuilder();
+      config.append("{\"ids\": [\"page\"], \"title\": \"Page\", \"scripts\": [");
+      for (int i = 0; i < 8; i++) {
+        FileUtils.writeStringToFile(new File(root, "/WEB-INF/js/script" + i
+          + ".js"), "var s" + i + " = 1;", StandardCharsets.UTF_8);
+        config.append(i > 0 ? "," : "").append("\"/WEB-INF/js/script").append(
+          i).append(".js\"");
+      }
+      config.append("], \"links\": [");
+      for (int i = 0; i < 8; i++) {
+        FileUtils.writeStringToFile(new File(root, "/WEB-INF/css/style" + i
+          + ".css"), "a{color:red}", StandardCharsets.UTF_8);
+        config.append(i > 0 ? "," : "").append("\"/WEB-INF/css/style").append(
+          i).append(".css\"");
+      }
+      config.append("]}");
+      FileUtils.writeStringToFile(new File(root, "/WEB-INF/config/page.waf"),
+        config.toString(), StandardCharsets.UTF_8);
+
+      manager = new WebAssetManager();
+      manager.setRootDirectory(root.getPath());
+      manager.setConfigDirectory("/WEB-INF/config");
+      manager.setCaching(caching);
+      manager.startup();
+      renderer = new WebAssetRenderer(manager);
+    }
+
+    @TearDown
+    public void tearDown() {
+      manager.shutdown();
+      FileUtils.deleteQuietly(root);
+    }
+  }
+
+  @Setup
+  public void setUp() {
+
+    for (int i = 0; i < 8; i++) {
+      Map<String, String> scriptAttrs = new LinkedHashMap<String, String>();
+      scriptAttrs.put("type", "text/javascript");
+      scriptAttrs.put("path", "/_webasset_cache_/js/script" + i
+        + ".cache.3066489206.js");
+      scripts.add(scriptAttrs);
+
+      Map<String, String> linkAttrs = new LinkedHashMap<String, String>();
+      linkAttrs.put("type", "text/css");
+      linkAttrs.put("media", "screen");
+      linkAttrs.put("path", "/_webasset_cache_/css/style" + i
+        + ".cache.2563797763.css");
+      links.add(linkAttrs);
+    }
+  }
+
+  private static String legacyUri(String path) {
+    String fullPath = path;
+    if (!path.matches("^(https?)?:?//.*")) {
+      StringBuilder pathBuilder = new StringBuilder();
+      pathBuilder.append(URI_PREFIX);
+      pathBuilder.append(path);
+      fullPath = pathBuilder.toString();
+    }
+    return fullPath;
+  }
+
+  @Benchmark
+  public int legacy() {
+
+    out.reset();
+    for (Map<String, String> scriptAttrs : scripts) {
+      StringBuilder scriptTagBuilder = new StringBuilder();
+      scriptTagBuilder.append("<script");
+      String path = scriptAttrs.get("path");
+      if (StringUtils.isNotBlank(path)) {
+        scriptTagBuilder.append(" src=\"" + legacyUri(path) + "\"");
+      }
+      for (String attr : scriptAttrs.keySet()) {
+        if (attr.equals("path")) {
+          continue;
+        }
+        String attrVal = scriptAttrs.get(attr);
+        if (StringUtils.isNotBlank(attrVal)) {
+          scriptTagBuilder.append(String.format(" %s=\"%s\"", attr, attrVal));
+        }
+      }
+      scriptTagBuilder.append(">");
+      scriptTagBuilder.append("</script>");
+      out.append(scriptTagBuilder.toString() + "\n");
+    }
+
+    for (Map<String, String> linkAttrs : links) {
+      StringBuilder linkTagBuilder = new StringBuilder();
+      linkTagBuilder.append("<link rel=\"stylesheet\"");
+      String path = linkAttrs.get("path");
+      if (StringUtils.isNotBlank(path)) {
+        linkTagBuilder.append(" href=\"" + legacyUri(path) + "\"");
+      }
+      for (String attr : linkAttrs.keySet()) {
+        if (attr.equals("path")) {
+          continue;
+        }
+        String attrVal = linkAttrs.get(attr);
+        if (StringUtils.isNotBlank(attrVal)) {
+          linkTagBuilder.append(String.format(" %s=\"%s\"", attr, attrVal));
+        }
+      }
+      linkTagBuilder.append(" />");
+      out.append(linkTagBuilder.toString() + "\n");
+    }
+    return out.size();
+  }
+
+  @Benchmark
+  public int direct()
+    throws IOException {
+
+    out.reset();
+    for (Map<String, String> scriptAttrs : scripts) {
+      WebAssetRenderer.writeScriptTag(out, URI_PREFIX, scriptAttrs, null);
+    }
+    for (Map<String, String> linkAttrs : links) {
+      WebAssetRenderer.writeLinkTag(out, URI_PREFIX, linkAttrs);
+    }
+    return out.size();
+  }
+
+  @Benchmark
+  public int render(RenderState state)
+    throws IOException {
+
+    state.out.reset();
+    state.renderer.render(state.out, state.types, state.ids, Locale.US, null,
+      URI_PREFIX);
+    return state.out.size();
+  }
+
+  public static void main(String[] args)
+    throws RunnerException {
+
+    Options options = new OptionsBuilder().include(
+      WebAssetTagBenchmark.class.getSimpleName()).build();
+    new Runner(options).run();
+  }
+
+}